@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Cette classe prépare l'environnement commun aux mesures de performance : un site de test
+ * dans un répertoire temporaire, un fichier de configuration et un serveur lancé dans le processus.
+ */
+public class BenchSupport {
+
+    /**
+     * Taille du petit fichier statique du site de test.
+     */
+    public static final int SMALL_FILE_SIZE = 1024;
+
+    /**
+     * Taille du gros fichier statique du site de test.
+     */
+    public static final int LARGE_FILE_SIZE = 1024 * 1024;
+
+    /**
+     * Crée un site de test : un petit et un gros fichier, une page HTML statique,
+     * une page contenant des blocs de code mis en cache et une image.
+     *
+     * @param root Le répertoire du site
+     * @throws IOException En cas d'erreur d'écriture
+     */
+    public static void createSite(Path root) throws IOException {
+        Random random = new Random(42);
+        Files.createDirectories(root);
+        Files.write(root.resolve("small.txt"), text(SMALL_FILE_SIZE));
+        byte[] large = new byte[LARGE_FILE_SIZE];
+        random.nextBytes(large);
+        Files.write(root.resolve("large.bin"), large);
+
+        StringBuilder page = new StringBuilder("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\"><title>Test</title></head><body>\n");
+        for (int i = 0; i < 40; i++) {
+            page.append("<p>Paragraphe ").append(i).append(" de la page de test, avec un peu de texte accentué : é à ü.</p>\n");
+        }
+        Files.write(root.resolve("index.html"), (page + "</body></html>\n").getBytes(StandardCharsets.UTF_8));
+        page.append("<p>Date : <code interpreteur=\"/bin/sh\" cache=\"1h\">date</code></p>\n");
+        page.append("<p>Hôte : <code interpreteur=\"/bin/sh\" cache=\"1h\">hostname</code></p>\n");
+        Files.write(root.resolve("dynamic.html"), (page + "</body></html>\n").getBytes(StandardCharsets.UTF_8));
+
+        byte[] image = new byte[16 * 1024];
+        random.nextBytes(image);
+        Files.write(root.resolve("image.png"), image);
+    }
+
+    /**
+     * Écrit un fichier de configuration pour le site de test. Les logs sont écrits dans le même répertoire.
+     *
+     * @param directory Le répertoire contenant le site (sous-répertoire site) et les logs
+     * @param port      Le port d'écoute
+     * @param engine    Le moteur du serveur (blocking ou nio)
+     * @return Le chemin du fichier de configuration
+     * @throws IOException En cas d'erreur d'écriture
+     */
+    public static Path writeConfig(Path directory, int port, String engine) throws IOException {
+        String conf = "<webconf>\n"
+                + "    <port>" + port + "</port>\n"
+                + "    <root>" + directory.resolve("site") + "</root>\n"
+                + "    <engine type=\"" + engine + "\" reactors=\"0\"/>\n"
+                + "    <threads mode=\"pool\" max=\"256\" queue=\"256\" drain=\"1\"/>\n"
+                + "    <keepalive timeout=\"5\" max=\"1000000\"/>\n"
+                + "    <accept>\n        127.0.0.1\n    </accept>\n"
+                + "    <accesslog>" + directory.resolve("access.log") + "</accesslog>\n"
+                + "    <errorlog>" + directory.resolve("error.log") + "</errorlog>\n"
+                + "    <logging format=\"combined\" buffer=\"65536\" policy=\"drop\" flush=\"200\"/>\n"
+                + "</webconf>\n";
+        Path path = directory.resolve("myweb.conf");
+        Files.write(path, conf.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    /**
+     * Crée un répertoire temporaire contenant le site de test et sa configuration,
+     * puis lance le serveur dans un thread du processus et attend qu'il accepte les connexions.
+     *
+     * @param engine Le moteur du serveur (blocking ou nio)
+     * @return Le port d'écoute du serveur
+     * @throws IOException En cas d'erreur de préparation ou si le serveur ne démarre pas
+     */
+    public static int startServer(String engine) throws IOException {
+        Path directory = Files.createTempDirectory("myweb-bench");
+        createSite(directory.resolve("site"));
+        int port = freePort();
+        Path config = writeConfig(directory, port, engine);
+
+        Thread server = new Thread(() -> HttpServer.main(new String[]{config.toString()}), "bench-server");
+        server.setDaemon(true);
+        server.start();
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                new Socket("127.0.0.1", port).close();
+                return port;
+            } catch (IOException e) {
+                sleep(50);
+            }
+        }
+        throw new IOException("Le serveur n'a pas démarré sur le port " + port);
+    }
+
+    /**
+     * Retourne un port libre de l'interface locale.
+     *
+     * @return Le numéro de port
+     * @throws IOException En cas d'erreur d'ouverture du socket
+     */
+    public static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static byte[] text(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i % 64 == 63 ? '\n' : 'a' + i % 26);
+        }
+        return data;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
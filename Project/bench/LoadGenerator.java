@@ -0,0 +1,167 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cette classe lance le serveur dans le processus sur l'interface locale et le soumet à une charge
+ * en boucle fermée : chaque client envoie une requête, lit la réponse complète puis recommence.
+ * Elle mesure le débit et les percentiles de latence avec et sans keep-alive, pour un petit et un gros fichier.
+ * <p>
+ * Utilisation : {@code java -cp out LoadGenerator [blocking|nio] [clients] [secondes par scénario]}.
+ */
+public class LoadGenerator {
+
+    /**
+     * Un scénario de charge : le fichier demandé et le maintien ou non de la connexion.
+     */
+    private static final class Scenario {
+        final String name;
+        final String target;
+        final boolean keepAlive;
+
+        Scenario(String name, String target, boolean keepAlive) {
+            this.name = name;
+            this.target = target;
+            this.keepAlive = keepAlive;
+        }
+    }
+
+    private static final Scenario[] SCENARIOS = {
+            new Scenario("keep-alive petit", "/small.txt", true),
+            new Scenario("keep-alive gros", "/large.bin", true),
+            new Scenario("close petit", "/small.txt", false),
+            new Scenario("close gros", "/large.bin", false),
+    };
+
+    /**
+     * Lance les scénarios de charge.
+     *
+     * @param args Le moteur du serveur, le nombre de clients et la durée de chaque scénario en secondes
+     * @throws Exception En cas d'erreur de préparation
+     */
+    public static void main(String[] args) throws Exception {
+        String engine = args.length > 0 ? args[0] : "blocking";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int port = BenchSupport.startServer(engine);
+
+        System.out.printf("Moteur %s, %d clients, %d s par scénario%n%n", engine, clients, seconds);
+        System.out.printf("%-18s %10s %10s %9s %9s %9s %9s %8s%n",
+                "Scénario", "req/s", "Mo/s", "p50 µs", "p99 µs", "p99.9 µs", "max µs", "erreurs");
+        for (Scenario scenario : SCENARIOS) {
+            // Une seconde d'échauffement, non mesurée
+            run(port, scenario, clients, 1);
+            report(scenario, seconds, run(port, scenario, clients, seconds));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Résultat d'un scénario.
+     */
+    private static final class Result {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder errors = new LongAdder();
+    }
+
+    private static Result run(int port, Scenario scenario, int clients, int seconds) throws InterruptedException {
+        Result result = new Result();
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(clients);
+        byte[] request = ("GET " + scenario.target + " HTTP/1.1\r\nHost: localhost\r\n"
+                + (scenario.keepAlive ? "" : "Connection: close\r\n") + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+        for (int i = 0; i < clients; i++) {
+            Thread client = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < end) {
+                        try (Socket socket = new Socket("127.0.0.1", port)) {
+                            socket.setTcpNoDelay(true);
+                            InputStream in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+                            OutputStream out = socket.getOutputStream();
+                            do {
+                                long start = System.nanoTime();
+                                out.write(request);
+                                out.flush();
+                                result.bytes.add(readResponse(in));
+                                result.latency.record((System.nanoTime() - start) / 1000);
+                            } while (scenario.keepAlive && System.nanoTime() < end);
+                        } catch (IOException e) {
+                            result.errors.increment();
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + i);
+            client.start();
+        }
+        done.await();
+        return result;
+    }
+
+    /**
+     * Lit une réponse complète dont la taille est donnée par Content-Length.
+     *
+     * @return La taille du corps
+     */
+    static long readResponse(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        long length = -1;
+        int status = 0;
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Connexion fermée pendant l'en-tête");
+            }
+            if (b != '\n') {
+                if (b != '\r') {
+                    line.append((char) b);
+                }
+                continue;
+            }
+            if (line.length() == 0) {
+                break;
+            }
+            String header = line.toString();
+            if (status == 0) {
+                status = Integer.parseInt(header.split(" ")[1]);
+            } else if (header.regionMatches(true, 0, "content-length:", 0, 15)) {
+                length = Long.parseLong(header.substring(15).trim());
+            }
+            line.setLength(0);
+        }
+        if (status != 200 || length < 0) {
+            throw new IOException("Réponse inattendue : " + status);
+        }
+        long remaining = length;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new IOException("Connexion fermée pendant le corps");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+        return length;
+    }
+
+    private static void report(Scenario scenario, int seconds, Result result) {
+        LatencyHistogram latency = result.latency;
+        System.out.printf(Locale.ROOT, "%-18s %10.0f %10.1f %9d %9d %9d %9d %8d%n",
+                scenario.name,
+                (double) latency.getCount() / seconds,
+                result.bytes.sum() / (1024.0 * 1024.0) / seconds,
+                latency.getPercentile(50), latency.getPercentile(99), latency.getPercentile(99.9),
+                latency.getMax(), result.errors.sum());
+    }
+}
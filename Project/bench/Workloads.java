@@ -0,0 +1,193 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Cette classe fournit les opérations mesurées par les benchmarks JMH du paquet {@code benchmarks}.
+ * Le serveur est écrit dans le paquet par défaut, que le code d'un paquet nommé ne peut pas désigner
+ * et où JMH refuse les classes de mesure : les benchmarks obtiennent donc chaque opération par réflexion,
+ * une seule fois lors de leur préparation, sous la forme d'un {@link Callable} appelé à chaque itération.
+ * <p>
+ * Le serveur est lancé dans le processus au premier besoin, avec un site de test (voir {@link BenchSupport}) :
+ * les traitements lisent sa configuration et écrivent dans ses logs.
+ */
+public class Workloads {
+
+    /**
+     * En-tête de requête représentatif d'un navigateur.
+     */
+    static final String REQUEST_HEAD = "GET /index.html HTTP/1.1\r\nHost: localhost:8080\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64)\r\n"
+            + "Accept: text/html,application/xhtml+xml\r\nAccept-Encoding: gzip, deflate, br\r\n"
+            + "Accept-Language: fr-FR,fr;q=0.9\r\nConnection: keep-alive\r\n\r\n";
+
+    /**
+     * Flux de sortie qui ne fait que compter les octets écrits.
+     */
+    private static final class NullOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            count += length;
+        }
+    }
+
+    /**
+     * Un client qui garde sa connexion au serveur ouverte et envoie une requête à chaque appel.
+     */
+    private static final class Client implements Callable<Object>, AutoCloseable {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final byte[] request;
+
+        Client(int port, String target) throws IOException {
+            socket = new Socket("127.0.0.1", port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+            out = socket.getOutputStream();
+            request = ("GET " + target + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public Object call() throws IOException {
+            out.write(request);
+            out.flush();
+            return LoadGenerator.readResponse(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private static String engine; // Moteur du serveur lancé, null tant qu'il ne l'est pas
+    private static int port;
+
+    /**
+     * Crée une opération à mesurer.
+     *
+     * @param name       Le nom de l'opération
+     * @param parameters Ses paramètres : le fichier demandé, le moteur du serveur
+     * @return L'opération, à fermer après la mesure si elle est {@link AutoCloseable}
+     * @throws Exception En cas d'erreur de préparation
+     */
+    public static Callable<Object> create(String name, String... parameters) throws Exception {
+        InetAddress client = InetAddress.getLoopbackAddress();
+        switch (name) {
+            case "parse.bytes": {
+                HttpParser parser = new HttpParser(client);
+                ByteBuffer input = ByteBuffer.wrap(REQUEST_HEAD.getBytes(StandardCharsets.ISO_8859_1));
+                return () -> {
+                    input.clear();
+                    return parser.parse(input);
+                };
+            }
+            case "parse.reader": {
+                byte[] head = REQUEST_HEAD.getBytes(StandardCharsets.ISO_8859_1);
+                return () -> parseWithReader(head, client);
+            }
+            case "fileCache.get": {
+                FileCache cache = new FileCache(64L * 1024 * 1024, 8L * 1024 * 1024);
+                Path file = site("blocking").resolve(parameters[0]);
+                return () -> cache.get(file);
+            }
+            case "fileCache.gzip": {
+                FileCache cache = new FileCache(64L * 1024 * 1024, 8L * 1024 * 1024);
+                Path file = site("blocking").resolve(parameters[0]);
+                return () -> cache.gzip(file, cache.get(file), 6);
+            }
+            case "template.parse": {
+                byte[] page = Files.readAllBytes(site("blocking").resolve(parameters[0]));
+                return () -> PageTemplate.parse(page);
+            }
+            case "handler": {
+                site("blocking");
+                SiteHandler handler = new SiteHandler(new FileCache(64L * 1024 * 1024, 8L * 1024 * 1024),
+                        new PathResolver(4096, 2000));
+                NullOutputStream out = new NullOutputStream();
+                String target = parameters[0];
+                return () -> {
+                    HttpRequest request = new HttpRequest("GET", target, "HTTP/1.1", new HashMap<>(), client);
+                    HttpResponse response = handler.handle(request);
+                    response.writeTo(out, true);
+                    return response;
+                };
+            }
+            case "server": {
+                site(parameters[0]);
+                return new Client(port, parameters[1]);
+            }
+            case "logs.logAccess": {
+                site("blocking");
+                HttpRequest request = new HttpParser(client)
+                        .parse(ByteBuffer.wrap(REQUEST_HEAD.getBytes(StandardCharsets.ISO_8859_1)));
+                return () -> {
+                    Logs.logAccess(request, 200, 1024, System.nanoTime());
+                    return request;
+                };
+            }
+            case "isAccepted": {
+                site("blocking");
+                return () -> HttpServer.isAccepted(client);
+            }
+            default:
+                throw new IllegalArgumentException("Opération inconnue : " + name);
+        }
+    }
+
+    /**
+     * Analyse d'origine, conservée comme référence : lecture ligne par ligne en caractères puis découpage des chaînes.
+     */
+    private static HttpRequest parseWithReader(byte[] head, InetAddress client) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(head), StandardCharsets.ISO_8859_1));
+        String[] requestLineParts = reader.readLine().split(" ");
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+            }
+        }
+        return new HttpRequest(requestLineParts[0], requestLineParts[1], requestLineParts[2], headers, client);
+    }
+
+    /**
+     * Lance le serveur au premier appel et retourne le répertoire de son site de test.
+     *
+     * @param requested Le moteur voulu ; un seul serveur peut tourner par processus
+     * @return Le répertoire du site
+     * @throws IOException Si le serveur ne démarre pas
+     */
+    private static synchronized Path site(String requested) throws IOException {
+        if (engine == null) {
+            port = BenchSupport.startServer(requested);
+            engine = requested;
+        } else if (!engine.equals(requested)) {
+            throw new IllegalStateException("Serveur déjà lancé avec le moteur " + engine + " dans ce processus");
+        }
+        return Paths.get(HttpServer.getConfig().getRootDirectory());
+    }
+}
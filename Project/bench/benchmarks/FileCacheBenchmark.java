@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Accès à un fichier déjà en cache : lecture de ses attributs pour valider l'entrée, puis recherche dans le cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileCacheBenchmark {
+
+    /**
+     * Un fichier gardé en mémoire (small.txt, index.html) ou dont seules les métadonnées le sont (large.bin).
+     */
+    @State(Scope.Benchmark)
+    public static class Cached {
+
+        @Param({"small.txt", "index.html", "large.bin"})
+        public String file;
+
+        Callable<Object> get;
+
+        @Setup
+        public void setup() throws Exception {
+            get = Workload.create("fileCache.get", file);
+        }
+    }
+
+    /**
+     * Une page dont la variante gzip est déjà compressée.
+     */
+    @State(Scope.Benchmark)
+    public static class Compressed {
+
+        Callable<Object> gzip;
+
+        @Setup
+        public void setup() throws Exception {
+            gzip = Workload.create("fileCache.gzip", "index.html");
+        }
+    }
+
+    @Benchmark
+    public Object get(Cached state) throws Exception {
+        return state.get.call();
+    }
+
+    @Benchmark
+    public Object gzip(Compressed state) throws Exception {
+        return state.gzip.call();
+    }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Traitement complet d'une requête par SiteHandler, sans réseau : résolution du chemin, cache,
+ * construction de la réponse et écriture dans un flux qui ne fait que compter les octets.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HandlerBenchmark {
+
+    @Param({"/small.txt", "/large.bin", "/index.html", "/dynamic.html", "/image.png", "/absent.html"})
+    public String target;
+
+    private Callable<Object> handle;
+
+    @Setup
+    public void setup() throws Exception {
+        handle = Workload.create("handler", target);
+    }
+
+    @Benchmark
+    public Object handle() throws Exception {
+        return handle.call();
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Dépôt d'une ligne du log d'accès, par un seul thread puis par quatre threads simultanés,
+ * et contrôle de l'adresse d'un client.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogsBenchmark {
+
+    private Callable<Object> logAccess;
+    private Callable<Object> isAccepted;
+
+    @Setup
+    public void setup() throws Exception {
+        logAccess = Workload.create("logs.logAccess");
+        isAccepted = Workload.create("isAccepted");
+    }
+
+    @Benchmark
+    public Object logAccess() throws Exception {
+        return logAccess.call();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object logAccessConcurrent() throws Exception {
+        return logAccess.call();
+    }
+
+    @Benchmark
+    public Object isAccepted() throws Exception {
+        return isAccepted.call();
+    }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Analyse de l'en-tête d'une requête de navigateur : par HttpParser, depuis un tampon réutilisé (bytes),
+ * et par la lecture d'origine ligne par ligne avec un BufferedReader puis split (reader).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBenchmark {
+
+    @Param({"bytes", "reader"})
+    public String parser;
+
+    private Callable<Object> parse;
+
+    @Setup
+    public void setup() throws Exception {
+        parse = Workload.create("parse." + parser);
+    }
+
+    @Benchmark
+    public Object parse() throws Exception {
+        return parse.call();
+    }
+}
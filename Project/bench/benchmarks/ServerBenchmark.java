@@ -0,0 +1,53 @@
+package benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Aller-retour complet sur l'interface locale : chaque thread de mesure garde une connexion ouverte
+ * vers le serveur lancé dans le processus, envoie une requête et lit la réponse entière.
+ * Un seul serveur peut tourner par processus : chaque combinaison de paramètres doit avoir son propre fork.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ServerBenchmark {
+
+    @Param({"blocking", "nio"})
+    public String engine;
+
+    @Param({"/small.txt", "/large.bin"})
+    public String target;
+
+    private Callable<Object> request;
+
+    @Setup
+    public void setup() throws Exception {
+        request = Workload.create("server", engine, target);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Workload.close(request);
+    }
+
+    @Benchmark
+    public Object request() throws Exception {
+        return request.call();
+    }
+}
@@ -0,0 +1,48 @@
+package benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Callable;
+
+/**
+ * Accès aux opérations fournies par la classe Workloads, qui est déclarée dans le paquet par défaut
+ * comme le serveur et ne peut donc pas être désignée directement depuis ce paquet.
+ */
+final class Workload {
+
+    private Workload() {
+    }
+
+    /**
+     * Crée une opération à mesurer.
+     *
+     * @param name       Le nom de l'opération
+     * @param parameters Ses paramètres
+     * @return L'opération
+     * @throws Exception En cas d'erreur de préparation
+     */
+    @SuppressWarnings("unchecked")
+    static Callable<Object> create(String name, String... parameters) throws Exception {
+        try {
+            return (Callable<Object>) Class.forName("Workloads")
+                    .getMethod("create", String.class, String[].class)
+                    .invoke(null, name, parameters);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Libère une opération après la mesure, si elle détient des ressources.
+     *
+     * @param operation L'opération
+     * @throws Exception En cas d'erreur de fermeture
+     */
+    static void close(Callable<Object> operation) throws Exception {
+        if (operation instanceof AutoCloseable) {
+            ((AutoCloseable) operation).close();
+        }
+    }
+}
@@ -1,95 +1,131 @@
 import java.io.*;
-import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.util.Base64;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
 
 /**
- * Cette classe gère les connexions des clients.
+ * Cette classe gère les connexions des clients pour le moteur bloquant :
+ * un thread lit les requêtes d'un socket et les confie au RequestHandler partagé.
  */
 public class ClientHandler implements Runnable {
 
+    /**
+     * Taille du tampon de lecture, réutilisé pour toutes les requêtes de la connexion.
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
     /**
      * Le socket représentant la connexion avec le client.
      */
     private Socket socket;
 
     /**
-     * Le nombre de connexions actives.
+     * Le traitement des requêtes, partagé avec le moteur NIO.
+     */
+    private RequestHandler handler;
+
+    /**
+     * L'exécuteur des flux d'une connexion passée en HTTP/2.
      */
-    private int connectionCount;
+    private ExecutorService workers;
 
     /**
      * Constructeur de la classe ClientHandler.
      *
-     * @param socket Le socket représentant la connexion avec le client
+     * @param socket  Le socket représentant la connexion avec le client
+     * @param handler Le traitement des requêtes
+     * @param workers L'exécuteur des flux d'une connexion passée en HTTP/2
      */
-    public ClientHandler(Socket socket) {
+    public ClientHandler(Socket socket, RequestHandler handler, ExecutorService workers) {
         this.socket = socket;
+        this.handler = handler;
+        this.workers = workers;
     }
 
     /**
      * Méthode principale exécutée lorsqu'un client se connecte.
-     * Gère la lecture de la requête HTTP, la validation de l'adresse IP,
-     * la gestion des fichiers demandés, et l'envoi des réponses appropriées.
+     * Gère la lecture des requêtes HTTP (l'adresse du client a déjà été contrôlée par la boucle d'acceptation),
+     * puis délègue la production de chaque réponse au RequestHandler.
+     * La connexion reste ouverte entre les requêtes (keep-alive) tant que le client le permet,
+     * dans la limite du délai d'inactivité et du nombre de requêtes configurés.
      */
     @Override
     public void run() {
-        connectionCount++;
         String clientIP = socket.getInetAddress().getHostAddress();
 
         try {
-            if (!isAccepted(socket.getInetAddress())) {
-                // Logs pour indiquer le refus de connexion pour une adresse IP non autorisée
-                Logs.logError("Connection refusée pour l'adresse IP : " + clientIP);
-                socket.close();
-                connectionCount--;
-                return;
-            }
+            socket.setSoTimeout(HttpServer.getConfig().getKeepAliveTimeout() * 1000);
+            int maxRequests = HttpServer.getConfig().getKeepAliveMax();
+            HttpServer.connectionOpened();
 
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                 OutputStream out = socket.getOutputStream();
-                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out))
+            try (Socket s = socket;
+                 InputStream in = new CountingInputStream(s.getInputStream());
+                 OutputStream out = s.getChannel() != null ? new ChannelOutputStream(s) : new BufferedOutputStream(s.getOutputStream())
             ) {
-                String requestLine = reader.readLine();
-                if (requestLine == null || requestLine.isEmpty()) {
-                    // Logs pour indiquer la réception d'une requête vide ou nulle
-                    Logs.logError("Requête vide ou nulle reçue");
-                    return;
-                }
-                // Logs pour enregistrer la requête HTTP reçue
-                Logs.logAccess(requestLine, clientIP);
-
-                String[] requestLineParts = requestLine.split(" ");
-                if (requestLineParts.length < 2) {
-                    // Logs pour indiquer une requête HTTP invalide
-                    Logs.logError("Requête invalide : " + requestLine);
-                    return;
-                }
-
-                String filePath = requestLineParts[1];
-                if (filePath.equals("/status")) {
-                    sendStatusResponse(writer);
-                } else {
-                    if (filePath.equals("/")) {
-                        filePath = "/index.html";
+                HttpParser parser = new HttpParser(s.getInetAddress());
+                ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE).flip();
+                int requestCount = 0;
+                boolean keepAlive = true;
+                while (keepAlive) {
+                    HttpRequest request;
+                    long start = System.nanoTime();
+                    try {
+                        request = readRequest(in, out, input, parser);
+                    } catch (SocketTimeoutException e) {
+                        // Délai d'inactivité dépassé : fermeture de la connexion persistante
+                        break;
+                    } catch (HttpParser.ParseException e) {
+                        // Logs pour indiquer une requête HTTP invalide ou trop grande
+                        Logs.logError("Requête invalide : " + e.getMessage());
+                        HttpResponse badRequest = HttpResponse.error(e.getStatusCode(), e.getStatusMessage());
+                        badRequest.writeTo(out, false);
+                        Logs.logAccess(parser.getRequestLine(), clientIP, e.getStatusCode(), badRequest.getContentLength(), start);
+                        Metrics.requestCompleted("invalid", e.getStatusCode(), badRequest.getContentLength(), start);
+                        break;
+                    }
+                    if (request == null) {
+                        if (requestCount == 0) {
+                            // Logs pour indiquer la réception d'une requête vide ou nulle
+                            Logs.logError("Requête vide ou nulle reçue");
+                        }
+                        break;
+                    }
+                    requestCount++;
+
+                    boolean preface = Http2Connection.isPreface(request);
+                    if (preface || (Http2Connection.isUpgrade(request) && request.getConfig().isHttp2Enabled())) {
+                        if (!request.getConfig().isHttp2Enabled()) {
+                            HttpResponse unsupported = HttpResponse.error(505, "HTTP Version Not Supported");
+                            unsupported.writeTo(out, false);
+                            Logs.logAccess(request, 505, unsupported.getContentLength(), start);
+                            Metrics.requestCompleted("invalid", 505, unsupported.getContentLength(), start);
+                            break;
+                        }
+                        // La connexion passe en HTTP/2 avec les octets déjà reçus ; ce thread en lit désormais les trames
+                        out.flush();
+                        byte[] received = new byte[input.remaining()];
+                        input.get(received);
+                        new Http2Connection(s, received, handler, workers).serve(preface ? null : request);
+                        break;
                     }
 
-                    filePath = HttpServer.getConfig().getRootDirectory() + filePath;
+                    keepAlive = request.isKeepAlive() && requestCount < maxRequests;
+                    HttpResponse response = handler.handle(request);
+                    response.writeTo(out, keepAlive, !request.isHead());
+                    // Logs pour enregistrer la requête HTTP traitée
+                    Logs.logAccess(request, response.getStatusCode(), response.getContentLength(), start);
+                    Metrics.requestCompleted(response.getRoute(), response.getStatusCode(), response.getContentLength(), start);
 
-                    File file = new File(filePath);
-                    if (file.exists() && !file.isDirectory()) {
-                        sendFileResponse(writer, out, file);
-                    } else {
-                        sendErrorResponse(writer, 404, "Not Found");
-                        // Logs pour indiquer qu'un fichier demandé n'a pas été trouvé
-                        Logs.logError("Fichier non trouvé : " + filePath);
+                    // Les requêtes pipelinées déjà reçues sont traitées avant d'envoyer les réponses
+                    if (!input.hasRemaining() && in.available() == 0) {
+                        out.flush();
                     }
                 }
+                out.flush();
             } catch (IOException e) {
                 // Logs pour indiquer une erreur lors de la lecture de la requête
                 Logs.logError("Erreur de lecture de la requête : " + e.getMessage());
@@ -98,140 +134,101 @@ public class ClientHandler implements Runnable {
                     Logs.logError("SocketException : " + e.getMessage());
                 }
             } finally {
-                connectionCount--;
+                HttpServer.connectionClosed();
             }
         } catch (IOException e) {
             // Logs pour indiquer une erreur de connexion avec le client
             Logs.logError("Erreur de connection client : " + e.getMessage());
+        } finally {
+            HttpServer.release(socket.getInetAddress());
         }
     }
 
     /**
-     * Méthode qui envoie le contenu d'un fichier en réponse à une requête.
-     * Gère différents types MIME et traite les fichiers spéciaux HTML avec des sections de code dynamique.
+     * Lit une requête complète. Les octets reçus au-delà de la requête (requêtes pipelinées)
+     * restent dans le tampon pour la requête suivante.
      *
-     * @param writer Le writer pour écrire la réponse HTTP
-     * @param out    Le flux de sortie pour écrire le contenu binaire (pour les fichiers binaires)
-     * @param file   Le fichier à envoyer en réponse
-     * @throws IOException En cas d'erreur d'entrée/sortie lors de la lecture ou de l'écriture
+     * @param in     Le flux d'entrée du client
+     * @param out    Le flux de sortie, pour inviter le client à envoyer un corps annoncé (100 Continue)
+     * @param input  Le tampon de lecture, en mode lecture
+     * @param parser L'analyseur de la connexion
+     * @return La requête, ou null si le client a fermé la connexion
+     * @throws IOException                En cas d'erreur de lecture
+     * @throws HttpParser.ParseException Si la requête est mal formée ou trop grande
      */
-    private void sendFileResponse(BufferedWriter writer, OutputStream out, File file) throws IOException {
-        String mimeType = Files.probeContentType(file.toPath());
-        if (mimeType == null) {
-            mimeType = "application/octet-stream";
-        }
-
-        byte[] fileData = Files.readAllBytes(file.toPath());
-
-        if (mimeType.equals("text/html")) {
-            String content = new String(fileData, StandardCharsets.UTF_8);
-            StringBuilder modifiedContent = new StringBuilder();
-            Pattern pattern = Pattern.compile("<code\\s+interpreteur=\"(.*?)\">(.*?)</code>");
-            Matcher matcher = pattern.matcher(content);
-
-            int lastEnd = 0;
-            while (matcher.find()) {
-                String interpreter = matcher.group(1);
-                String code = matcher.group(2);
-
-                String output = DynamicCodeExecutor.execute(interpreter, code);
-                modifiedContent.append(content, lastEnd, matcher.start()); // Ajoute le contenu avant la balise <code>
-                modifiedContent.append(output); // Ajoute le résultat de l'exécution du code
-                lastEnd = matcher.end();
+    private HttpRequest readRequest(InputStream in, OutputStream out, ByteBuffer input, HttpParser parser) throws IOException, HttpParser.ParseException {
+        while (true) {
+            HttpRequest request = parser.parse(input);
+            if (request != null) {
+                return request;
             }
-            modifiedContent.append(content.substring(lastEnd)); // Ajoute le reste du contenu après la dernière balise <code>
-
-            byte[] modifiedContentBytes = modifiedContent.toString().getBytes(StandardCharsets.UTF_8);
-
-            writer.write("HTTP/1.1 200 OK\r\n");
-            writer.write("Content-Type: text/html\r\n");
-            writer.write("Content-Length: " + modifiedContentBytes.length + "\r\n");
-            writer.write("\r\n");
-            writer.flush();
-
-            out.write(modifiedContentBytes);
-        } else if (mimeType.startsWith("image/") || mimeType.startsWith("video/") || mimeType.startsWith("audio/")) {
-            // Encodage en base64 pour les images, vidéos et sons
-            String base64Data = Base64.getEncoder().encodeToString(fileData);
-
-            String htmlResponse = "<html><body>";
-            if (mimeType.startsWith("image/")) {
-                htmlResponse += "<img src=\"data:" + mimeType + ";base64," + base64Data + "\" />";
-            } else if (mimeType.startsWith("video/")) {
-                htmlResponse += "<video controls><source src=\"data:" + mimeType + ";base64," + base64Data + "\" type=\"" + mimeType + "\"></video>";
-            } else if (mimeType.startsWith("audio/")) {
-                htmlResponse += "<audio controls><source src=\"data:" + mimeType + ";base64," + base64Data + "\" type=\"" + mimeType + "\"></audio>";
+            if (parser.takeContinue()) {
+                HttpResponse.writeContinue(out);
+            }
+            input.clear();
+            int read = in.read(input.array(), 0, input.capacity());
+            if (read < 0) {
+                if (!parser.isIdle()) {
+                    Logs.logError("Connexion fermée au milieu d'une requête : " + parser.getRequestLine());
+                }
+                return null;
             }
-            htmlResponse += "</body></html>";
-
-            byte[] htmlResponseBytes = htmlResponse.getBytes(StandardCharsets.UTF_8);
-
-            writer.write("HTTP/1.1 200 OK\r\n");
-            writer.write("Content-Type: text/html\r\n");
-            writer.write("Content-Length: " + htmlResponseBytes.length + "\r\n");
-            writer.write("\r\n");
-            writer.flush();
-
-            out.write(htmlResponseBytes);
-        } else {
-            // Code pour les autres types de fichiers (non modifiables)
-            writer.write("HTTP/1.1 200 OK\r\n");
-            writer.write("Content-Type: " + mimeType + "\r\n");
-            writer.write("Content-Length: " + fileData.length + "\r\n");
-            writer.write("\r\n");
-            writer.flush();
-
-            out.write(fileData);
+            input.limit(read);
         }
-
-        out.flush();
     }
 
     /**
-     * Méthode qui envoie une réponse de statut contenant les informations actuelles sur le serveur.
-     *
-     * @param writer Le writer pour écrire la réponse HTTP
-     * @throws IOException En cas d'erreur d'entrée/sortie lors de l'écriture
+     * Flux d'entrée qui compte les octets reçus du client dans les mesures du serveur.
      */
-    private void sendStatusResponse(BufferedWriter writer) throws IOException {
-        String statusHtml = MachineStatus.getStatusHtml(connectionCount);
-        writer.write("HTTP/1.1 200 OK\r\n");
-        writer.write("Content-Type: text/html\r\n");
-        writer.write("\r\n");
-        writer.write(statusHtml);
-        writer.flush();
-    }
+    private static class CountingInputStream extends FilterInputStream {
 
-    /**
-     * Méthode qui vérifie si une adresse IP est autorisée à se connecter au serveur.
-     *
-     * @param clientAddress L'adresse IP du client
-     * @return true si l'adresse IP est autorisée, false sinon
-     */
-    private boolean isAccepted(InetAddress clientAddress) {
-        String clientIP = clientAddress.getHostAddress();
-        if (HttpServer.getConfig().getReject().contains(clientIP)) {
-            return false;
+        CountingInputStream(InputStream in) {
+            super(in);
         }
-        if (HttpServer.getConfig().getAccept().isEmpty() || HttpServer.getConfig().getAccept().contains(clientIP)) {
-            return true;
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                Metrics.bytesReceived(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                Metrics.bytesReceived(n);
+            }
+            return n;
         }
-        return false;
     }
 
     /**
-     * Méthode qui envoie une réponse d'erreur HTTP.
-     *
-     * @param writer        Le writer pour écrire la réponse HTTP
-     * @param statusCode    Le code d'état HTTP (par exemple, 404 pour Not Found)
-     * @param statusMessage Le message d'état associé au code
-     * @throws IOException En cas d'erreur d'entrée/sortie lors de l'écriture
+     * Flux de sortie bufferisé d'une connexion acceptée par un canal : les portions de fichier
+     * sont envoyées par FileChannel.transferTo, c'est-à-dire sans copie par le système (sendfile).
      */
-    private void sendErrorResponse(BufferedWriter writer, int statusCode, String statusMessage) throws IOException {
-        writer.write("HTTP/1.1 " + statusCode + " " + statusMessage + "\r\n");
-        writer.write("Content-Type: text/html\r\n");
-        writer.write("\r\n");
-        writer.write("<html><body><h1>" + statusCode + " " + statusMessage + "</h1></body></html>");
-        writer.flush();
+    private static class ChannelOutputStream extends BufferedOutputStream implements FileRegionSink {
+
+        private final SocketChannel channel;
+
+        ChannelOutputStream(Socket socket) throws IOException {
+            super(socket.getOutputStream());
+            this.channel = socket.getChannel();
+        }
+
+        @Override
+        public void transferFile(FileChannel file, long position, long count) throws IOException {
+            flush();
+            while (count > 0) {
+                long transferred = file.transferTo(position, count, channel);
+                if (transferred <= 0) {
+                    throw new IOException("Fichier tronqué pendant l'envoi");
+                }
+                position += transferred;
+                count -= transferred;
+            }
+        }
     }
 }
@@ -1,88 +1,356 @@
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Cette classe charge la configuration à partir d'un fichier XML spécifié.
  * Elle récupère les paramètres tels que le port, le répertoire racine, les fichiers de log,
  * et les adresses IP acceptées ou rejetées.
+ * Une instance est un instantané immuable : les valeurs sont converties une fois au chargement,
+ * et un rechargement produit une nouvelle instance qui remplace la précédente d'un seul coup.
  */
 public class ConfigLoader {
 
-    private Map<String, String> config; // Map pour stocker les paramètres de configuration
-    private Set<String> acceptIPs;      // Ensemble pour les adresses IP acceptées
-    private Set<String> rejectIPs;      // Ensemble pour les adresses IP rejetées
+    private final String path;                                // Chemin du fichier chargé
+    private final Map<String, String> config = new HashMap<>(); // Valeurs lues, avant conversion
+    private final IpMatcher acceptIPs = new IpMatcher();      // Adresses et réseaux IP acceptés
+    private final IpMatcher rejectIPs = new IpMatcher();      // Adresses et réseaux IP rejetés
+    private final List<RateLimiter.PathLimit> pathRateLimits = new ArrayList<>(); // Limites de débit par préfixe de chemin
+    private final List<String> listenValues = new ArrayList<>();  // Contenu des balises <listen>, avant conversion
+    private final List<InetSocketAddress> listenAddresses = new ArrayList<>(); // Adresses d'écoute
+    private String loadError;                                 // Erreur de lecture du fichier, null si aucune
+
+    // Valeurs converties au chargement
+    private final int port;
+    private final String rootDirectory;
+    private final String accessLog;
+    private final String errorLog;
+    private final String logFormat;
+    private final int logBufferSize;
+    private final String logPolicy;
+    private final long logFlushInterval;
+    private final String threadMode;
+    private final int maxThreads;
+    private final int threadQueue;
+    private final int drainTimeout;
+    private final String engine;
+    private final int reactorCount;
+    private final long cacheSize;
+    private final long cacheMaxFileSize;
+    private final boolean compressionEnabled;
+    private final long compressionMinSize;
+    private final int compressionLevel;
+    private final long dynamicCacheTtl;
+    private final int dynamicWorkers;
+    private final long dynamicTimeout;
+    private final long dynamicPageTimeout;
+    private final int dynamicMaxProcesses;
+    private final boolean mediaPreviewEnabled;
+    private final long mediaPreviewMaxSize;
+    private final int keepAliveTimeout;
+    private final int keepAliveMax;
+    private final double rateLimit;
+    private final int rateLimitBurst;
+    private final int connectionLimit;
+    private final long rateLimitIdle;
+    private final boolean reloadWatch;
+    private final String reloadToken;
+    private final boolean http2Enabled;
+    private final int http2MaxStreams;
+    private final int resolveCacheSize;
+    private final long resolveCacheTtl;
+    private final int notFoundLogLimit;
+    private final long notFoundLogInterval;
+    private final int acceptorCount;
+    private final boolean reusePort;
+    private final int backlog;
+    private final boolean tcpNoDelay;
+    private final int sendBufferSize;
+    private final int receiveBufferSize;
 
     /**
      * Constructeur de la classe ConfigLoader.
-     * Initialise les structures de données et charge la configuration à partir du fichier spécifié.
+     * Charge la configuration à partir du fichier spécifié et convertit chaque valeur une fois pour toutes.
+     * Si le fichier ne peut pas être lu, les valeurs par défaut sont utilisées et {@link #getLoadError()} l'indique.
      *
      * @param path Chemin vers le fichier de configuration XML
+     * @throws IllegalArgumentException Si une valeur numérique ou une adresse d'écoute est invalide
      */
     public ConfigLoader(String path) {
-        config = new HashMap<>();
-        acceptIPs = new HashSet<>();
-        rejectIPs = new HashSet<>();
+        this.path = path;
         loadConfig(path);
+        port = Integer.parseInt(config.get("port").trim());
+        rootDirectory = config.get("root");
+        accessLog = config.get("accesslog");
+        errorLog = config.get("errorlog");
+        logFormat = config.get("logging.format");
+        logBufferSize = Integer.parseInt(config.get("logging.buffer"));
+        logPolicy = config.get("logging.policy");
+        logFlushInterval = Long.parseLong(config.get("logging.flush"));
+        threadMode = config.get("threads.mode");
+        maxThreads = Integer.parseInt(config.get("threads.max"));
+        threadQueue = Integer.parseInt(config.get("threads.queue"));
+        drainTimeout = Integer.parseInt(config.get("threads.drain"));
+        engine = config.get("engine.type");
+        reactorCount = Integer.parseInt(config.get("engine.reactors"));
+        cacheSize = Long.parseLong(config.get("cache.size"));
+        cacheMaxFileSize = Long.parseLong(config.get("cache.maxfile"));
+        compressionEnabled = Boolean.parseBoolean(config.get("compression.enabled"));
+        compressionMinSize = Long.parseLong(config.get("compression.minsize"));
+        compressionLevel = Integer.parseInt(config.get("compression.level"));
+        dynamicCacheTtl = parseDuration(config.get("dynamic.cache"));
+        dynamicWorkers = Integer.parseInt(config.get("dynamic.workers"));
+        dynamicTimeout = parseDuration(config.get("dynamic.timeout"));
+        dynamicPageTimeout = parseDuration(config.get("dynamic.pagetimeout"));
+        dynamicMaxProcesses = Integer.parseInt(config.get("dynamic.processes"));
+        mediaPreviewEnabled = Boolean.parseBoolean(config.get("media.preview"));
+        mediaPreviewMaxSize = Long.parseLong(config.get("media.previewmax"));
+        keepAliveTimeout = Integer.parseInt(config.get("keepalive.timeout"));
+        keepAliveMax = Integer.parseInt(config.get("keepalive.max"));
+        rateLimit = Double.parseDouble(config.get("ratelimit.rate"));
+        int burst = Integer.parseInt(config.get("ratelimit.burst"));
+        rateLimitBurst = burst > 0 ? burst : (int) Math.ceil(rateLimit);
+        connectionLimit = Integer.parseInt(config.get("ratelimit.connections"));
+        rateLimitIdle = parseDuration(config.get("ratelimit.idle"));
+        reloadWatch = Boolean.parseBoolean(config.get("reload.watch"));
+        reloadToken = config.get("reload.token");
+        http2Enabled = Boolean.parseBoolean(config.get("http2.enabled"));
+        http2MaxStreams = Math.max(1, Integer.parseInt(config.get("http2.streams")));
+        resolveCacheSize = Integer.parseInt(config.get("resolve.entries"));
+        resolveCacheTtl = parseDuration(config.get("resolve.ttl"));
+        notFoundLogLimit = Integer.parseInt(config.get("notfound.log"));
+        notFoundLogInterval = Math.max(1, parseDuration(config.get("notfound.interval")));
+        int acceptors = Integer.parseInt(config.get("acceptors.count"));
+        acceptorCount = acceptors > 0 ? acceptors : Runtime.getRuntime().availableProcessors();
+        reusePort = Boolean.parseBoolean(config.get("acceptors.reuseport"));
+        backlog = Integer.parseInt(config.get("acceptors.backlog"));
+        tcpNoDelay = Boolean.parseBoolean(config.get("tcp.nodelay"));
+        sendBufferSize = Integer.parseInt(config.get("tcp.sendbuffer"));
+        receiveBufferSize = Integer.parseInt(config.get("tcp.receivebuffer"));
+        for (String value : listenValues) {
+            listenAddresses.add(parseListenAddress(value));
+        }
+        if (listenAddresses.isEmpty()) {
+            listenAddresses.add(new InetSocketAddress(port));
+        }
     }
 
     /**
      * Charge la configuration à partir du fichier XML spécifié.
+     * Les balises absentes, ou toutes les balises si le fichier ne peut pas être lu, prennent leur valeur par défaut.
      *
      * @param path Chemin vers le fichier de configuration XML
      */
-    public void loadConfig(String path) {
+    private void loadConfig(String path) {
+        Document doc = null;
         try {
             File configFile = new File(path);
             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
             DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(configFile);
+            doc = builder.parse(configFile);
             doc.getDocumentElement().normalize();
+        } catch (Exception e) {
+            loadError = e.getMessage();
+            System.out.println("Erreur de chargement de la configuration : " + e.getMessage());
+        }
 
+        try {
             // Récupération des valeurs des balises spécifiées dans le fichier de configuration
             config.put("port", getTagValue("port", doc, "80"));
             config.put("root", getTagValue("root", doc, "."));
             config.put("accesslog", getTagValue("accesslog", doc, "src/logs/access.log"));
             config.put("errorlog", getTagValue("errorlog", doc, "src/logs/error.log"));
 
-            // Traitement des balises <accept> pour récupérer les adresses IP acceptées
-            NodeList acceptNodes = doc.getElementsByTagName("accept");
-            for (int i = 0; i < acceptNodes.getLength(); i++) {
-                String[] ips = acceptNodes.item(i).getTextContent().trim().split("\\s+");
-                for (String ip : ips) {
-                    acceptIPs.add(ip);
-                }
+            // Écriture des logs : <logging format="simple|common|combined" buffer="..." policy="drop|block" flush="..."/>
+            config.put("logging.format", getTagAttribute("logging", "format", doc, "simple"));
+            config.put("logging.buffer", getTagAttribute("logging", "buffer", doc, "8192"));
+            config.put("logging.policy", getTagAttribute("logging", "policy", doc, "drop"));
+            config.put("logging.flush", getTagAttribute("logging", "flush", doc, "200"));
+
+            // Modèle d'exécution des connexions : <threads mode="pool|virtual" max="..." queue="..." drain="..."/>
+            config.put("threads.mode", getTagAttribute("threads", "mode", doc, "pool"));
+            config.put("threads.max", getTagAttribute("threads", "max", doc, "200"));
+            config.put("threads.queue", getTagAttribute("threads", "queue", doc, "100"));
+            config.put("threads.drain", getTagAttribute("threads", "drain", doc, "30"));
+
+            // Moteur du serveur : <engine type="blocking|nio" reactors="..."/>
+            config.put("engine.type", getTagAttribute("engine", "type", doc, "blocking"));
+            config.put("engine.reactors", getTagAttribute("engine", "reactors", doc, "0"));
+
+            // Adresses d'écoute : une balise <listen> par adresse ("8080", "127.0.0.1:8080", "[::1]:8080"),
+            // à défaut toutes les interfaces sur le port de la balise <port>
+            NodeList listenNodes = doc != null ? doc.getElementsByTagName("listen") : null;
+            for (int i = 0; listenNodes != null && i < listenNodes.getLength(); i++) {
+                listenValues.add(listenNodes.item(i).getTextContent().trim());
             }
+            // Acceptation des connexions : <acceptors count="..." reuseport="true|false" backlog="..."/>
+            // (count : boucles d'acceptation par adresse, 0 pour une par cœur)
+            config.put("acceptors.count", getTagAttribute("acceptors", "count", doc, "1"));
+            config.put("acceptors.reuseport", getTagAttribute("acceptors", "reuseport", doc, "true"));
+            config.put("acceptors.backlog", getTagAttribute("acceptors", "backlog", doc, "1024"));
+            // Options des connexions TCP : <tcp nodelay="true|false" sendbuffer="..." receivebuffer="..."/>
+            // (tailles des tampons en octets, 0 pour laisser celles du système)
+            config.put("tcp.nodelay", getTagAttribute("tcp", "nodelay", doc, "true"));
+            config.put("tcp.sendbuffer", getTagAttribute("tcp", "sendbuffer", doc, "0"));
+            config.put("tcp.receivebuffer", getTagAttribute("tcp", "receivebuffer", doc, "0"));
+
+            // Cache des fichiers : <cache size="..." maxfile="..."/> (en octets)
+            config.put("cache.size", getTagAttribute("cache", "size", doc, "16777216"));
+            config.put("cache.maxfile", getTagAttribute("cache", "maxfile", doc, "1048576"));
+
+            // Compression des réponses : <compression enabled="..." minsize="..." level="..."/>
+            config.put("compression.enabled", getTagAttribute("compression", "enabled", doc, "true"));
+            config.put("compression.minsize", getTagAttribute("compression", "minsize", doc, "1024"));
+            config.put("compression.level", getTagAttribute("compression", "level", doc, "6"));
+
+            // Code dynamique : <dynamic cache="..." workers="..."/> (durée de cache par défaut, interpréteurs permanents)
+            config.put("dynamic.cache", getTagAttribute("dynamic", "cache", doc, "0"));
+            config.put("dynamic.workers", getTagAttribute("dynamic", "workers", doc, "0"));
+            // Limites d'exécution : délai par bloc et par page, nombre d'interpréteurs exécutés simultanément
+            config.put("dynamic.timeout", getTagAttribute("dynamic", "timeout", doc, "10s"));
+            config.put("dynamic.pagetimeout", getTagAttribute("dynamic", "pagetimeout", doc, "30s"));
+            config.put("dynamic.processes", getTagAttribute("dynamic", "processes", doc, "8"));
+
+            // Prévisualisation des fichiers multimédias (?preview) : <media preview="true|false" previewmax="..."/>
+            config.put("media.preview", getTagAttribute("media", "preview", doc, "true"));
+            config.put("media.previewmax", getTagAttribute("media", "previewmax", doc, "1048576"));
+
+            // Connexions persistantes : <keepalive timeout="..." max="..."/>
+            config.put("keepalive.timeout", getTagAttribute("keepalive", "timeout", doc, "5"));
+            config.put("keepalive.max", getTagAttribute("keepalive", "max", doc, "100"));
+
+            // HTTP/2 en clair (h2c) : <http2 enabled="true|false" streams="..."/> (flux simultanés par connexion)
+            config.put("http2.enabled", getTagAttribute("http2", "enabled", doc, "true"));
+            config.put("http2.streams", getTagAttribute("http2", "streams", doc, "100"));
+
+            // Résolution des chemins demandés : <resolve entries="..." ttl="..."/> (taille et durée du cache, 404 compris)
+            config.put("resolve.entries", getTagAttribute("resolve", "entries", doc, "4096"));
+            config.put("resolve.ttl", getTagAttribute("resolve", "ttl", doc, "2s"));
+            // Log des fichiers non trouvés : <notfound log="..." interval="..."/> (lignes détaillées par intervalle)
+            config.put("notfound.log", getTagAttribute("notfound", "log", doc, "20"));
+            config.put("notfound.interval", getTagAttribute("notfound", "interval", doc, "60s"));
+
+            // Rechargement à chaud : <reload watch="true|false" token="..."/> (surveillance du fichier de configuration,
+            // jeton exigé par POST /reload ; sans jeton, la page de rechargement est désactivée)
+            config.put("reload.watch", getTagAttribute("reload", "watch", doc, "true"));
+            config.put("reload.token", getTagAttribute("reload", "token", doc, ""));
 
-            // Traitement des balises <reject> pour récupérer les adresses IP rejetées
-            NodeList rejectNodes = doc.getElementsByTagName("reject");
-            for (int i = 0; i < rejectNodes.getLength(); i++) {
-                String[] ips = rejectNodes.item(i).getTextContent().trim().split("\\s+");
-                for (String ip : ips) {
-                    rejectIPs.add(ip);
+            // Limitation par client : <ratelimit rate="..." burst="..." connections="..." idle="...">
+            // avec des limites propres à des préfixes de chemin : <path prefix="/..." rate="..." burst="..."/>
+            config.put("ratelimit.rate", getTagAttribute("ratelimit", "rate", doc, "0"));
+            config.put("ratelimit.burst", getTagAttribute("ratelimit", "burst", doc, "0"));
+            config.put("ratelimit.connections", getTagAttribute("ratelimit", "connections", doc, "0"));
+            config.put("ratelimit.idle", getTagAttribute("ratelimit", "idle", doc, "60s"));
+            NodeList rateLimitNodes = doc != null ? doc.getElementsByTagName("ratelimit") : null;
+            if (rateLimitNodes != null && rateLimitNodes.getLength() > 0) {
+                NodeList pathNodes = ((Element) rateLimitNodes.item(0)).getElementsByTagName("path");
+                for (int i = 0; i < pathNodes.getLength(); i++) {
+                    Element pathNode = (Element) pathNodes.item(i);
+                    double rate = Double.parseDouble(pathNode.getAttribute("rate"));
+                    String burst = pathNode.getAttribute("burst");
+                    pathRateLimits.add(new RateLimiter.PathLimit(pathNode.getAttribute("prefix"), rate,
+                            burst.isEmpty() ? (int) Math.ceil(rate) : Integer.parseInt(burst)));
                 }
             }
-        } catch (Exception e) {
+
+            // Traitement des balises <accept> et <reject> : adresses et réseaux CIDR, dans le texte de la balise
+            // ou dans un fichier désigné par l'attribut file (une règle par ligne, # pour les commentaires)
+            if (doc != null) {
+                loadAddressRules("accept", doc, acceptIPs);
+                loadAddressRules("reject", doc, rejectIPs);
+            }
+        } catch (IOException e) {
+            loadError = e.getMessage();
             System.out.println("Erreur de chargement de la configuration : " + e.getMessage());
         }
     }
 
+    /**
+     * Ajoute à une liste d'adresses les règles de toutes les balises portant le nom donné.
+     * Une règle invalide est signalée puis ignorée.
+     *
+     * @param tag     Nom de la balise XML (accept ou reject)
+     * @param doc     Document XML
+     * @param matcher La liste à compléter
+     * @throws IOException En cas d'erreur de lecture d'un fichier de règles
+     */
+    private void loadAddressRules(String tag, Document doc, IpMatcher matcher) throws IOException {
+        NodeList nodes = doc.getElementsByTagName(tag);
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Element element = (Element) nodes.item(i);
+            StringBuilder rules = new StringBuilder(element.getTextContent());
+            if (!element.getAttribute("file").isEmpty()) {
+                for (String line : Files.readAllLines(Paths.get(element.getAttribute("file")))) {
+                    int comment = line.indexOf('#');
+                    rules.append('\n').append(comment >= 0 ? line.substring(0, comment) : line);
+                }
+            }
+            for (String rule : rules.toString().trim().split("\\s+")) {
+                if (rule.isEmpty()) {
+                    continue;
+                }
+                try {
+                    matcher.add(rule);
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Règle <" + tag + "> ignorée : " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Convertit le contenu d'une balise {@code <listen>} en adresse d'écoute : un port seul
+     * (toutes les interfaces), "adresse:port", ou "[adresse IPv6]:port". "*" désigne toutes les interfaces.
+     *
+     * @param value Le contenu de la balise
+     * @return L'adresse d'écoute
+     * @throws IllegalArgumentException Si l'adresse ou le port est invalide
+     */
+    static InetSocketAddress parseListenAddress(String value) {
+        int colon = value.lastIndexOf(':');
+        if (colon < 0 || (value.startsWith("[") && colon < value.indexOf(']'))) {
+            return new InetSocketAddress(Integer.parseInt(value));
+        }
+        String host = value.substring(0, colon);
+        int port = Integer.parseInt(value.substring(colon + 1));
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        if (host.isEmpty() || host.equals("*")) {
+            return new InetSocketAddress(port);
+        }
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            throw new IllegalArgumentException("adresse d'écoute inconnue : " + value);
+        }
+        return address;
+    }
+
     /**
      * Récupère la valeur d'une balise XML à partir du document.
      *
      * @param tag          Nom de la balise XML
-     * @param doc          Document XML
+     * @param doc          Document XML, null si le fichier n'a pas pu être lu
      * @param defaultValue Valeur par défaut si la balise n'est pas trouvée
      * @return La valeur de la balise XML ou la valeur par défaut si non trouvée
      */
     private String getTagValue(String tag, Document doc, String defaultValue) {
+        if (doc == null) {
+            return defaultValue;
+        }
         NodeList nodeList = doc.getElementsByTagName(tag); // Obtention de la liste des noeuds correspondant au tag spécifié
         if (nodeList.getLength() > 0) {
             return nodeList.item(0).getTextContent(); // Récupération du contenu texte du premier noeud s'il existe
@@ -91,13 +359,100 @@ public class ConfigLoader {
         }
     }
 
+    /**
+     * Récupère la valeur d'un attribut de la première balise XML portant le nom donné.
+     *
+     * @param tag          Nom de la balise XML
+     * @param attribute    Nom de l'attribut
+     * @param doc          Document XML, null si le fichier n'a pas pu être lu
+     * @param defaultValue Valeur par défaut si la balise ou l'attribut n'est pas trouvé
+     * @return La valeur de l'attribut ou la valeur par défaut si non trouvée
+     */
+    private String getTagAttribute(String tag, String attribute, Document doc, String defaultValue) {
+        if (doc == null) {
+            return defaultValue;
+        }
+        NodeList nodeList = doc.getElementsByTagName(tag);
+        if (nodeList.getLength() > 0) {
+            String value = ((Element) nodeList.item(0)).getAttribute(attribute);
+            if (!value.isEmpty()) {
+                return value;
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * Retourne le port configuré pour le serveur.
      *
      * @return Le port configuré
      */
     public int getPort() {
-        return Integer.parseInt(config.get("port")); // Conversion de la valeur du port en entier et retour
+        return port;
+    }
+
+    /**
+     * Retourne les adresses sur lesquelles le serveur écoute.
+     *
+     * @return Les adresses des balises {@code <listen>}, ou toutes les interfaces sur le port configuré
+     */
+    public List<InetSocketAddress> getListenAddresses() {
+        return Collections.unmodifiableList(listenAddresses);
+    }
+
+    /**
+     * Retourne le nombre de boucles d'acceptation par adresse d'écoute.
+     *
+     * @return Le nombre de boucles, un par cœur si la configuration indique 0
+     */
+    public int getAcceptorCount() {
+        return acceptorCount;
+    }
+
+    /**
+     * Indique si chaque boucle d'acceptation doit avoir son propre socket d'écoute (SO_REUSEPORT),
+     * le noyau répartissant alors les connexions entre eux.
+     *
+     * @return true si SO_REUSEPORT doit être utilisé lorsque le système le permet
+     */
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    /**
+     * Retourne la taille de la file des connexions en attente d'acceptation.
+     *
+     * @return La taille de la file, 0 pour la valeur du système
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Indique si l'algorithme de Nagle doit être désactivé sur les connexions (TCP_NODELAY).
+     *
+     * @return true pour envoyer les petits segments sans attendre
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Retourne la taille du tampon d'envoi des connexions (SO_SNDBUF).
+     *
+     * @return La taille en octets, 0 pour la valeur du système
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Retourne la taille du tampon de réception des connexions (SO_RCVBUF).
+     *
+     * @return La taille en octets, 0 pour la valeur du système
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
     }
 
     /**
@@ -106,7 +461,7 @@ public class ConfigLoader {
      * @return Le répertoire racine configuré
      */
     public String getRootDirectory() {
-        return config.get("root");
+        return rootDirectory;
     }
 
     /**
@@ -115,7 +470,7 @@ public class ConfigLoader {
      * @return Le chemin du fichier de log d'accès
      */
     public String getAccessLog() {
-        return config.get("accesslog");
+        return accessLog;
     }
 
     /**
@@ -124,24 +479,408 @@ public class ConfigLoader {
      * @return Le chemin du fichier de log d'erreur
      */
     public String getErrorLog() {
-        return config.get("errorlog");
+        return errorLog;
+    }
+
+    /**
+     * Retourne le format du log d'accès.
+     *
+     * @return "simple", "common" ou "combined"
+     */
+    public String getLogFormat() {
+        return logFormat;
+    }
+
+    /**
+     * Retourne le nombre de messages de log pouvant attendre l'écriture.
+     *
+     * @return La capacité de la file des logs
+     */
+    public int getLogBufferSize() {
+        return logBufferSize;
+    }
+
+    /**
+     * Retourne la politique appliquée lorsque la file des logs est pleine.
+     *
+     * @return "drop" pour perdre le message ou "block" pour faire attendre l'appelant
+     */
+    public String getLogPolicy() {
+        return logPolicy;
+    }
+
+    /**
+     * Retourne le délai maximal avant l'écriture d'un message de log.
+     *
+     * @return Le délai en millisecondes
+     */
+    public long getLogFlushInterval() {
+        return logFlushInterval;
+    }
+
+    /**
+     * Retourne le mode d'exécution des connexions ("pool" ou "virtual").
+     *
+     * @return Le mode d'exécution configuré
+     */
+    public String getThreadMode() {
+        return threadMode;
+    }
+
+    /**
+     * Retourne le nombre maximal de connexions traitées simultanément.
+     *
+     * @return Le nombre maximal de threads (mode pool) ou de connexions (mode virtual)
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Retourne la taille de la file d'attente des connexions en mode pool.
+     *
+     * @return La taille de la file d'attente
+     */
+    public int getThreadQueue() {
+        return threadQueue;
+    }
+
+    /**
+     * Retourne le délai accordé aux connexions en cours lors de l'arrêt du serveur.
+     *
+     * @return Le délai en secondes
+     */
+    public int getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    /**
+     * Retourne le moteur du serveur ("blocking" pour un thread par connexion, "nio" pour les reactors).
+     *
+     * @return Le moteur configuré
+     */
+    public String getEngine() {
+        return engine;
+    }
+
+    /**
+     * Retourne le nombre de threads reactor du moteur NIO.
+     *
+     * @return Le nombre de reactors, 0 pour un reactor par cœur
+     */
+    public int getReactorCount() {
+        return reactorCount;
+    }
+
+    /**
+     * Retourne le budget total du cache de fichiers.
+     *
+     * @return La taille maximale du cache en octets
+     */
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Retourne la taille au-delà de laquelle un fichier n'est pas mis en cache.
+     *
+     * @return La taille maximale d'un fichier en cache, en octets
+     */
+    public long getCacheMaxFileSize() {
+        return cacheMaxFileSize;
+    }
+
+    /**
+     * Indique si la compression des réponses textuelles est activée.
+     *
+     * @return true si la compression est activée
+     */
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * Retourne la taille en dessous de laquelle une réponse n'est pas compressée.
+     *
+     * @return La taille minimale en octets
+     */
+    public long getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    /**
+     * Retourne le niveau de compression gzip.
+     *
+     * @return Le niveau de compression (1 à 9)
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Retourne la durée pendant laquelle le résultat d'un bloc de code dynamique est réutilisé,
+     * lorsque le bloc ne précise pas la sienne.
+     *
+     * @return La durée en millisecondes (0 pour exécuter le bloc à chaque requête)
+     */
+    public long getDynamicCacheTtl() {
+        return dynamicCacheTtl;
+    }
+
+    /**
+     * Retourne le nombre d'interpréteurs permanents gardés en attente pour chaque interpréteur.
+     *
+     * @return Le nombre d'interpréteurs permanents (0 pour lancer un processus à chaque exécution)
+     */
+    public int getDynamicWorkers() {
+        return dynamicWorkers;
+    }
+
+    /**
+     * Retourne le délai d'exécution d'un bloc de code dynamique, lorsque le bloc ne précise pas le sien.
+     *
+     * @return Le délai en millisecondes
+     */
+    public long getDynamicTimeout() {
+        return dynamicTimeout;
+    }
+
+    /**
+     * Retourne le délai d'exécution de l'ensemble des blocs de code d'une page.
+     *
+     * @return Le délai en millisecondes
+     */
+    public long getDynamicPageTimeout() {
+        return dynamicPageTimeout;
+    }
+
+    /**
+     * Retourne le nombre maximal d'interpréteurs exécutant du code simultanément.
+     *
+     * @return Le nombre maximal d'interpréteurs
+     */
+    public int getDynamicMaxProcesses() {
+        return dynamicMaxProcesses;
+    }
+
+    /**
+     * Convertit une durée telle que "500ms", "30s", "5m" ou "2h" en millisecondes.
+     * Un nombre sans unité est exprimé en secondes.
+     *
+     * @param duration La durée à convertir
+     * @return La durée en millisecondes, ou 0 si elle est invalide
+     */
+    public static long parseDuration(String duration) {
+        String value = duration.trim().toLowerCase();
+        long unit = 1000;
+        if (value.endsWith("ms")) {
+            unit = 1;
+            value = value.substring(0, value.length() - 2);
+        } else if (value.endsWith("s")) {
+            value = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("m")) {
+            unit = 60_000;
+            value = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("h")) {
+            unit = 3_600_000;
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * unit);
+        } catch (NumberFormatException e) {
+            Logs.logError("Durée invalide : " + duration);
+            return 0;
+        }
+    }
+
+    /**
+     * Indique si la prévisualisation HTML des images, vidéos et sons (?preview) est activée.
+     *
+     * @return true si la prévisualisation est activée
+     */
+    public boolean isMediaPreviewEnabled() {
+        return mediaPreviewEnabled;
+    }
+
+    /**
+     * Retourne la taille au-delà de laquelle un fichier n'est plus intégré en base64 dans sa prévisualisation.
+     *
+     * @return La taille maximale en octets
+     */
+    public long getMediaPreviewMaxSize() {
+        return mediaPreviewMaxSize;
+    }
+
+    /**
+     * Retourne le délai d'inactivité après lequel une connexion persistante est fermée.
+     *
+     * @return Le délai en secondes
+     */
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    /**
+     * Retourne le nombre maximal de requêtes servies sur une même connexion.
+     *
+     * @return Le nombre maximal de requêtes par connexion
+     */
+    public int getKeepAliveMax() {
+        return keepAliveMax;
+    }
+
+    /**
+     * Retourne le nombre de requêtes par seconde autorisées par client.
+     *
+     * @return Le débit autorisé, 0 si les requêtes ne sont pas limitées
+     */
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Retourne le nombre de requêtes qu'un client peut envoyer en rafale, par défaut le débit autorisé.
+     *
+     * @return La taille de la rafale
+     */
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    /**
+     * Retourne le nombre de connexions simultanées autorisées par client.
+     *
+     * @return Le nombre de connexions, 0 si elles ne sont pas limitées
+     */
+    public int getConnectionLimit() {
+        return connectionLimit;
+    }
+
+    /**
+     * Retourne le délai d'inactivité après lequel l'état d'un client est oublié.
+     *
+     * @return Le délai en millisecondes
+     */
+    public long getRateLimitIdle() {
+        return rateLimitIdle;
+    }
+
+    /**
+     * Indique si les clients peuvent passer en HTTP/2 en clair (préface HTTP/2 ou Upgrade: h2c).
+     *
+     * @return true si HTTP/2 est activé
+     */
+    public boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    /**
+     * Retourne le nombre maximal de flux (requêtes) traités simultanément sur une connexion HTTP/2.
+     *
+     * @return Le nombre maximal de flux simultanés
+     */
+    public int getHttp2MaxStreams() {
+        return http2MaxStreams;
+    }
+
+    /**
+     * Retourne le nombre maximal de chemins dont la résolution est gardée en cache.
+     *
+     * @return Le nombre d'entrées du cache de résolution, 0 pour ne rien garder
+     */
+    public int getResolveCacheSize() {
+        return resolveCacheSize;
+    }
+
+    /**
+     * Retourne la durée pendant laquelle la résolution d'un chemin, trouvé ou non, est réutilisée.
+     * Un fichier créé ou supprimé sur le disque est vu au plus tard après ce délai.
+     *
+     * @return La durée en millisecondes
+     */
+    public long getResolveCacheTtl() {
+        return resolveCacheTtl;
+    }
+
+    /**
+     * Retourne le nombre de fichiers non trouvés journalisés un par un dans chaque intervalle ;
+     * les suivants ne sont que comptés, et le total est journalisé à la fin de l'intervalle.
+     *
+     * @return Le nombre de lignes détaillées par intervalle
+     */
+    public int getNotFoundLogLimit() {
+        return notFoundLogLimit;
+    }
+
+    /**
+     * Retourne la durée d'un intervalle de log des fichiers non trouvés.
+     *
+     * @return La durée en millisecondes
+     */
+    public long getNotFoundLogInterval() {
+        return notFoundLogInterval;
+    }
+
+    /**
+     * Indique si le fichier de configuration doit être surveillé et rechargé dès qu'il est modifié.
+     *
+     * @return true si le fichier est surveillé
+     */
+    public boolean isReloadWatched() {
+        return reloadWatch;
+    }
+
+    /**
+     * Retourne le jeton que doit présenter une demande de rechargement (POST /reload).
+     *
+     * @return Le jeton, ou une chaîne vide si le rechargement à distance est désactivé
+     */
+    public String getReloadToken() {
+        return reloadToken;
+    }
+
+    /**
+     * Retourne le chemin du fichier de configuration chargé.
+     *
+     * @return Le chemin du fichier
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Retourne l'erreur rencontrée à la lecture du fichier de configuration.
+     *
+     * @return Le message d'erreur, ou null si le fichier a été lu sans erreur
+     */
+    public String getLoadError() {
+        return loadError;
+    }
+
+    /**
+     * Retourne les limites de débit propres à des préfixes de chemin.
+     *
+     * @return Les limites par préfixe
+     */
+    public List<RateLimiter.PathLimit> getPathRateLimits() {
+        return Collections.unmodifiableList(pathRateLimits);
     }
 
     /**
-     * Retourne l'ensemble des adresses IP acceptées configurées.
+     * Retourne les adresses et réseaux IP acceptés configurés.
      *
-     * @return L'ensemble des adresses IP acceptées
+     * @return La liste compilée des adresses IP acceptées
      */
-    public Set<String> getAccept() {
+    public IpMatcher getAccept() {
         return acceptIPs;
     }
 
     /**
-     * Retourne l'ensemble des adresses IP rejetées configurées.
+     * Retourne les adresses et réseaux IP rejetés configurés.
      *
-     * @return L'ensemble des adresses IP rejetées
+     * @return La liste compilée des adresses IP rejetées
      */
-    public Set<String> getReject() {
+    public IpMatcher getReject() {
         return rejectIPs;
     }
 }
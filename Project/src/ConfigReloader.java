@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Cette classe déclenche le rechargement de la configuration ({@link HttpServer#reloadConfig()})
+ * lorsque le fichier de configuration est modifié ou que le processus reçoit le signal SIGHUP.
+ * La lecture du nouveau fichier se fait dans un thread dédié, jamais dans un thread qui traite des requêtes.
+ */
+public class ConfigReloader {
+
+    /**
+     * Délai laissé à un éditeur pour finir d'écrire le fichier avant de le relire, en millisecondes.
+     */
+    private static final long SETTLE_DELAY = 200;
+
+    /**
+     * Installe la surveillance du fichier de configuration (si elle est activée) et le traitement de SIGHUP.
+     *
+     * @param config La configuration chargée au démarrage
+     */
+    public static void start(ConfigLoader config) {
+        handleHangup();
+        if (!config.isReloadWatched()) {
+            return;
+        }
+        Path file = Paths.get(config.getPath()).toAbsolutePath();
+        Thread watcher = new Thread(() -> watch(file), "myweb-config");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Recharge la configuration à la réception de SIGHUP. L'API des signaux n'est pas standard :
+     * elle est appelée par réflexion, et son absence ne fait que désactiver ce moyen de rechargement.
+     */
+    private static void handleHangup() {
+        try {
+            Class<?> signalClass = Class.forName("sun.misc.Signal");
+            Class<?> handlerClass = Class.forName("sun.misc.SignalHandler");
+            Object handler = Proxy.newProxyInstance(handlerClass.getClassLoader(), new Class<?>[]{handlerClass},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "handle":
+                                HttpServer.reloadConfig();
+                                return null;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            default:
+                                return "SIGHUP";
+                        }
+                    });
+            Object hangup = signalClass.getConstructor(String.class).newInstance("HUP");
+            signalClass.getMethod("handle", signalClass, handlerClass).invoke(null, hangup, handler);
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            // API absente, ou signal inconnu du système (Windows) ou déjà réservé par la JVM
+            Logs.logError("Rechargement sur SIGHUP indisponible : " + e);
+        }
+    }
+
+    /**
+     * Surveille le répertoire du fichier de configuration : les éditeurs remplacent souvent le fichier
+     * plutôt que de le modifier, ce que seule la surveillance du répertoire permet de voir.
+     *
+     * @param file Le chemin absolu du fichier de configuration
+     */
+    private static void watch(Path file) {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = concernsFile(key, file);
+                key.reset();
+                if (!changed) {
+                    continue;
+                }
+                // Les écritures successives d'une même sauvegarde ne donnent lieu qu'à un rechargement
+                Thread.sleep(SETTLE_DELAY);
+                WatchKey pending;
+                while ((pending = watchService.poll()) != null) {
+                    pending.pollEvents();
+                    pending.reset();
+                }
+                // La surveillance peut avoir été désactivée par un rechargement précédent
+                if (HttpServer.getConfig().isReloadWatched()) {
+                    HttpServer.reloadConfig();
+                }
+            }
+        } catch (IOException e) {
+            Logs.logError("Surveillance de la configuration impossible : " + e.getMessage());
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean concernsFile(WatchKey key, Path file) {
+        boolean concerned = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (file.getFileName().equals(event.context())) {
+                concerned = true;
+            }
+        }
+        return concerned;
+    }
+}
@@ -1,13 +1,353 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Cette classe exécute du code dynamique en utilisant un interpréteur spécifié.
  * Elle envoie le code à l'interpréteur via un processus et récupère la sortie résultante.
+ * Les résultats peuvent être gardés en cache pendant une durée donnée, et les exécutions simultanées
+ * d'un même bloc sont partagées. Pour python et bash, des interpréteurs déjà démarrés reçoivent le code
+ * par un canal qui leur est propre, ce qui évite de créer un processus à chaque exécution ;
+ * le code exécuté a /dev/null pour entrée standard et ne peut pas perturber ce canal.
+ * Chaque exécution a une échéance au-delà de laquelle l'interpréteur et ses processus fils sont tués,
+ * et le nombre d'interpréteurs en cours d'exécution est limité : les exécutions suivantes attendent leur tour.
  */
 public class DynamicCodeExecutor {
 
+    /**
+     * La sortie d'une exécution, partagée par tous les lecteurs : elle est lue morceau par morceau,
+     * au fur et à mesure que l'interpréteur la produit, puis reste disponible en entier une fois terminée.
+     */
+    public static class Output {
+
+        private final List<String> chunks = new ArrayList<>();
+        private boolean done;
+        private IOException error;
+
+        synchronized void append(String chunk) {
+            chunks.add(chunk);
+            notifyAll();
+        }
+
+        synchronized void complete() {
+            done = true;
+            notifyAll();
+        }
+
+        synchronized void fail(IOException e) {
+            error = e;
+            done = true;
+            notifyAll();
+        }
+
+        synchronized boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Indique si le morceau demandé, ou la fin de la sortie, peut être lu sans attendre.
+         *
+         * @param index L'indice du morceau
+         * @return true si next(index, ...) ne bloquera pas
+         */
+        public synchronized boolean isAvailable(int index) {
+            return index < chunks.size() || done;
+        }
+
+        /**
+         * Retourne un morceau de la sortie, en attendant qu'il soit produit.
+         *
+         * @param index    L'indice du morceau
+         * @param deadline L'échéance de l'attente (System.nanoTime)
+         * @return Le morceau, ou null si la sortie est terminée
+         * @throws IOException En cas d'erreur lors de l'exécution ou de délai dépassé
+         */
+        public synchronized String next(int index, long deadline) throws IOException {
+            while (index >= chunks.size()) {
+                if (error != null) {
+                    throw error;
+                }
+                if (done) {
+                    return null;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new IOException("Délai d'exécution dépassé");
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Exécution interrompue");
+                }
+            }
+            return chunks.get(index);
+        }
+
+        /**
+         * Retourne la sortie complète, en attendant la fin de l'exécution.
+         *
+         * @param deadline L'échéance de l'attente (System.nanoTime)
+         * @return La sortie de l'exécution
+         * @throws IOException En cas d'erreur lors de l'exécution ou de délai dépassé
+         */
+        public String get(long deadline) throws IOException {
+            StringBuilder output = new StringBuilder();
+            String chunk;
+            for (int i = 0; (chunk = next(i, deadline)) != null; i++) {
+                output.append(chunk);
+            }
+            return output.toString();
+        }
+    }
+
+    /**
+     * Le résultat, en cours de calcul ou disponible, d'un bloc de code.
+     */
+    private static class Result {
+
+        final Output output = new Output();
+        volatile long expires; // Fin de validité (System.nanoTime), renseignée avant la fin du calcul
+
+        boolean isExpired(long now) {
+            return output.isDone() && now - expires >= 0;
+        }
+    }
+
+    /**
+     * Les places d'exécution simultanée des interpréteurs. Leur nombre peut changer pendant que des exécutions
+     * sont en cours : une réduction fait attendre les exécutions suivantes jusqu'à ce que assez de places soient rendues.
+     */
+    private static final class ProcessSlots extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        private int max;
+
+        ProcessSlots(int max) {
+            super(max, true);
+            this.max = max;
+        }
+
+        synchronized void resize(int newMax) {
+            int delta = newMax - max;
+            max = newMax;
+            if (delta > 0) {
+                release(delta);
+            } else if (delta < 0) {
+                reducePermits(-delta);
+            }
+        }
+    }
+
+    /**
+     * Un interpréteur démarré une fois, qui lit des blocs de code sur le tube de son entrée standard.
+     * Chaque bloc est précédé de sa taille en octets sur une ligne. La sortie est renvoyée au fur et à mesure,
+     * en morceaux précédés chacun de leur taille sur une ligne ; un morceau de taille nulle termine le bloc.
+     * Au démarrage, le programme de l'interpréteur déplace ces tubes vers des descripteurs à part, que le code
+     * exécuté ne peut ni lire ni écrire : son entrée standard est /dev/null et sa sortie standard, comme celle
+     * des processus qu'il lance, est un tube propre au bloc, relu ligne par ligne comme en mode processus.
+     * La sortie d'erreur de l'interpréteur est reportée dans le log d'erreur.
+     */
+    private static class Worker {
+
+        final Process process;
+        final OutputStream in;
+        final InputStream out;
+
+        Worker(Process process) {
+            this.process = process;
+            this.in = new BufferedOutputStream(process.getOutputStream());
+            this.out = new BufferedInputStream(process.getInputStream());
+        }
+
+        /**
+         * Exécute un bloc de code dans l'interpréteur et publie sa sortie morceau par morceau.
+         *
+         * @param code Le code à exécuter
+         * @param sink La sortie de l'exécution
+         * @throws IOException Si l'interpréteur s'est arrêté ou a répondu de façon inattendue
+         */
+        void run(String code, Output sink) throws IOException {
+            byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+            in.write((bytes.length + "\n").getBytes(StandardCharsets.ISO_8859_1));
+            in.write(bytes);
+            in.flush();
+
+            boolean endsWithNewline = true;
+            int size;
+            while ((size = readSize()) > 0) {
+                byte[] chunk = new byte[size];
+                int read = 0;
+                while (read < size) {
+                    int n = out.read(chunk, read, size - read);
+                    if (n < 0) {
+                        throw new IOException("Interpréteur arrêté pendant l'exécution");
+                    }
+                    read += n;
+                }
+                sink.append(new String(chunk, StandardCharsets.UTF_8));
+                endsWithNewline = chunk[size - 1] == '\n';
+            }
+            if (!endsWithNewline) {
+                // Même présentation que la lecture ligne par ligne d'un processus classique
+                sink.append("\n");
+            }
+        }
+
+        /**
+         * Lit la taille d'un morceau de sortie, écrite en décimal sur une ligne.
+         */
+        private int readSize() throws IOException {
+            int size = 0;
+            int digits = 0;
+            int c;
+            while ((c = out.read()) != '\n') {
+                if (c < 0) {
+                    throw new IOException("Interpréteur arrêté pendant l'exécution");
+                }
+                if (c < '0' || c > '9' || ++digits > 9) {
+                    throw new IOException("Réponse invalide de l'interpréteur");
+                }
+                size = size * 10 + (c - '0');
+            }
+            if (digits == 0) {
+                throw new IOException("Réponse invalide de l'interpréteur");
+            }
+            return size;
+        }
+
+        void destroy() {
+            destroyTree(process);
+        }
+    }
+
+    /**
+     * Programme exécuté par un interpréteur python permanent : chaque bloc est exécuté
+     * dans un espace de noms neuf, avec pour sortie standard (descripteur 1 compris) un tube dont un thread
+     * transmet le contenu ligne par ligne ; le bloc se termine lorsque tous les processus qui ont hérité
+     * du tube l'ont fermé. Les exceptions sont écrites sur la sortie d'erreur, que termine un octet nul
+     * à la fin de chaque bloc. Le protocole passe
+     * par des copies des descripteurs 0 et 1, non héritées par les processus fils.
+     */
+    private static final String PYTHON_WORKER = String.join("\n",
+            "import sys, io, os, threading, traceback",
+            "inp = os.fdopen(os.dup(0), 'rb')",
+            "out = os.fdopen(os.dup(1), 'wb')",
+            "null = os.open(os.devnull, os.O_RDWR)",
+            "os.dup2(null, 0)",
+            "os.dup2(null, 1)",
+            "def forward(fd):",
+            "    pending = b''",
+            "    while True:",
+            "        data = os.read(fd, 65536)",
+            "        if not data:",
+            "            break",
+            "        pending += data",
+            "        end = pending.rfind(b'\\n') + 1",
+            "        if end:",
+            "            out.write(b'%d\\n' % end + pending[:end])",
+            "            out.flush()",
+            "            pending = pending[end:]",
+            "    if pending:",
+            "        out.write(b'%d\\n' % len(pending) + pending)",
+            "    os.close(fd)",
+            "while True:",
+            "    size = inp.readline()",
+            "    if not size:",
+            "        break",
+            "    code = inp.read(int(size)).decode('utf-8')",
+            "    r, w = os.pipe()",
+            "    os.dup2(w, 1)",
+            "    os.close(w)",
+            "    reader = threading.Thread(target=forward, args=(r,))",
+            "    reader.start()",
+            "    stdout = io.TextIOWrapper(os.fdopen(1, 'wb', closefd=False), encoding='utf-8', line_buffering=True)",
+            "    sys.stdout = stdout",
+            "    try:",
+            "        exec(compile(code, '<string>', 'exec'), {'__name__': '__main__'})",
+            "    except SystemExit:",
+            "        pass",
+            "    except BaseException as e:",
+            "        traceback.print_exception(type(e), e, e.__traceback__.tb_next)",
+            "    try:",
+            "        stdout.flush()",
+            "    except Exception:",
+            "        pass",
+            "    sys.stdout = sys.__stdout__",
+            "    os.dup2(null, 1)",
+            "    reader.join()",
+            "    try:",
+            "        sys.stderr.flush()",
+            "    except Exception:",
+            "        pass",
+            "    sys.stderr = sys.__stderr__",
+            "    os.write(2, b'\\0')",
+            "    out.write(b'0\\n')",
+            "    out.flush()");
+
+    /**
+     * Programme exécuté par un bash permanent : chaque bloc est évalué dans un sous-shell,
+     * afin que ses variables et répertoires ne se propagent pas aux blocs suivants ; sa sortie, et celle
+     * des processus qu'il lance, est transmise ligne par ligne et sa sortie d'erreur est celle de l'interpréteur,
+     * terminée par un octet nul à la fin de chaque bloc.
+     * Le protocole passe par les descripteurs 3 et 4, fermés pour le code évalué.
+     */
+    private static final String BASH_WORKER = String.join("\n",
+            "export LC_ALL=C",
+            "exec 3<&0 4>&1 </dev/null >/dev/null",
+            "while IFS= read -r size <&3; do",
+            "  IFS= read -r -d '' -n \"$size\" code <&3",
+            "  (eval \"$code\") 3<&- 4>&- | while IFS= read -r line || [ -n \"$line\" ]; do",
+            "    printf '%d\\n%s\\n' \"$(( ${#line} + 1 ))\" \"$line\"",
+            "  done >&4",
+            "  printf '\\0' >&2",
+            "  printf '0\\n' >&4",
+            "done");
+
+    /**
+     * Nombre maximal de résultats gardés en cache.
+     */
+    private static final int MAX_CACHED_RESULTS = 1024;
+
+    /**
+     * Taille maximale de la sortie d'erreur reportée dans le log d'erreur.
+     */
+    private static final int MAX_ERROR_OUTPUT = 512;
+
+    private static final Map<String, Result> results = new ConcurrentHashMap<>();
+    private static final Map<String, BlockingDeque<Worker>> idleWorkers = new ConcurrentHashMap<>();
+    private static volatile ProcessSlots processSlots; // Créé au premier appel, d'après la configuration
+
+    /**
+     * Threads qui exécutent les blocs en parallèle et vident les sorties d'erreur.
+     */
+    private static final ExecutorService background = Executors.newCachedThreadPool(daemonThreads("myweb-dynamic-"));
+
+    /**
+     * Thread qui tue les interpréteurs ayant dépassé leur échéance.
+     */
+    private static final ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, daemonThreads("myweb-dynamic-watchdog-"));
+
+    static {
+        watchdog.setRemoveOnCancelPolicy(true);
+    }
+
     /**
      * Exécute le code spécifié avec l'interpréteur donné.
      *
@@ -16,6 +356,239 @@ public class DynamicCodeExecutor {
      * @return La sortie résultante de l'exécution du code, ou un message d'erreur en cas d'échec
      */
     public static String execute(String interpreter, String code) throws IOException {
+        return execute(interpreter, code, 0);
+    }
+
+    /**
+     * Exécute le code spécifié avec l'interpréteur donné, en réutilisant un résultat encore valide,
+     * dans le délai d'exécution configuré.
+     *
+     * @param interpreter L'interpréteur à utiliser pour exécuter le code
+     * @param code        Le code à exécuter
+     * @param ttlMillis   La durée de validité du résultat en millisecondes (0 pour ne pas le garder)
+     * @return La sortie résultante de l'exécution du code
+     * @throws IOException En cas d'erreur lors de l'exécution ou de délai dépassé
+     */
+    public static String execute(String interpreter, String code, long ttlMillis) throws IOException {
+        return execute(interpreter, code, ttlMillis, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(defaultTimeout()));
+    }
+
+    /**
+     * Exécute le code spécifié avec l'interpréteur donné, en réutilisant un résultat encore valide.
+     * Les appels simultanés pour le même interpréteur et le même code attendent une seule exécution.
+     *
+     * @param interpreter L'interpréteur à utiliser pour exécuter le code
+     * @param code        Le code à exécuter
+     * @param ttlMillis   La durée de validité du résultat en millisecondes (0 pour ne pas le garder)
+     * @param deadline    L'échéance de l'exécution (System.nanoTime)
+     * @return La sortie résultante de l'exécution du code
+     * @throws IOException En cas d'erreur lors de l'exécution ou de délai dépassé
+     */
+    public static String execute(String interpreter, String code, long ttlMillis, long deadline) throws IOException {
+        String key = interpreter + '\u0000' + code;
+        while (true) {
+            Result claimed = claim(key);
+            if (claimed != null) {
+                runInto(claimed, key, interpreter, code, ttlMillis, deadline);
+                return claimed.output.get(deadline);
+            }
+            // Résultat valide ou exécution déjà lancée par un autre thread
+            Result current = results.get(key);
+            if (current != null) {
+                return current.output.get(deadline);
+            }
+        }
+    }
+
+    /**
+     * Lance l'exécution du code dans un thread d'arrière-plan, afin que plusieurs blocs
+     * d'une même page s'exécutent en parallèle et que leur sortie puisse être envoyée au fil de l'eau.
+     * Un résultat encore valide, ou une exécution déjà en cours du même code, est partagé.
+     *
+     * @param interpreter L'interpréteur à utiliser pour exécuter le code
+     * @param code        Le code à exécuter
+     * @param ttlMillis   La durée de validité du résultat en millisecondes
+     * @param deadline    L'échéance de l'exécution (System.nanoTime)
+     * @return La sortie de l'exécution, lisible pendant qu'elle est produite
+     */
+    public static Output submit(String interpreter, String code, long ttlMillis, long deadline) {
+        String key = interpreter + '\u0000' + code;
+        while (true) {
+            Result claimed = claim(key);
+            if (claimed != null) {
+                background.execute(() -> runInto(claimed, key, interpreter, code, ttlMillis, deadline));
+                return claimed.output;
+            }
+            Result current = results.get(key);
+            if (current != null) {
+                return current.output;
+            }
+        }
+    }
+
+    /**
+     * Réserve l'exécution d'un code, sauf si un résultat valide ou une exécution en cours existe déjà.
+     *
+     * @param key La clé du code (interpréteur et code)
+     * @return Le résultat à produire par l'appelant, ou null s'il peut lire le résultat existant
+     */
+    private static Result claim(String key) {
+        while (true) {
+            Result current = results.get(key);
+            if (current != null && !current.isExpired(System.nanoTime())) {
+                return null;
+            }
+            Result mine = new Result();
+            if (current == null ? results.putIfAbsent(key, mine) == null : results.replace(key, current, mine)) {
+                return mine;
+            }
+            // Un autre thread vient de lancer l'exécution
+        }
+    }
+
+    /**
+     * Exécute le code et publie sa sortie dans le résultat réservé.
+     */
+    private static void runInto(Result result, String key, String interpreter, String code, long ttlMillis, long deadline) {
+        long start = System.nanoTime();
+        try {
+            run(interpreter, code, deadline, result.output);
+            Metrics.dynamicExecuted(System.nanoTime() - start, false);
+            result.expires = System.nanoTime() + ttlMillis * 1_000_000;
+            result.output.complete();
+            if (ttlMillis <= 0) {
+                results.remove(key, result);
+            } else if (results.size() > MAX_CACHED_RESULTS) {
+                purgeExpired();
+            }
+        } catch (IOException e) {
+            Metrics.dynamicExecuted(System.nanoTime() - start, true);
+            results.remove(key, result);
+            result.output.fail(e);
+        } catch (RuntimeException e) {
+            Metrics.dynamicExecuted(System.nanoTime() - start, true);
+            results.remove(key, result);
+            result.output.fail(new IOException(e));
+        }
+    }
+
+    /**
+     * Arrête les interpréteurs permanents inactifs.
+     */
+    public static void shutdown() {
+        for (BlockingDeque<Worker> workers : idleWorkers.values()) {
+            Worker worker;
+            while ((worker = workers.poll()) != null) {
+                worker.destroy();
+            }
+        }
+    }
+
+    /**
+     * Retire du cache les résultats expirés, et vide le cache s'il reste plein.
+     */
+    private static void purgeExpired() {
+        long now = System.nanoTime();
+        Iterator<Result> iterator = results.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isExpired(now)) {
+                iterator.remove();
+            }
+        }
+        if (results.size() > MAX_CACHED_RESULTS) {
+            results.values().removeIf(result -> result.output.isDone());
+        }
+    }
+
+    /**
+     * Exécute le code, dans un interpréteur permanent si possible, sinon dans un nouveau processus,
+     * après avoir obtenu une place parmi les interpréteurs autorisés à s'exécuter simultanément.
+     */
+    private static void run(String interpreter, String code, long deadline, Output output) throws IOException {
+        Semaphore slots = processSlots();
+        try {
+            if (!slots.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw new IOException("Délai dépassé en attente d'un interpréteur disponible");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Exécution interrompue");
+        }
+        try {
+            runWithSlot(interpreter, code, deadline, output);
+        } finally {
+            slots.release();
+        }
+    }
+
+    private static void runWithSlot(String interpreter, String code, long deadline, Output sink) throws IOException {
+        String workerScript = workerScript(interpreter);
+        int maxIdle = HttpServer.getConfig() != null ? HttpServer.getConfig().getDynamicWorkers() : 0;
+        if (workerScript == null || maxIdle <= 0) {
+            fork(interpreter, code, deadline, sink);
+            return;
+        }
+
+        BlockingDeque<Worker> idle = idleWorkers.computeIfAbsent(interpreter, name -> new LinkedBlockingDeque<>());
+        Worker worker = idle.pollFirst();
+        while (worker != null && !worker.process.isAlive()) {
+            // Interpréteur arrêté pendant son inactivité : il n'a pas reçu de code, on en prend un autre
+            worker.destroy();
+            worker = idle.pollFirst();
+        }
+        if (worker == null) {
+            Process process = new ProcessBuilder(interpreter, "-c", workerScript).start();
+            background.execute(() -> logWorkerErrors(interpreter, process.getErrorStream()));
+            worker = new Worker(process);
+        }
+        Worker running = worker;
+        AtomicBoolean killed = new AtomicBoolean();
+        ScheduledFuture<?> kill = watchdog.schedule(() -> {
+            killed.set(true);
+            running.destroy();
+        }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        try {
+            worker.run(code, sink);
+        } catch (IOException e) {
+            worker.destroy();
+            if (killed.get()) {
+                throw new IOException("Délai d'exécution dépassé");
+            }
+            // Le code a pu s'exécuter en partie : il n'est pas relancé, le bloc est en erreur
+            Logs.logError("Interpréteur permanent " + interpreter + " arrêté : " + e.getMessage());
+            throw new IOException("Interpréteur arrêté pendant l'exécution", e);
+        } finally {
+            kill.cancel(false);
+        }
+        if (!killed.get() && idle.size() < maxIdle) {
+            idle.offerFirst(worker);
+        } else {
+            worker.destroy();
+        }
+    }
+
+    /**
+     * Retourne le programme à confier à un interpréteur permanent.
+     *
+     * @param interpreter L'interpréteur
+     * @return Le programme, ou null si l'interpréteur n'a pas de mode permanent
+     */
+    private static String workerScript(String interpreter) {
+        String name = new File(interpreter).getName();
+        if (name.startsWith("python3") || name.equals("python")) {
+            return PYTHON_WORKER;
+        }
+        if (name.equals("bash")) {
+            return BASH_WORKER;
+        }
+        return null;
+    }
+
+    /**
+     * Exécute le code dans un nouveau processus de l'interpréteur. La sortie est publiée ligne par ligne ;
+     * la sortie d'erreur est lue en parallèle pour que le processus ne se bloque pas sur un tube plein.
+     */
+    private static void fork(String interpreter, String code, long deadline, Output output) throws IOException {
         List<String> command = new ArrayList<>();
         command.add(interpreter);
         command.add("-c");
@@ -23,16 +596,159 @@ public class DynamicCodeExecutor {
 
         ProcessBuilder processBuilder = new ProcessBuilder(command);
         Process process = processBuilder.start();
+        process.getOutputStream().close();
+        background.execute(() -> drainErrors(interpreter, process.getErrorStream()));
+
+        AtomicBoolean killed = new AtomicBoolean();
+        ScheduledFuture<?> kill = watchdog.schedule(() -> {
+            killed.set(true);
+            destroyTree(process);
+        }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
 
         // Lire la sortie du processus
-        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-        StringBuilder output = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            output.append(line);
-            output.append("\n");
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line + "\n");
+            }
+            if (!process.waitFor(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                killed.set(true);
+                destroyTree(process);
+            }
+        } catch (IOException e) {
+            if (!killed.get()) {
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            destroyTree(process);
+            Thread.currentThread().interrupt();
+            throw new IOException("Exécution interrompue");
+        } finally {
+            kill.cancel(false);
+        }
+        if (killed.get()) {
+            throw new IOException("Délai d'exécution dépassé");
+        }
+    }
+
+    /**
+     * Lit la sortie d'erreur d'un processus jusqu'à sa fermeture et en reporte le début dans le log d'erreur.
+     *
+     * @param interpreter L'interpréteur du processus
+     * @param errors      La sortie d'erreur du processus
+     */
+    private static void drainErrors(String interpreter, InputStream errors) {
+        byte[] kept = new byte[MAX_ERROR_OUTPUT];
+        int length = 0;
+        byte[] buffer = new byte[4096];
+        try (InputStream in = errors) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                int copied = Math.min(n, kept.length - length);
+                System.arraycopy(buffer, 0, kept, length, copied);
+                length += copied;
+            }
+        } catch (IOException e) {
+            // Processus tué : la sortie d'erreur est fermée
         }
+        reportErrors(interpreter, kept, length);
+    }
+
+    /**
+     * Reporte dans le log d'erreur la sortie d'erreur d'un interpréteur permanent, bloc par bloc :
+     * l'interpréteur termine la sortie d'erreur de chaque bloc par un octet nul.
+     *
+     * @param interpreter L'interpréteur
+     * @param errors      La sortie d'erreur de l'interpréteur, fermée à son arrêt
+     */
+    private static void logWorkerErrors(String interpreter, InputStream errors) {
+        byte[] kept = new byte[MAX_ERROR_OUTPUT];
+        int length = 0;
+        byte[] buffer = new byte[4096];
+        try (InputStream in = errors) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] == 0) {
+                        reportErrors(interpreter, kept, length);
+                        length = 0;
+                    } else if (length < kept.length) {
+                        kept[length++] = buffer[i];
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Interpréteur tué : la sortie d'erreur est fermée
+        }
+        reportErrors(interpreter, kept, length);
+    }
+
+    /**
+     * Reporte le début de la sortie d'erreur d'un bloc dans le log d'erreur, sur une ligne.
+     */
+    private static void reportErrors(String interpreter, byte[] kept, int length) {
+        String message = new String(kept, 0, length, StandardCharsets.UTF_8).trim().replace('\n', ' ');
+        if (!message.isEmpty()) {
+            Logs.logError("Sortie d'erreur de " + interpreter + " : " + message);
+        }
+    }
 
-        return output.toString();
+    /**
+     * Tue un processus ainsi que tous ses descendants.
+     *
+     * @param process Le processus
+     */
+    private static void destroyTree(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    /**
+     * Retourne le sémaphore limitant le nombre d'interpréteurs exécutés simultanément.
+     */
+    private static ProcessSlots processSlots() {
+        ProcessSlots slots = processSlots;
+        if (slots == null) {
+            synchronized (DynamicCodeExecutor.class) {
+                slots = processSlots;
+                if (slots == null) {
+                    int max = HttpServer.getConfig() != null ? HttpServer.getConfig().getDynamicMaxProcesses() : 8;
+                    slots = new ProcessSlots(Math.max(1, max));
+                    processSlots = slots;
+                }
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Modifie le nombre d'interpréteurs autorisés à s'exécuter simultanément, par exemple après un rechargement
+     * de la configuration. Les exécutions en cours se terminent normalement.
+     *
+     * @param max Le nombre maximal d'interpréteurs simultanés
+     */
+    public static void setMaxProcesses(int max) {
+        processSlots().resize(Math.max(1, max));
+    }
+
+    /**
+     * Retourne le délai d'exécution par défaut d'un bloc.
+     *
+     * @return Le délai en millisecondes
+     */
+    private static long defaultTimeout() {
+        return HttpServer.getConfig() != null ? HttpServer.getConfig().getDynamicTimeout() : 10_000;
+    }
+
+    /**
+     * Fabrique de threads démons nommés, pour que ces threads n'empêchent pas l'arrêt du serveur.
+     */
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger number = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 }
@@ -0,0 +1,453 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cette classe conserve en mémoire le contenu des fichiers servis, indexés par leur chemin résolu.
+ * La taille totale est bornée : les entrées les moins récemment utilisées sont évincées en premier.
+ * Une entrée est invalidée dès que la date de modification ou la taille du fichier change.
+ */
+public class FileCache {
+
+    /**
+     * Une version en cache d'un fichier : son contenu, son type MIME, ses validateurs (ETag, Last-Modified)
+     * et l'en-tête de réponse 200 préconstruit. Le contenu est absent pour les fichiers trop volumineux,
+     * qui sont envoyés depuis le disque mais dont les métadonnées restent en cache.
+     */
+    public static class Entry {
+
+        private final byte[] data;
+        private final String mimeType;
+        private final long size;
+        private final long lastModified;
+        private final String etag;
+        private final String lastModifiedHttp;
+        private final byte[] responseHead;
+        private volatile Entry gzipped;      // Variante compressée à la volée, créée au premier besoin
+        private volatile Entry encodedView;  // Vue d'un fichier précompressé (.gz, .br) sous le type du fichier d'origine
+        private volatile PageTemplate template; // Modèle d'une page HTML, analysé au premier besoin
+        private volatile byte[] preview;        // Page de prévisualisation d'un fichier multimédia
+        private volatile Siblings siblings;     // Fichiers précompressés voisins, recherchés au premier besoin
+
+        Entry(byte[] data, String mimeType, long size, long lastModified) {
+            this(data, mimeType, size, lastModified, null,
+                    "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(size) + "\"");
+        }
+
+        private Entry(byte[] data, String mimeType, long size, long lastModified, String contentEncoding, String etag) {
+            this.data = data;
+            this.mimeType = mimeType;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.etag = etag;
+            this.lastModifiedHttp = HTTP_DATE.format(Instant.ofEpochMilli(lastModified));
+            StringBuilder head = new StringBuilder("HTTP/1.1 200 OK\r\n")
+                    .append("Content-Type: ").append(mimeType).append("\r\n")
+                    .append("Content-Length: ").append(size).append("\r\n");
+            if (contentEncoding != null) {
+                head.append("Content-Encoding: ").append(contentEncoding).append("\r\n");
+            }
+            if (isCompressible(mimeType)) {
+                head.append("Vary: Accept-Encoding\r\n");
+            }
+            head.append("ETag: ").append(etag).append("\r\n")
+                    .append("Last-Modified: ").append(lastModifiedHttp).append("\r\n")
+                    .append("Accept-Ranges: bytes\r\n");
+            this.responseHead = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        /**
+         * Retourne ce fichier précompressé présenté comme une variante encodée d'un autre fichier :
+         * même contenu et même ETag, mais avec le type MIME d'origine et l'en-tête Content-Encoding.
+         *
+         * @param originalMimeType Le type MIME du fichier non compressé
+         * @param encoding         Le codage du fichier (gzip, br)
+         * @return La variante encodée
+         */
+        public Entry asEncoding(String originalMimeType, String encoding) {
+            Entry view = encodedView;
+            if (view == null || !view.mimeType.equals(originalMimeType)) {
+                view = new Entry(data, originalMimeType, size, lastModified, encoding, etag);
+                encodedView = view;
+            }
+            return view;
+        }
+
+        /**
+         * Retourne le contenu du fichier.
+         *
+         * @return Le contenu, ou null si le fichier est trop volumineux pour être gardé en mémoire
+         */
+        public byte[] getData() {
+            return data;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * Retourne la date de modification au format des dates HTTP (RFC 7231).
+         *
+         * @return La date de modification formatée
+         */
+        public String getLastModifiedHttp() {
+            return lastModifiedHttp;
+        }
+
+        /**
+         * Retourne la ligne de statut et les en-têtes d'une réponse 200 pour ce fichier,
+         * sans l'en-tête Connection ni la ligne vide finale.
+         *
+         * @return L'en-tête préconstruit, encodé en ISO-8859-1
+         */
+        public byte[] getResponseHead() {
+            return responseHead;
+        }
+
+        /**
+         * Retourne la place occupée par l'entrée dans le budget du cache.
+         *
+         * @return La taille du contenu plus un forfait pour les métadonnées
+         */
+        private long weight() {
+            Entry compressed = gzipped;
+            PageTemplate page = template;
+            byte[] previewPage = preview;
+            return ENTRY_OVERHEAD + (data != null ? data.length : 0) + (compressed != null ? compressed.size : 0)
+                    + (page != null ? page.getSize() : 0) + (previewPage != null ? previewPage.length : 0);
+        }
+    }
+
+    /**
+     * Les fichiers précompressés voisins d'un fichier (.br, .gz).
+     */
+    public static final class Siblings {
+
+        private final Path brotli;
+        private final Path gzip;
+
+        private Siblings(Path brotli, Path gzip) {
+            this.brotli = brotli;
+            this.gzip = gzip;
+        }
+
+        /**
+         * Retourne le fichier compressé en Brotli.
+         *
+         * @return Le fichier ".br", ou null s'il n'existe pas
+         */
+        public Path getBrotli() {
+            return brotli;
+        }
+
+        /**
+         * Retourne le fichier compressé en gzip.
+         *
+         * @return Le fichier ".gz", ou null s'il n'existe pas
+         */
+        public Path getGzip() {
+            return gzip;
+        }
+    }
+
+    /**
+     * Construction d'une page de prévisualisation.
+     */
+    public interface PreviewBuilder {
+
+        byte[] build() throws IOException;
+    }
+
+    /**
+     * Format des dates HTTP, par exemple "Sun, 06 Nov 1994 08:49:37 GMT".
+     */
+    public static final DateTimeFormatter HTTP_DATE =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    /**
+     * Place forfaitaire comptée pour les métadonnées d'une entrée.
+     */
+    private static final long ENTRY_OVERHEAD = 256;
+
+    private volatile long maxBytes;    // Budget total en octets
+    private volatile long maxFileSize; // Taille maximale d'un fichier mis en cache
+    private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // Ordre d'accès (LRU)
+    private long usedBytes;           // Protégé par le moniteur du cache
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructeur de la classe FileCache.
+     *
+     * @param maxBytes    Le budget total en octets
+     * @param maxFileSize La taille maximale d'un fichier mis en cache
+     */
+    public FileCache(long maxBytes, long maxFileSize) {
+        this.maxBytes = maxBytes;
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Retourne le fichier depuis le cache, en le chargeant depuis le disque s'il est absent ou modifié.
+     *
+     * @param path Le chemin résolu du fichier
+     * @return L'entrée du fichier, sans contenu s'il est trop volumineux pour être gardé en mémoire
+     * @throws IOException En cas d'erreur lors de la lecture du fichier
+     */
+    public Entry get(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+
+        synchronized (this) {
+            Entry entry = entries.get(path);
+            if (entry != null && entry.lastModified == lastModified && entry.size == size) {
+                hits.increment();
+                return entry;
+            }
+        }
+        misses.increment();
+
+        String mimeType = Files.probeContentType(path);
+        if (mimeType == null) {
+            mimeType = "application/octet-stream";
+        }
+        byte[] data = size <= maxFileSize && size <= maxBytes ? Files.readAllBytes(path) : null;
+        Entry entry = new Entry(data, mimeType, size, lastModified);
+
+        synchronized (this) {
+            Entry previous = entries.put(path, entry);
+            if (previous != null) {
+                usedBytes -= previous.weight();
+            }
+            usedBytes += entry.weight();
+            evict();
+        }
+        return entry;
+    }
+
+    /**
+     * Retourne la variante gzip d'un fichier en cache, compressée une seule fois
+     * puis conservée à côté du contenu d'origine et comptée dans le budget du cache.
+     *
+     * @param path  Le chemin résolu du fichier
+     * @param entry L'entrée du fichier, dont le contenu est en mémoire
+     * @param level Le niveau de compression (1 à 9)
+     * @return La variante compressée
+     * @throws IOException En cas d'erreur de compression
+     */
+    public Entry gzip(Path path, Entry entry, int level) throws IOException {
+        Entry compressed = entry.gzipped;
+        if (compressed != null) {
+            return compressed;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(entry.data.length / 3);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(buffer) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(entry.data);
+        }
+        byte[] data = buffer.toByteArray();
+        String etag = entry.etag.substring(0, entry.etag.length() - 1) + "-gzip\"";
+        compressed = new Entry(data, entry.mimeType, data.length, entry.lastModified, "gzip", etag);
+
+        synchronized (this) {
+            if (entry.gzipped == null) {
+                entry.gzipped = compressed;
+                if (entries.get(path) == entry) {
+                    usedBytes += data.length;
+                    evict();
+                }
+            }
+            return entry.gzipped;
+        }
+    }
+
+    /**
+     * Retourne le modèle d'une page HTML en cache, analysé une seule fois puis conservé avec l'entrée :
+     * il est donc invalidé en même temps qu'elle lorsque le fichier change.
+     *
+     * @param path  Le chemin résolu du fichier
+     * @param entry L'entrée du fichier
+     * @return Le modèle de la page
+     * @throws IOException En cas d'erreur lors de la lecture d'un fichier trop volumineux pour être en mémoire
+     */
+    public PageTemplate template(Path path, Entry entry) throws IOException {
+        PageTemplate page = entry.template;
+        if (page != null) {
+            return page;
+        }
+        page = PageTemplate.parse(entry.data != null ? entry.data : Files.readAllBytes(path));
+
+        synchronized (this) {
+            if (entry.template == null) {
+                entry.template = page;
+                if (entries.get(path) == entry) {
+                    usedBytes += page.getSize();
+                    evict();
+                }
+            }
+            return entry.template;
+        }
+    }
+
+    /**
+     * Retourne la page de prévisualisation d'un fichier multimédia, construite une seule fois
+     * puis conservée avec l'entrée et comptée dans le budget du cache.
+     *
+     * @param path    Le chemin résolu du fichier
+     * @param entry   L'entrée du fichier
+     * @param builder La construction de la page, appelée si elle n'est pas encore en cache
+     * @return La page de prévisualisation
+     * @throws IOException En cas d'erreur lors de la construction de la page
+     */
+    public byte[] preview(Path path, Entry entry, PreviewBuilder builder) throws IOException {
+        byte[] page = entry.preview;
+        if (page != null) {
+            return page;
+        }
+        page = builder.build();
+
+        synchronized (this) {
+            if (entry.preview == null) {
+                entry.preview = page;
+                if (entries.get(path) == entry) {
+                    usedBytes += page.length;
+                    evict();
+                }
+            }
+            return entry.preview;
+        }
+    }
+
+    /**
+     * Retourne les fichiers précompressés voisins d'un fichier en cache, recherchés une seule fois
+     * puis conservés avec l'entrée : ils sont de nouveau recherchés lorsque le fichier change ou sort du cache,
+     * ce qui évite de consulter le disque pour chaque requête compressible.
+     *
+     * @param path  Le chemin résolu du fichier
+     * @param entry L'entrée du fichier
+     * @return Les fichiers ".br" et ".gz" présents à côté du fichier
+     */
+    public Siblings siblings(Path path, Entry entry) {
+        Siblings found = entry.siblings;
+        if (found == null) {
+            found = new Siblings(sibling(path, ".br"), sibling(path, ".gz"));
+            entry.siblings = found;
+        }
+        return found;
+    }
+
+    /**
+     * Oublie les fichiers précompressés voisins d'une entrée, par exemple lorsque l'un d'eux a disparu.
+     *
+     * @param entry L'entrée du fichier
+     */
+    public void forgetSiblings(Entry entry) {
+        entry.siblings = null;
+    }
+
+    private static Path sibling(Path path, String extension) {
+        Path sibling = path.resolveSibling(path.getFileName() + extension);
+        return Files.isRegularFile(sibling) ? sibling : null;
+    }
+
+    /**
+     * Indique si un type MIME gagne à être compressé (formats textuels).
+     *
+     * @param mimeType Le type MIME
+     * @return true pour les types textuels, JavaScript, JSON, XML et SVG
+     */
+    public static boolean isCompressible(String mimeType) {
+        return mimeType.startsWith("text/")
+                || mimeType.equals("application/javascript")
+                || mimeType.equals("application/x-javascript")
+                || mimeType.equals("application/json")
+                || mimeType.equals("application/xml")
+                || mimeType.endsWith("+xml")
+                || mimeType.endsWith("+json");
+    }
+
+    /**
+     * Évince les entrées les moins récemment utilisées jusqu'à revenir sous le budget.
+     */
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            usedBytes -= iterator.next().weight();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Modifie le budget du cache, par exemple après un rechargement de la configuration.
+     * Les entrées en trop sont évincées ; les fichiers devenus trop gros sortiront du cache
+     * à leur prochaine modification.
+     *
+     * @param maxBytes    Le budget total en octets
+     * @param maxFileSize La taille maximale d'un fichier mis en cache
+     */
+    public synchronized void setLimits(long maxBytes, long maxFileSize) {
+        this.maxBytes = maxBytes;
+        this.maxFileSize = maxFileSize;
+        evict();
+    }
+
+    /**
+     * Vide le cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+}
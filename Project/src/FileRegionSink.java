@@ -0,0 +1,19 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Interface des flux de sortie capables d'envoyer une portion de fichier sans la copier
+ * dans le tas Java (sendfile pour le moteur bloquant, projection mémoire pour le moteur NIO).
+ */
+public interface FileRegionSink {
+
+    /**
+     * Envoie une portion de fichier après les données déjà écrites dans le flux.
+     *
+     * @param file     Le canal du fichier, fermé par l'appelant après l'appel
+     * @param position La position du premier octet à envoyer
+     * @param count    Le nombre d'octets à envoyer
+     * @throws IOException En cas d'erreur de lecture ou d'écriture
+     */
+    void transferFile(FileChannel file, long position, long count) throws IOException;
+}
@@ -0,0 +1,553 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cette classe implémente la compression des en-têtes de HTTP/2 (HPACK, RFC 7541) :
+ * la table statique, les tables dynamiques et le codage de Huffman.
+ * Chaque connexion possède un décodeur pour les requêtes et un encodeur pour les réponses ;
+ * leurs tables évoluent au fil des blocs d'en-têtes, qui doivent donc être traités dans l'ordre de la connexion.
+ */
+public class Hpack {
+
+    /**
+     * Taille de table dynamique utilisée par défaut et annoncée par le serveur, en octets.
+     */
+    public static final int DEFAULT_TABLE_SIZE = 4096;
+
+    /**
+     * Surcoût forfaitaire d'une entrée dans la taille d'une table dynamique (RFC 7541, 4.1).
+     */
+    private static final int ENTRY_OVERHEAD = 32;
+
+    /**
+     * Un en-tête : nom et valeur, tels qu'ils sont transmis (ISO-8859-1).
+     */
+    public static final class Header {
+
+        private final String name;
+        private final String value;
+
+        Header(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * Retourne la place occupée par l'en-tête dans une table dynamique ou une liste d'en-têtes.
+         *
+         * @return La taille en octets
+         */
+        public int size() {
+            return name.length() + value.length() + ENTRY_OVERHEAD;
+        }
+    }
+
+    /**
+     * Erreur de décodage d'un bloc d'en-têtes ; la connexion ne peut plus être utilisée.
+     */
+    public static class CompressionException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        CompressionException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Table statique (RFC 7541, annexe A), indexée à partir de 1.
+     */
+    private static final Header[] STATIC_TABLE = {
+            null,
+            new Header(":authority", ""),
+            new Header(":method", "GET"),
+            new Header(":method", "POST"),
+            new Header(":path", "/"),
+            new Header(":path", "/index.html"),
+            new Header(":scheme", "http"),
+            new Header(":scheme", "https"),
+            new Header(":status", "200"),
+            new Header(":status", "204"),
+            new Header(":status", "206"),
+            new Header(":status", "304"),
+            new Header(":status", "400"),
+            new Header(":status", "404"),
+            new Header(":status", "500"),
+            new Header("accept-charset", ""),
+            new Header("accept-encoding", "gzip, deflate"),
+            new Header("accept-language", ""),
+            new Header("accept-ranges", ""),
+            new Header("accept", ""),
+            new Header("access-control-allow-origin", ""),
+            new Header("age", ""),
+            new Header("allow", ""),
+            new Header("authorization", ""),
+            new Header("cache-control", ""),
+            new Header("content-disposition", ""),
+            new Header("content-encoding", ""),
+            new Header("content-language", ""),
+            new Header("content-length", ""),
+            new Header("content-location", ""),
+            new Header("content-range", ""),
+            new Header("content-type", ""),
+            new Header("cookie", ""),
+            new Header("date", ""),
+            new Header("etag", ""),
+            new Header("expect", ""),
+            new Header("expires", ""),
+            new Header("from", ""),
+            new Header("host", ""),
+            new Header("if-match", ""),
+            new Header("if-modified-since", ""),
+            new Header("if-none-match", ""),
+            new Header("if-range", ""),
+            new Header("if-unmodified-since", ""),
+            new Header("last-modified", ""),
+            new Header("link", ""),
+            new Header("location", ""),
+            new Header("max-forwards", ""),
+            new Header("proxy-authenticate", ""),
+            new Header("proxy-authorization", ""),
+            new Header("range", ""),
+            new Header("referer", ""),
+            new Header("refresh", ""),
+            new Header("retry-after", ""),
+            new Header("server", ""),
+            new Header("set-cookie", ""),
+            new Header("strict-transport-security", ""),
+            new Header("transfer-encoding", ""),
+            new Header("user-agent", ""),
+            new Header("vary", ""),
+            new Header("via", ""),
+            new Header("www-authenticate", ""),
+    };
+
+    /**
+     * Index de la table statique : première entrée portant un nom, et entrée portant un nom et une valeur.
+     */
+    private static final Map<String, Integer> STATIC_NAMES = new HashMap<>();
+    private static final Map<String, Integer> STATIC_ENTRIES = new HashMap<>();
+
+    /**
+     * Code de Huffman de chaque octet (RFC 7541, annexe B), aligné à droite, et sa longueur en bits.
+     */
+    private static final int[] HUFFMAN_CODES = {
+            0x1ff8, 0x7fffd8, 0xfffffe2, 0xfffffe3, 0xfffffe4, 0xfffffe5, 0xfffffe6, 0xfffffe7,
+            0xfffffe8, 0xffffea, 0x3ffffffc, 0xfffffe9, 0xfffffea, 0x3ffffffd, 0xfffffeb, 0xfffffec,
+            0xfffffed, 0xfffffee, 0xfffffef, 0xffffff0, 0xffffff1, 0xffffff2, 0x3ffffffe, 0xffffff3,
+            0xffffff4, 0xffffff5, 0xffffff6, 0xffffff7, 0xffffff8, 0xffffff9, 0xffffffa, 0xffffffb,
+            0x14, 0x3f8, 0x3f9, 0xffa, 0x1ff9, 0x15, 0xf8, 0x7fa,
+            0x3fa, 0x3fb, 0xf9, 0x7fb, 0xfa, 0x16, 0x17, 0x18,
+            0x0, 0x1, 0x2, 0x19, 0x1a, 0x1b, 0x1c, 0x1d,
+            0x1e, 0x1f, 0x5c, 0xfb, 0x7ffc, 0x20, 0xffb, 0x3fc,
+            0x1ffa, 0x21, 0x5d, 0x5e, 0x5f, 0x60, 0x61, 0x62,
+            0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a,
+            0x6b, 0x6c, 0x6d, 0x6e, 0x6f, 0x70, 0x71, 0x72,
+            0xfc, 0x73, 0xfd, 0x1ffb, 0x7fff0, 0x1ffc, 0x3ffc, 0x22,
+            0x7ffd, 0x3, 0x23, 0x4, 0x24, 0x5, 0x25, 0x26,
+            0x27, 0x6, 0x74, 0x75, 0x28, 0x29, 0x2a, 0x7,
+            0x2b, 0x76, 0x2c, 0x8, 0x9, 0x2d, 0x77, 0x78,
+            0x79, 0x7a, 0x7b, 0x7ffe, 0x7fc, 0x3ffd, 0x1ffd, 0xffffffc,
+            0xfffe6, 0x3fffd2, 0xfffe7, 0xfffe8, 0x3fffd3, 0x3fffd4, 0x3fffd5, 0x7fffd9,
+            0x3fffd6, 0x7fffda, 0x7fffdb, 0x7fffdc, 0x7fffdd, 0x7fffde, 0xffffeb, 0x7fffdf,
+            0xffffec, 0xffffed, 0x3fffd7, 0x7fffe0, 0xffffee, 0x7fffe1, 0x7fffe2, 0x7fffe3,
+            0x7fffe4, 0x1fffdc, 0x3fffd8, 0x7fffe5, 0x3fffd9, 0x7fffe6, 0x7fffe7, 0xffffef,
+            0x3fffda, 0x1fffdd, 0xfffe9, 0x3fffdb, 0x3fffdc, 0x7fffe8, 0x7fffe9, 0x1fffde,
+            0x7fffea, 0x3fffdd, 0x3fffde, 0xfffff0, 0x1fffdf, 0x3fffdf, 0x7fffeb, 0x7fffec,
+            0x1fffe0, 0x1fffe1, 0x3fffe0, 0x1fffe2, 0x7fffed, 0x3fffe1, 0x7fffee, 0x7fffef,
+            0xfffea, 0x3fffe2, 0x3fffe3, 0x3fffe4, 0x7ffff0, 0x3fffe5, 0x3fffe6, 0x7ffff1,
+            0x3ffffe0, 0x3ffffe1, 0xfffeb, 0x7fff1, 0x3fffe7, 0x7ffff2, 0x3fffe8, 0x1ffffec,
+            0x3ffffe2, 0x3ffffe3, 0x3ffffe4, 0x7ffffde, 0x7ffffdf, 0x3ffffe5, 0xfffff1, 0x1ffffed,
+            0x7fff2, 0x1fffe3, 0x3ffffe6, 0x7ffffe0, 0x7ffffe1, 0x3ffffe7, 0x7ffffe2, 0xfffff2,
+            0x1fffe4, 0x1fffe5, 0x3ffffe8, 0x3ffffe9, 0xffffffd, 0x7ffffe3, 0x7ffffe4, 0x7ffffe5,
+            0xfffec, 0xfffff3, 0xfffed, 0x1fffe6, 0x3fffe9, 0x1fffe7, 0x1fffe8, 0x7ffff3,
+            0x3fffea, 0x3fffeb, 0x1ffffee, 0x1ffffef, 0xfffff4, 0xfffff5, 0x3ffffea, 0x7ffff4,
+            0x3ffffeb, 0x7ffffe6, 0x3ffffec, 0x3ffffed, 0x7ffffe7, 0x7ffffe8, 0x7ffffe9, 0x7ffffea,
+            0x7ffffeb, 0xffffffe, 0x7ffffec, 0x7ffffed, 0x7ffffee, 0x7ffffef, 0x7fffff0, 0x3ffffee,
+    };
+    private static final byte[] HUFFMAN_LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+            28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+            5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+            6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+            24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+            21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+            19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+            26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+    };
+
+    /**
+     * Arbre de décodage de Huffman, stocké dans des tableaux : le noeud 0 est la racine,
+     * une feuille porte l'octet décodé, un noeud interne la valeur -1.
+     */
+    private static final int[] HUFFMAN_ZERO = new int[512];
+    private static final int[] HUFFMAN_ONE = new int[512];
+    private static final int[] HUFFMAN_SYMBOL = new int[512];
+
+    static {
+        for (int i = STATIC_TABLE.length - 1; i > 0; i--) {
+            STATIC_NAMES.put(STATIC_TABLE[i].name, i);
+            STATIC_ENTRIES.put(STATIC_TABLE[i].name + '\0' + STATIC_TABLE[i].value, i);
+        }
+        HUFFMAN_SYMBOL[0] = -1;
+        int nodeCount = 1;
+        for (int symbol = 0; symbol < 256; symbol++) {
+            int node = 0;
+            for (int bit = HUFFMAN_LENGTHS[symbol] - 1; bit >= 0; bit--) {
+                int[] children = (HUFFMAN_CODES[symbol] >>> bit & 1) != 0 ? HUFFMAN_ONE : HUFFMAN_ZERO;
+                if (children[node] == 0) {
+                    HUFFMAN_SYMBOL[nodeCount] = -1;
+                    children[node] = nodeCount++;
+                }
+                node = children[node];
+            }
+            HUFFMAN_SYMBOL[node] = symbol;
+        }
+    }
+
+    /**
+     * Table dynamique : les entrées les plus récentes ont les plus petits index.
+     */
+    private static final class DynamicTable {
+
+        private final List<Header> entries = new ArrayList<>(); // De la plus ancienne à la plus récente
+        private int size;
+        private int maxSize = DEFAULT_TABLE_SIZE;
+
+        Header get(int index) {
+            return entries.get(entries.size() - 1 - index);
+        }
+
+        int length() {
+            return entries.size();
+        }
+
+        void add(Header header) {
+            size += header.size();
+            entries.add(header);
+            evict();
+        }
+
+        void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            evict();
+        }
+
+        private void evict() {
+            // Une entrée plus grande que la table la vide sans y être conservée
+            while (size > maxSize) {
+                size -= entries.remove(0).size();
+            }
+        }
+    }
+
+    /**
+     * Décodeur des blocs d'en-têtes reçus.
+     */
+    public static final class Decoder {
+
+        private final DynamicTable table = new DynamicTable();
+        private final int maxTableSize;
+
+        /**
+         * Constructeur de la classe Decoder.
+         *
+         * @param maxTableSize La taille de table dynamique annoncée au client (SETTINGS_HEADER_TABLE_SIZE)
+         */
+        public Decoder(int maxTableSize) {
+            this.maxTableSize = maxTableSize;
+            table.setMaxSize(maxTableSize);
+        }
+
+        /**
+         * Décode un bloc d'en-têtes complet. Un bloc dont la liste d'en-têtes dépasse la taille maximale
+         * est tout de même décodé jusqu'au bout, pour que la table dynamique reste synchronisée avec le client.
+         *
+         * @param block       Les octets du bloc
+         * @param length      La longueur du bloc
+         * @param maxListSize La taille maximale de la liste d'en-têtes (SETTINGS_MAX_HEADER_LIST_SIZE)
+         * @return Les en-têtes, dans l'ordre du bloc, ou null si la liste dépasse la taille maximale
+         * @throws CompressionException Si le bloc est mal formé
+         */
+        public List<Header> decode(byte[] block, int length, int maxListSize) throws CompressionException {
+            List<Header> headers = new ArrayList<>();
+            int listSize = 0;
+            boolean first = true;
+            int[] position = {0};
+            while (position[0] < length) {
+                int b = block[position[0]] & 0xff;
+                Header header;
+                if ((b & 0x80) != 0) {
+                    // Champ indexé
+                    header = lookup(readInteger(block, position, length, 7));
+                } else if ((b & 0x40) != 0) {
+                    // Littéral ajouté à la table dynamique
+                    header = readLiteral(block, position, length, 6);
+                    table.add(header);
+                } else if ((b & 0x20) != 0) {
+                    // Mise à jour de la taille de la table, seulement avant le premier champ
+                    int size = readInteger(block, position, length, 5);
+                    if (size > maxTableSize || !first) {
+                        throw new CompressionException("mise à jour de la taille de table invalide : " + size);
+                    }
+                    table.setMaxSize(size);
+                    continue;
+                } else {
+                    // Littéral non indexé (0000) ou jamais indexé (0001)
+                    header = readLiteral(block, position, length, 4);
+                }
+                first = false;
+                listSize += header.size();
+                if (listSize <= maxListSize) {
+                    headers.add(header);
+                }
+            }
+            return listSize <= maxListSize ? headers : null;
+        }
+
+        private Header lookup(int index) throws CompressionException {
+            if (index > 0 && index < STATIC_TABLE.length) {
+                return STATIC_TABLE[index];
+            }
+            int dynamicIndex = index - STATIC_TABLE.length;
+            if (index <= 0 || dynamicIndex >= table.length()) {
+                throw new CompressionException("index hors des tables : " + index);
+            }
+            return table.get(dynamicIndex);
+        }
+
+        private Header readLiteral(byte[] block, int[] position, int length, int prefix) throws CompressionException {
+            int index = readInteger(block, position, length, prefix);
+            String name = index == 0 ? readString(block, position, length) : lookup(index).name;
+            return new Header(name, readString(block, position, length));
+        }
+
+        private static String readString(byte[] block, int[] position, int length) throws CompressionException {
+            if (position[0] >= length) {
+                throw new CompressionException("chaîne tronquée");
+            }
+            boolean huffman = (block[position[0]] & 0x80) != 0;
+            int stringLength = readInteger(block, position, length, 7);
+            int start = position[0];
+            if (stringLength > length - start) {
+                throw new CompressionException("chaîne tronquée");
+            }
+            position[0] += stringLength;
+            return huffman ? decodeHuffman(block, start, stringLength) : new String(block, start, stringLength, StandardCharsets.ISO_8859_1);
+        }
+
+        private static int readInteger(byte[] block, int[] position, int length, int prefix) throws CompressionException {
+            int mask = (1 << prefix) - 1;
+            int value = block[position[0]++] & mask;
+            if (value < mask) {
+                return value;
+            }
+            for (int shift = 0; ; shift += 7) {
+                if (position[0] >= length || shift > 21) {
+                    throw new CompressionException("entier tronqué ou trop grand");
+                }
+                int b = block[position[0]++] & 0xff;
+                value += (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodeur des blocs d'en-têtes envoyés. Les appels doivent être sérialisés par l'appelant.
+     */
+    public static final class Encoder {
+
+        /**
+         * En-têtes dont la valeur change d'une réponse à l'autre : les ajouter à la table en évincerait
+         * des entrées utiles sans jamais resservir.
+         */
+        private static final String[] UNIQUE_VALUES = {"content-length", "etag", "last-modified", "date", "set-cookie", "retry-after"};
+
+        private final DynamicTable table = new DynamicTable();
+        private int pendingSizeUpdate = -1;
+
+        /**
+         * Applique la taille de table annoncée par le client (SETTINGS_HEADER_TABLE_SIZE).
+         * Le changement est signalé au début du bloc suivant.
+         *
+         * @param size La taille annoncée en octets
+         */
+        public void setMaxTableSize(int size) {
+            size = Math.min(size, DEFAULT_TABLE_SIZE);
+            if (size != table.maxSize) {
+                table.setMaxSize(size);
+                pendingSizeUpdate = size;
+            }
+        }
+
+        /**
+         * Commence un bloc d'en-têtes.
+         *
+         * @param out Le tampon du bloc
+         */
+        public void beginBlock(ByteArrayOutputStream out) {
+            if (pendingSizeUpdate >= 0) {
+                writeInteger(out, 0x20, 5, pendingSizeUpdate);
+                pendingSizeUpdate = -1;
+            }
+        }
+
+        /**
+         * Ajoute un en-tête au bloc. Le nom doit être en minuscules.
+         *
+         * @param out   Le tampon du bloc
+         * @param name  Le nom de l'en-tête
+         * @param value La valeur de l'en-tête
+         */
+        public void encode(ByteArrayOutputStream out, String name, String value) {
+            Integer exact = STATIC_ENTRIES.get(name + '\0' + value);
+            if (exact != null) {
+                writeInteger(out, 0x80, 7, exact);
+                return;
+            }
+            Integer nameIndex = STATIC_NAMES.get(name);
+            for (int i = 0; i < table.length(); i++) {
+                Header entry = table.get(i);
+                if (entry.name.equals(name)) {
+                    if (entry.value.equals(value)) {
+                        writeInteger(out, 0x80, 7, STATIC_TABLE.length + i);
+                        return;
+                    }
+                    if (nameIndex == null) {
+                        nameIndex = STATIC_TABLE.length + i;
+                    }
+                }
+            }
+            boolean indexed = !isUnique(name);
+            if (indexed) {
+                writeInteger(out, 0x40, 6, nameIndex != null ? nameIndex : 0);
+            } else {
+                writeInteger(out, 0x00, 4, nameIndex != null ? nameIndex : 0);
+            }
+            if (nameIndex == null) {
+                writeString(out, name);
+            }
+            writeString(out, value);
+            if (indexed) {
+                // L'index du nom a été calculé avant l'ajout, qui décale les entrées dynamiques
+                table.add(new Header(name, value));
+            }
+        }
+
+        private static boolean isUnique(String name) {
+            for (String unique : UNIQUE_VALUES) {
+                if (unique.equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static void writeString(ByteArrayOutputStream out, String value) {
+            long bits = 0;
+            for (int i = 0; i < value.length(); i++) {
+                bits += HUFFMAN_LENGTHS[value.charAt(i) & 0xff];
+            }
+            int huffmanLength = (int) ((bits + 7) / 8);
+            if (huffmanLength >= value.length()) {
+                writeInteger(out, 0x00, 7, value.length());
+                byte[] raw = value.getBytes(StandardCharsets.ISO_8859_1);
+                out.write(raw, 0, raw.length);
+                return;
+            }
+            writeInteger(out, 0x80, 7, huffmanLength);
+            long buffer = 0;
+            int count = 0;
+            for (int i = 0; i < value.length(); i++) {
+                int symbol = value.charAt(i) & 0xff;
+                buffer = buffer << HUFFMAN_LENGTHS[symbol] | HUFFMAN_CODES[symbol];
+                count += HUFFMAN_LENGTHS[symbol];
+                while (count >= 8) {
+                    count -= 8;
+                    out.write((int) (buffer >>> count));
+                }
+            }
+            if (count > 0) {
+                // Bourrage avec le début du code EOS (bits à 1)
+                out.write((int) (buffer << (8 - count) | 0xff >>> count));
+            }
+        }
+    }
+
+    /**
+     * Écrit un entier avec un préfixe de N bits (RFC 7541, 5.1).
+     *
+     * @param out    Le tampon
+     * @param flags  Les bits qui précèdent le préfixe dans le premier octet
+     * @param prefix Le nombre de bits du préfixe
+     * @param value  La valeur
+     */
+    private static void writeInteger(ByteArrayOutputStream out, int flags, int prefix, int value) {
+        int mask = (1 << prefix) - 1;
+        if (value < mask) {
+            out.write(flags | value);
+            return;
+        }
+        out.write(flags | mask);
+        value -= mask;
+        while (value >= 0x80) {
+            out.write(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Décode une chaîne codée par Huffman. Le bourrage final doit être formé de moins de 8 bits à 1.
+     */
+    private static String decodeHuffman(byte[] data, int offset, int length) throws CompressionException {
+        StringBuilder decoded = new StringBuilder(length * 8 / 5);
+        int node = 0;
+        int pendingBits = 0;     // Bits lus depuis le dernier octet décodé
+        boolean allOnes = true;  // Ces bits sont-ils tous à 1 (début du code EOS) ?
+        for (int i = offset; i < offset + length; i++) {
+            for (int bit = 7; bit >= 0; bit--) {
+                boolean one = (data[i] >>> bit & 1) != 0;
+                node = one ? HUFFMAN_ONE[node] : HUFFMAN_ZERO[node];
+                if (node == 0) {
+                    throw new CompressionException("code de Huffman invalide");
+                }
+                pendingBits++;
+                allOnes &= one;
+                if (HUFFMAN_SYMBOL[node] >= 0) {
+                    decoded.append((char) HUFFMAN_SYMBOL[node]);
+                    node = 0;
+                    pendingBits = 0;
+                    allOnes = true;
+                }
+            }
+        }
+        if (pendingBits > 7 || !allOnes) {
+            throw new CompressionException("bourrage de Huffman invalide");
+        }
+        return decoded.toString();
+    }
+}
@@ -0,0 +1,1068 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Cette classe sert une connexion HTTP/2 en clair (h2c, RFC 9113), ouverte directement par la préface
+ * du client ou par la mise à niveau d'une requête HTTP/1.1 (Upgrade: h2c).
+ * Le thread de la connexion lit les trames ; chaque flux est une requête traitée par l'exécuteur des requêtes
+ * avec le RequestHandler partagé, et les réponses des flux sont entrelacées sur la connexion,
+ * dans la limite des fenêtres de contrôle de flux annoncées par le client.
+ * Le serveur n'utilise ni la priorité des flux ni l'envoi anticipé (server push).
+ */
+public class Http2Connection {
+
+    /**
+     * Préface envoyée par le client au début de la connexion.
+     */
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    // Types de trames
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int PRIORITY = 0x2;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    // Indicateurs des trames
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+
+    // Codes d'erreur de RST_STREAM et GOAWAY
+    private static final int NO_ERROR = 0x0;
+    private static final int PROTOCOL_ERROR = 0x1;
+    private static final int INTERNAL_ERROR = 0x2;
+    private static final int FLOW_CONTROL_ERROR = 0x3;
+    private static final int STREAM_CLOSED = 0x5;
+    private static final int FRAME_SIZE_ERROR = 0x6;
+    private static final int REFUSED_STREAM = 0x7;
+    private static final int COMPRESSION_ERROR = 0x9;
+    private static final int ENHANCE_YOUR_CALM = 0xb;
+
+    // Paramètres de SETTINGS
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    private static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    /**
+     * Taille initiale des fenêtres de contrôle de flux, dans les deux sens.
+     */
+    private static final int DEFAULT_WINDOW = 65535;
+
+    /**
+     * Taille maximale des trames reçues et envoyées (valeur par défaut du protocole, que le serveur ne relève pas).
+     */
+    private static final int MAX_FRAME_SIZE = 16384;
+
+    /**
+     * Taille maximale d'un bloc d'en-têtes compressé, toutes trames CONTINUATION comprises.
+     */
+    private static final int MAX_HEADER_BLOCK = 2 * HttpParser.MAX_HEADER_SIZE;
+
+    /**
+     * En-têtes propres à une connexion HTTP/1.1, interdits en HTTP/2.
+     */
+    private static final String[] CONNECTION_HEADERS = {"connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade"};
+
+    /**
+     * Erreur de connexion : la connexion est fermée après une trame GOAWAY portant le code d'erreur.
+     */
+    private static class ConnectionException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int errorCode;
+
+        ConnectionException(int errorCode, String message) {
+            super(message);
+            this.errorCode = errorCode;
+        }
+    }
+
+    /**
+     * L'état d'un flux ouvert par le client. Les champs de la requête ne sont manipulés que par le thread
+     * de la connexion ; la fenêtre d'envoi est protégée par le moniteur de la connexion.
+     */
+    private static final class Stream {
+
+        private final int id;
+        private final long start = System.nanoTime();
+        private String method;
+        private String path;
+        private Map<String, String> headers;
+        private long expectedLength = -1;     // Content-Length annoncé, -1 s'il est absent
+        private ByteArrayOutputStream body;
+        private int rejectStatus;             // Code d'une réponse d'erreur à renvoyer (413, 431), 0 sinon
+        private int unacknowledged;           // Octets reçus pas encore rendus au client par WINDOW_UPDATE
+        private boolean remoteClosed;         // Le client a fini d'envoyer la requête
+        private long sendWindow;
+        private volatile boolean reset;       // Flux annulé par le client
+
+        Stream(int id, long sendWindow) {
+            this.id = id;
+            this.sendWindow = sendWindow;
+        }
+    }
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final InetAddress clientAddress;
+    private final RequestHandler handler;
+    private final ExecutorService workers;
+    private final int maxStreams;
+    private final long idleTimeoutMillis;
+
+    // Lecture, par le thread de la connexion
+    private final byte[] readBuffer;
+    private int readPosition;
+    private int readLimit;
+    private final byte[] payload = new byte[MAX_FRAME_SIZE];
+    private final Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+    private final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+    private int headerStream;                 // Flux du bloc d'en-têtes en cours, 0 si aucun
+    private int headerFlags;
+    private int lastStreamId;
+    private int unacknowledged;               // Octets reçus sur la connexion pas encore rendus au client
+    private boolean settingsReceived;
+    private boolean goingAway;                // Le client a annoncé la fin de la connexion
+
+    // Écriture, sous writeLock : les trames d'un bloc d'en-têtes ne doivent pas être entrelacées
+    private final Object writeLock = new Object();
+    private final Hpack.Encoder encoder = new Hpack.Encoder();
+    private volatile int peerMaxFrameSize = MAX_FRAME_SIZE;
+
+    // Contrôle de flux de l'envoi, sous le moniteur de la connexion
+    private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+    private long sendWindow = DEFAULT_WINDOW;
+    private long peerInitialWindow = DEFAULT_WINDOW; // Modifiée seulement par le thread de la connexion
+    private boolean closed;
+
+    /**
+     * Constructeur de la classe Http2Connection.
+     *
+     * @param socket   Le socket de la connexion, en mode bloquant
+     * @param received Les octets déjà reçus après la requête HTTP/1.1 qui a ouvert la connexion HTTP/2
+     * @param handler  Le traitement des requêtes
+     * @param workers  L'exécuteur des flux
+     * @throws IOException En cas d'erreur d'accès aux flux du socket
+     */
+    public Http2Connection(Socket socket, byte[] received, RequestHandler handler, ExecutorService workers) throws IOException {
+        this.in = socket.getInputStream();
+        this.out = new BufferedOutputStream(socket.getOutputStream(), MAX_FRAME_SIZE + 9);
+        this.clientAddress = socket.getInetAddress();
+        this.handler = handler;
+        this.workers = workers;
+        this.maxStreams = HttpServer.getConfig().getHttp2MaxStreams();
+        this.idleTimeoutMillis = HttpServer.getConfig().getKeepAliveTimeout() * 1000L;
+        socket.setSoTimeout((int) idleTimeoutMillis);
+        this.readBuffer = new byte[Math.max(MAX_FRAME_SIZE, received.length)];
+        System.arraycopy(received, 0, readBuffer, 0, received.length);
+        this.readLimit = received.length;
+    }
+
+    /**
+     * Indique si une requête est la préface d'un client HTTP/2 qui connaît le protocole à l'avance.
+     * La préface a été lue par {@link HttpParser}.
+     *
+     * @param request La requête reçue
+     * @return true si la requête est la préface HTTP/2
+     */
+    public static boolean isPreface(HttpRequest request) {
+        return request.getVersion().equals("HTTP/2.0");
+    }
+
+    /**
+     * Indique si une requête HTTP/1.1 demande la mise à niveau de la connexion vers h2c.
+     *
+     * @param request La requête reçue
+     * @return true si la requête porte Upgrade: h2c et HTTP2-Settings
+     */
+    public static boolean isUpgrade(HttpRequest request) {
+        if (!request.getVersion().equals("HTTP/1.1") || request.getHeader("http2-settings", null) == null) {
+            return false;
+        }
+        for (String protocol : request.getHeader("upgrade", "").split(",")) {
+            if (protocol.trim().equalsIgnoreCase("h2c")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sert la connexion jusqu'à sa fermeture par le client ou l'expiration du délai d'inactivité.
+     * Le socket n'est pas fermé : il appartient à l'appelant.
+     *
+     * @param upgrade La requête HTTP/1.1 qui a demandé la mise à niveau, servie sur le flux 1,
+     *                ou null si le client a envoyé la préface HTTP/2
+     */
+    public void serve(HttpRequest upgrade) {
+        HttpServer.http2ConnectionOpened();
+        try {
+            try {
+                if (upgrade != null) {
+                    startUpgraded(upgrade);
+                    readPreface();
+                } else {
+                    writeSettings();
+                }
+                readFrames();
+            } catch (ConnectionException e) {
+                Logs.logError("Erreur de protocole HTTP/2 : " + e.getMessage());
+                writeGoAway(e.errorCode, e.getMessage());
+            }
+            awaitStreams();
+        } catch (IOException e) {
+            if (!(e instanceof EOFException)) {
+                Logs.logError("Erreur de connexion HTTP/2 : " + e.getMessage());
+            }
+        } finally {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            HttpServer.http2ConnectionClosed();
+        }
+    }
+
+    /**
+     * Répond 101 à une demande de mise à niveau, applique les paramètres qu'elle transmet
+     * et traite la requête comme le flux 1, déjà fermé côté client.
+     */
+    private void startUpgraded(HttpRequest upgrade) throws IOException, ConnectionException {
+        byte[] settings;
+        try {
+            settings = Base64.getUrlDecoder().decode(upgrade.getHeader("http2-settings", "").trim());
+        } catch (IllegalArgumentException e) {
+            throw new ConnectionException(PROTOCOL_ERROR, "HTTP2-Settings invalide");
+        }
+        synchronized (writeLock) {
+            out.write("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n"
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            writeSettings();
+        }
+        if (settings.length % 6 != 0) {
+            throw new ConnectionException(FRAME_SIZE_ERROR, "HTTP2-Settings invalide");
+        }
+        applySettings(settings, settings.length);
+        Stream stream = new Stream(1, peerInitialWindow);
+        stream.remoteClosed = true;
+        lastStreamId = 1;
+        streams.put(1, stream);
+        submit(stream, upgrade, null);
+    }
+
+    /**
+     * Lit la préface du client après une mise à niveau.
+     */
+    private void readPreface() throws IOException, ConnectionException {
+        byte[] preface = new byte[PREFACE.length];
+        readFully(preface, preface.length);
+        for (int i = 0; i < PREFACE.length; i++) {
+            if (preface[i] != PREFACE[i]) {
+                throw new ConnectionException(PROTOCOL_ERROR, "préface du client invalide");
+            }
+        }
+    }
+
+    /**
+     * Boucle de lecture des trames.
+     */
+    private void readFrames() throws IOException, ConnectionException {
+        byte[] header = new byte[9];
+        while (!goingAway || !streams.isEmpty()) {
+            try {
+                if (!fill()) {
+                    return;
+                }
+            } catch (SocketTimeoutException e) {
+                // Délai d'inactivité dépassé entre deux trames : la connexion n'est fermée que sans flux en cours
+                if (streams.isEmpty()) {
+                    writeGoAway(NO_ERROR, null);
+                    return;
+                }
+                continue;
+            }
+            readFully(header, 9);
+            int length = (header[0] & 0xff) << 16 | (header[1] & 0xff) << 8 | header[2] & 0xff;
+            int type = header[3] & 0xff;
+            int flags = header[4] & 0xff;
+            int streamId = readInt(header, 5) & 0x7fffffff;
+            if (length > MAX_FRAME_SIZE) {
+                throw new ConnectionException(FRAME_SIZE_ERROR, "trame de " + length + " octets");
+            }
+            readFully(payload, length);
+            if (!settingsReceived && type != SETTINGS) {
+                throw new ConnectionException(PROTOCOL_ERROR, "la première trame du client doit être SETTINGS");
+            }
+            if (headerStream != 0 && (type != CONTINUATION || streamId != headerStream)) {
+                throw new ConnectionException(PROTOCOL_ERROR, "trame CONTINUATION attendue");
+            }
+            switch (type) {
+                case DATA:
+                    onData(flags, streamId, length);
+                    break;
+                case HEADERS:
+                    onHeaders(flags, streamId, length);
+                    break;
+                case CONTINUATION:
+                    onContinuation(flags, streamId, length);
+                    break;
+                case PRIORITY:
+                    if (streamId == 0) {
+                        throw new ConnectionException(PROTOCOL_ERROR, "PRIORITY sur le flux 0");
+                    }
+                    if (length != 5) {
+                        writeReset(streamId, FRAME_SIZE_ERROR);
+                    }
+                    break;
+                case RST_STREAM:
+                    onReset(streamId, length);
+                    break;
+                case SETTINGS:
+                    onSettings(flags, streamId, length);
+                    break;
+                case PING:
+                    if (streamId != 0) {
+                        throw new ConnectionException(PROTOCOL_ERROR, "PING sur un flux");
+                    }
+                    if (length != 8) {
+                        throw new ConnectionException(FRAME_SIZE_ERROR, "PING de " + length + " octets");
+                    }
+                    if ((flags & FLAG_ACK) == 0) {
+                        writeFrame(PING, FLAG_ACK, 0, payload, 0, 8, true);
+                    }
+                    break;
+                case GOAWAY:
+                    if (streamId != 0) {
+                        throw new ConnectionException(PROTOCOL_ERROR, "GOAWAY sur un flux");
+                    }
+                    goingAway = true;
+                    break;
+                case WINDOW_UPDATE:
+                    onWindowUpdate(streamId, length);
+                    break;
+                case PUSH_PROMISE:
+                    throw new ConnectionException(PROTOCOL_ERROR, "PUSH_PROMISE envoyé par le client");
+                default:
+                    // Les types de trames inconnus sont ignorés
+                    break;
+            }
+        }
+    }
+
+    private void onData(int flags, int streamId, int length) throws IOException, ConnectionException {
+        if (streamId == 0) {
+            throw new ConnectionException(PROTOCOL_ERROR, "DATA sur le flux 0");
+        }
+        int offset = (flags & FLAG_PADDED) != 0 ? 1 : 0;
+        int end = paddedEnd(flags, length);
+        if (end < offset) {
+            throw new ConnectionException(PROTOCOL_ERROR, "bourrage plus long que la trame");
+        }
+        // Le contrôle de flux compte la trame entière, bourrage compris
+        unacknowledged += length;
+        if (unacknowledged > DEFAULT_WINDOW) {
+            throw new ConnectionException(FLOW_CONTROL_ERROR, "fenêtre de réception de la connexion dépassée");
+        }
+        if (unacknowledged >= DEFAULT_WINDOW / 2) {
+            writeWindowUpdate(0, unacknowledged);
+            unacknowledged = 0;
+        }
+
+        Stream stream = streams.get(streamId);
+        if (stream == null || stream.remoteClosed) {
+            if (streamId > lastStreamId) {
+                throw new ConnectionException(PROTOCOL_ERROR, "DATA sur un flux non ouvert");
+            }
+            writeReset(streamId, STREAM_CLOSED);
+            return;
+        }
+        boolean endStream = (flags & FLAG_END_STREAM) != 0;
+        stream.unacknowledged += length;
+        if (stream.unacknowledged > DEFAULT_WINDOW) {
+            resetStream(stream, FLOW_CONTROL_ERROR);
+            return;
+        }
+        if (!endStream && stream.unacknowledged >= DEFAULT_WINDOW / 2) {
+            writeWindowUpdate(streamId, stream.unacknowledged);
+            stream.unacknowledged = 0;
+        }
+        if (stream.rejectStatus == 0) {
+            if (stream.body.size() + end - offset > HttpParser.MAX_BODY_SIZE) {
+                stream.rejectStatus = 413;
+                stream.body = null;
+            } else {
+                stream.body.write(payload, offset, end - offset);
+            }
+        }
+        if (endStream) {
+            stream.remoteClosed = true;
+            dispatch(stream);
+        }
+    }
+
+    private void onHeaders(int flags, int streamId, int length) throws IOException, ConnectionException {
+        if (streamId == 0) {
+            throw new ConnectionException(PROTOCOL_ERROR, "HEADERS sur le flux 0");
+        }
+        int offset = ((flags & FLAG_PADDED) != 0 ? 1 : 0) + ((flags & FLAG_PRIORITY) != 0 ? 5 : 0);
+        int end = paddedEnd(flags, length);
+        if (end < offset) {
+            throw new ConnectionException(PROTOCOL_ERROR, "trame HEADERS trop courte");
+        }
+        headerBlock.reset();
+        headerBlock.write(payload, offset, end - offset);
+        headerFlags = flags;
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            endHeaders(streamId);
+        } else {
+            headerStream = streamId;
+        }
+    }
+
+    private void onContinuation(int flags, int streamId, int length) throws IOException, ConnectionException {
+        if (headerStream == 0) {
+            throw new ConnectionException(PROTOCOL_ERROR, "CONTINUATION inattendue");
+        }
+        if (headerBlock.size() + length > MAX_HEADER_BLOCK) {
+            throw new ConnectionException(ENHANCE_YOUR_CALM, "bloc d'en-têtes de plus de " + MAX_HEADER_BLOCK + " octets");
+        }
+        headerBlock.write(payload, 0, length);
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            headerStream = 0;
+            endHeaders(streamId);
+        }
+    }
+
+    /**
+     * Traite un bloc d'en-têtes complet : ouverture d'un flux, ou en-têtes de fin d'une requête en cours.
+     * Le bloc est toujours décodé, pour que la table dynamique reste synchronisée avec le client.
+     */
+    private void endHeaders(int streamId) throws IOException, ConnectionException {
+        List<Hpack.Header> fields;
+        try {
+            fields = decoder.decode(headerBlock.toByteArray(), headerBlock.size(), HttpParser.MAX_HEADER_SIZE);
+        } catch (Hpack.CompressionException e) {
+            throw new ConnectionException(COMPRESSION_ERROR, e.getMessage());
+        }
+        boolean endStream = (headerFlags & FLAG_END_STREAM) != 0;
+
+        Stream stream = streams.get(streamId);
+        if (stream != null) {
+            // En-têtes de fin (trailers) : ils terminent la requête et sont ignorés
+            if (stream.remoteClosed) {
+                resetStream(stream, STREAM_CLOSED);
+            } else if (!endStream) {
+                resetStream(stream, PROTOCOL_ERROR);
+            } else {
+                stream.remoteClosed = true;
+                dispatch(stream);
+            }
+            return;
+        }
+        if (streamId % 2 == 0 || streamId <= lastStreamId) {
+            throw new ConnectionException(PROTOCOL_ERROR, "identifiant de flux invalide : " + streamId);
+        }
+        lastStreamId = streamId;
+        if (streams.size() >= maxStreams) {
+            writeReset(streamId, REFUSED_STREAM);
+            return;
+        }
+
+        stream = new Stream(streamId, peerInitialWindow);
+        if (fields == null) {
+            stream.rejectStatus = 431;
+        } else if (!readRequestFields(stream, fields)) {
+            writeReset(streamId, PROTOCOL_ERROR);
+            return;
+        } else {
+            stream.body = new ByteArrayOutputStream();
+        }
+        streams.put(streamId, stream);
+        if (endStream) {
+            stream.remoteClosed = true;
+            dispatch(stream);
+        }
+    }
+
+    /**
+     * Extrait la méthode, le chemin et les en-têtes d'une requête, en refusant les requêtes mal formées :
+     * pseudo-en-têtes manquants, répétés ou placés après les en-têtes, noms en majuscules, en-têtes de connexion.
+     *
+     * @return false si la requête est mal formée
+     */
+    private boolean readRequestFields(Stream stream, List<Hpack.Header> fields) {
+        Map<String, String> headers = new HashMap<>();
+        String scheme = null;
+        String authority = null;
+        boolean regular = false;
+        for (Hpack.Header field : fields) {
+            String name = field.getName();
+            String value = field.getValue();
+            if (name.startsWith(":")) {
+                if (regular) {
+                    return false;
+                }
+                switch (name) {
+                    case ":method":
+                        if (stream.method != null) {
+                            return false;
+                        }
+                        stream.method = value;
+                        break;
+                    case ":path":
+                        if (stream.path != null) {
+                            return false;
+                        }
+                        stream.path = value;
+                        break;
+                    case ":scheme":
+                        if (scheme != null) {
+                            return false;
+                        }
+                        scheme = value;
+                        break;
+                    case ":authority":
+                        if (authority != null) {
+                            return false;
+                        }
+                        authority = value;
+                        break;
+                    default:
+                        return false;
+                }
+                continue;
+            }
+            regular = true;
+            if (!isValidName(name) || isConnectionHeader(name) || (name.equals("te") && !value.equals("trailers"))) {
+                return false;
+            }
+            // Les cookies peuvent être envoyés séparément : ils sont rassemblés comme en HTTP/1.1
+            headers.merge(name, value, (previous, next) -> previous + (name.equals("cookie") ? "; " : ", ") + next);
+        }
+        if (stream.method == null || scheme == null || stream.path == null || stream.path.isEmpty()) {
+            return false;
+        }
+        if (authority != null) {
+            headers.putIfAbsent("host", authority);
+        }
+        String contentLength = headers.get("content-length");
+        if (contentLength != null) {
+            try {
+                stream.expectedLength = Long.parseLong(contentLength);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        stream.headers = headers;
+        return true;
+    }
+
+    private void onReset(int streamId, int length) throws ConnectionException {
+        if (streamId == 0) {
+            throw new ConnectionException(PROTOCOL_ERROR, "RST_STREAM sur le flux 0");
+        }
+        if (length != 4) {
+            throw new ConnectionException(FRAME_SIZE_ERROR, "RST_STREAM de " + length + " octets");
+        }
+        if (streamId > lastStreamId) {
+            throw new ConnectionException(PROTOCOL_ERROR, "RST_STREAM sur un flux non ouvert");
+        }
+        Stream stream = streams.remove(streamId);
+        if (stream != null) {
+            synchronized (this) {
+                stream.reset = true;
+                notifyAll();
+            }
+        }
+    }
+
+    private void onSettings(int flags, int streamId, int length) throws IOException, ConnectionException {
+        if (streamId != 0) {
+            throw new ConnectionException(PROTOCOL_ERROR, "SETTINGS sur un flux");
+        }
+        if ((flags & FLAG_ACK) != 0) {
+            if (length != 0) {
+                throw new ConnectionException(FRAME_SIZE_ERROR, "acquittement SETTINGS non vide");
+            }
+            return;
+        }
+        if (length % 6 != 0) {
+            throw new ConnectionException(FRAME_SIZE_ERROR, "SETTINGS de " + length + " octets");
+        }
+        applySettings(payload, length);
+        settingsReceived = true;
+        writeFrame(SETTINGS, FLAG_ACK, 0, payload, 0, 0, true);
+    }
+
+    /**
+     * Applique les paramètres annoncés par le client.
+     */
+    private void applySettings(byte[] settings, int length) throws ConnectionException {
+        for (int i = 0; i < length; i += 6) {
+            int id = (settings[i] & 0xff) << 8 | settings[i + 1] & 0xff;
+            long value = readInt(settings, i + 2) & 0xffffffffL;
+            switch (id) {
+                case SETTINGS_HEADER_TABLE_SIZE:
+                    synchronized (writeLock) {
+                        encoder.setMaxTableSize((int) Math.min(value, Integer.MAX_VALUE));
+                    }
+                    break;
+                case SETTINGS_ENABLE_PUSH:
+                    if (value > 1) {
+                        throw new ConnectionException(PROTOCOL_ERROR, "SETTINGS_ENABLE_PUSH invalide");
+                    }
+                    break;
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (value > Integer.MAX_VALUE) {
+                        throw new ConnectionException(FLOW_CONTROL_ERROR, "SETTINGS_INITIAL_WINDOW_SIZE invalide");
+                    }
+                    synchronized (this) {
+                        // Le changement s'applique aussi aux flux déjà ouverts
+                        long delta = value - peerInitialWindow;
+                        peerInitialWindow = value;
+                        for (Stream stream : streams.values()) {
+                            stream.sendWindow += delta;
+                        }
+                        notifyAll();
+                    }
+                    break;
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if (value < MAX_FRAME_SIZE || value > 0xffffff) {
+                        throw new ConnectionException(PROTOCOL_ERROR, "SETTINGS_MAX_FRAME_SIZE invalide");
+                    }
+                    // Les trames envoyées restent limitées à la taille du tampon d'envoi
+                    peerMaxFrameSize = (int) Math.min(value, MAX_FRAME_SIZE);
+                    break;
+                default:
+                    // SETTINGS_MAX_CONCURRENT_STREAMS et SETTINGS_MAX_HEADER_LIST_SIZE ne concernent pas un serveur sans push
+                    break;
+            }
+        }
+    }
+
+    private void onWindowUpdate(int streamId, int length) throws IOException, ConnectionException {
+        if (length != 4) {
+            throw new ConnectionException(FRAME_SIZE_ERROR, "WINDOW_UPDATE de " + length + " octets");
+        }
+        int increment = readInt(payload, 0) & 0x7fffffff;
+        if (streamId == 0) {
+            if (increment == 0) {
+                throw new ConnectionException(PROTOCOL_ERROR, "incrément de fenêtre nul");
+            }
+            synchronized (this) {
+                sendWindow += increment;
+                if (sendWindow > Integer.MAX_VALUE) {
+                    throw new ConnectionException(FLOW_CONTROL_ERROR, "fenêtre de la connexion trop grande");
+                }
+                notifyAll();
+            }
+            return;
+        }
+        Stream stream = streams.get(streamId);
+        if (stream == null) {
+            // Flux déjà terminé : la mise à jour a croisé la fin de la réponse
+            return;
+        }
+        boolean overflow;
+        synchronized (this) {
+            stream.sendWindow += increment;
+            overflow = increment == 0 || stream.sendWindow > Integer.MAX_VALUE;
+            notifyAll();
+        }
+        if (overflow) {
+            resetStream(stream, increment == 0 ? PROTOCOL_ERROR : FLOW_CONTROL_ERROR);
+        }
+    }
+
+    /**
+     * Confie une requête complète à l'exécuteur.
+     */
+    private void dispatch(Stream stream) throws IOException {
+        if (stream.rejectStatus != 0) {
+            String message = stream.rejectStatus == 413 ? "Payload Too Large" : "Request Header Fields Too Large";
+            submit(stream, null, HttpResponse.error(stream.rejectStatus, message));
+            return;
+        }
+        byte[] body = stream.body.size() > 0 ? stream.body.toByteArray() : null;
+        stream.body = null;
+        if (stream.expectedLength >= 0 && stream.expectedLength != (body == null ? 0 : body.length)) {
+            resetStream(stream, PROTOCOL_ERROR);
+            return;
+        }
+        submit(stream, new HttpRequest(stream.method, stream.path, "HTTP/2.0", stream.headers, clientAddress, body), null);
+    }
+
+    /**
+     * Confie un flux à l'exécuteur, ou le refuse par une réponse 503 si le serveur est saturé.
+     *
+     * @param request  La requête, ou null pour une requête refusée par l'analyse
+     * @param response La réponse déjà connue, ou null pour la faire produire par le RequestHandler
+     */
+    private void submit(Stream stream, HttpRequest request, HttpResponse response) throws IOException {
+        try {
+            workers.execute(() -> respond(stream, request, response));
+        } catch (RejectedExecutionException e) {
+            Logs.logError("Serveur saturé, flux HTTP/2 refusé pour l'adresse IP : " + clientAddress.getHostAddress());
+            streams.remove(stream.id);
+            writeReset(stream.id, REFUSED_STREAM);
+        }
+    }
+
+    /**
+     * Produit et envoie la réponse d'un flux. Exécuté par un thread de l'exécuteur.
+     */
+    private void respond(Stream stream, HttpRequest request, HttpResponse response) {
+        try {
+            if (response == null) {
+                response = handler.handle(request);
+            }
+            writeResponse(stream, response, request == null || !request.isHead());
+            // Logs pour enregistrer la requête HTTP traitée
+            if (request != null) {
+                Logs.logAccess(request, response.getStatusCode(), response.getContentLength(), stream.start);
+            } else {
+                Logs.logAccess("-", clientAddress.getHostAddress(), response.getStatusCode(), response.getContentLength(), stream.start);
+            }
+            Metrics.requestCompleted(request != null ? response.getRoute() : "invalid", response.getStatusCode(),
+                    response.getContentLength(), stream.start);
+        } catch (IOException e) {
+            Logs.logError("Erreur lors de l'envoi de la réponse HTTP/2 : " + e.getMessage());
+            if (!stream.reset) {
+                try {
+                    writeReset(stream.id, INTERNAL_ERROR);
+                } catch (IOException closed) {
+                    // La connexion est déjà fermée
+                }
+            }
+        } finally {
+            streams.remove(stream.id);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Envoie les en-têtes puis le corps d'une réponse. Sans corps (réponse à un HEAD),
+     * le flux se termine avec la trame HEADERS.
+     */
+    private void writeResponse(Stream stream, HttpResponse response, boolean withBody) throws IOException {
+        boolean endStream = !withBody || !response.hasBody();
+        ByteArrayOutputStream block = new ByteArrayOutputStream(256);
+        synchronized (writeLock) {
+            // L'encodage modifie la table dynamique : le bloc doit partir avant celui d'un autre flux
+            encoder.beginBlock(block);
+            encoder.encode(block, ":status", String.valueOf(response.getStatusCode()));
+            for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+                String name = header.getKey().toLowerCase(Locale.ROOT);
+                if (!isConnectionHeader(name)) {
+                    encoder.encode(block, name, header.getValue());
+                }
+            }
+            byte[] encoded = block.toByteArray();
+            int frameSize = peerMaxFrameSize;
+            int offset = 0;
+            int type = HEADERS;
+            do {
+                int length = Math.min(frameSize, encoded.length - offset);
+                boolean last = offset + length == encoded.length;
+                int flags = (last ? FLAG_END_HEADERS : 0) | (type == HEADERS && endStream ? FLAG_END_STREAM : 0);
+                writeFrame(type, flags, stream.id, encoded, offset, length, last && endStream);
+                offset += length;
+                type = CONTINUATION;
+            } while (offset < encoded.length);
+        }
+        if (!endStream) {
+            DataFrameOutputStream body = new DataFrameOutputStream(stream);
+            response.writeBody(body);
+            body.finish();
+        }
+    }
+
+    /**
+     * Envoie des données d'un flux en trames DATA, en attendant que les fenêtres de contrôle de flux
+     * de la connexion et du flux le permettent.
+     */
+    private void writeData(Stream stream, byte[] data, int offset, int length, boolean endStream) throws IOException {
+        do {
+            int count = reserveWindow(stream, length);
+            writeFrame(DATA, endStream && count == length ? FLAG_END_STREAM : 0, stream.id, data, offset, count, true);
+            offset += count;
+            length -= count;
+        } while (length > 0);
+    }
+
+    /**
+     * Réserve jusqu'à {@code wanted} octets dans les fenêtres d'envoi. Attend au plus le délai d'inactivité
+     * qu'une fenêtre s'ouvre, pour qu'un client qui n'en ouvre plus ne bloque pas un thread indéfiniment.
+     *
+     * @return Le nombre d'octets réservés, au moins 1 si {@code wanted} est positif
+     */
+    private synchronized int reserveWindow(Stream stream, int wanted) throws IOException {
+        long deadline = System.currentTimeMillis() + idleTimeoutMillis;
+        while (true) {
+            if (closed) {
+                throw new IOException("Connexion HTTP/2 fermée");
+            }
+            if (stream.reset) {
+                throw new IOException("Flux " + stream.id + " annulé par le client");
+            }
+            long available = Math.min(sendWindow, stream.sendWindow);
+            if (wanted == 0 || available > 0) {
+                int count = (int) Math.min(wanted, available);
+                sendWindow -= count;
+                stream.sendWindow -= count;
+                return count;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new IOException("Fenêtre de contrôle de flux fermée depuis trop longtemps");
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Écriture interrompue");
+            }
+        }
+    }
+
+    /**
+     * Attend la fin des flux en cours, au plus le délai d'inactivité, avant de fermer la connexion.
+     */
+    private synchronized void awaitStreams() {
+        long deadline = System.currentTimeMillis() + idleTimeoutMillis;
+        long remaining;
+        while (!streams.isEmpty() && (remaining = deadline - System.currentTimeMillis()) > 0) {
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Annule un flux : le client est prévenu et la réponse éventuellement en cours est interrompue.
+     */
+    private void resetStream(Stream stream, int errorCode) throws IOException {
+        streams.remove(stream.id);
+        synchronized (this) {
+            stream.reset = true;
+            notifyAll();
+        }
+        writeReset(stream.id, errorCode);
+    }
+
+    private void writeSettings() throws IOException {
+        byte[] settings = new byte[18];
+        putSetting(settings, 0, SETTINGS_MAX_CONCURRENT_STREAMS, maxStreams);
+        putSetting(settings, 6, SETTINGS_MAX_HEADER_LIST_SIZE, HttpParser.MAX_HEADER_SIZE);
+        putSetting(settings, 12, SETTINGS_ENABLE_PUSH, 0);
+        writeFrame(SETTINGS, 0, 0, settings, 0, settings.length, true);
+    }
+
+    private void writeWindowUpdate(int streamId, int increment) throws IOException {
+        byte[] frame = new byte[4];
+        putInt(frame, 0, increment);
+        writeFrame(WINDOW_UPDATE, 0, streamId, frame, 0, 4, true);
+    }
+
+    private void writeReset(int streamId, int errorCode) throws IOException {
+        byte[] frame = new byte[4];
+        putInt(frame, 0, errorCode);
+        writeFrame(RST_STREAM, 0, streamId, frame, 0, 4, true);
+    }
+
+    private void writeGoAway(int errorCode, String debug) throws IOException {
+        byte[] detail = debug != null ? debug.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        byte[] frame = new byte[8 + Math.min(detail.length, 256)];
+        putInt(frame, 0, lastStreamId);
+        putInt(frame, 4, errorCode);
+        System.arraycopy(detail, 0, frame, 8, frame.length - 8);
+        writeFrame(GOAWAY, 0, 0, frame, 0, frame.length, true);
+    }
+
+    /**
+     * Écrit une trame. Les trames d'un même appelant sont envoyées dans l'ordre ; celles de flux différents
+     * peuvent s'intercaler entre deux appels.
+     *
+     * @param flush true pour envoyer aussitôt, false si l'appelant écrit une autre trame juste après
+     */
+    private void writeFrame(int type, int flags, int streamId, byte[] data, int offset, int length, boolean flush) throws IOException {
+        byte[] header = new byte[9];
+        header[0] = (byte) (length >>> 16);
+        header[1] = (byte) (length >>> 8);
+        header[2] = (byte) length;
+        header[3] = (byte) type;
+        header[4] = (byte) flags;
+        putInt(header, 5, streamId);
+        synchronized (writeLock) {
+            out.write(header);
+            out.write(data, offset, length);
+            if (flush) {
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Garantit qu'au moins un octet reçu est disponible, en lisant le socket si nécessaire.
+     *
+     * @return false si le client a fermé la connexion
+     */
+    private boolean fill() throws IOException {
+        if (readPosition < readLimit) {
+            return true;
+        }
+        int read = in.read(readBuffer, 0, readBuffer.length);
+        if (read < 0) {
+            return false;
+        }
+        Metrics.bytesReceived(read);
+        readPosition = 0;
+        readLimit = read;
+        return true;
+    }
+
+    private void readFully(byte[] target, int length) throws IOException {
+        int copied = 0;
+        while (copied < length) {
+            if (!fill()) {
+                throw new EOFException("Connexion fermée au milieu d'une trame");
+            }
+            int count = Math.min(length - copied, readLimit - readPosition);
+            System.arraycopy(readBuffer, readPosition, target, copied, count);
+            readPosition += count;
+            copied += count;
+        }
+    }
+
+    /**
+     * Retourne la fin des données d'une trame DATA ou HEADERS, avant son éventuel bourrage.
+     */
+    private int paddedEnd(int flags, int length) {
+        if ((flags & FLAG_PADDED) == 0) {
+            return length;
+        }
+        return length > 0 ? length - (payload[0] & 0xff) : -1;
+    }
+
+    private static boolean isValidName(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c <= ' ' || c >= 127 || c == ':' || (c >= 'A' && c <= 'Z')) {
+                return false;
+            }
+        }
+        return !name.isEmpty();
+    }
+
+    private static boolean isConnectionHeader(String name) {
+        for (String header : CONNECTION_HEADERS) {
+            if (header.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void putSetting(byte[] data, int offset, int id, int value) {
+        data[offset] = (byte) (id >>> 8);
+        data[offset + 1] = (byte) id;
+        putInt(data, offset + 2, value);
+    }
+
+    private static void putInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16 | (data[offset + 2] & 0xff) << 8 | data[offset + 3] & 0xff;
+    }
+
+    /**
+     * Flux du corps d'une réponse : les écritures sont regroupées en trames DATA de la taille maximale,
+     * et flush() envoie ce qui a été écrit (pour les pages produites au fil de l'eau).
+     */
+    private final class DataFrameOutputStream extends OutputStream {
+
+        private final Stream stream;
+        private final byte[] buffer = new byte[MAX_FRAME_SIZE];
+        private int count;
+
+        DataFrameOutputStream(Stream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) {
+                    flush();
+                }
+                int n = Math.min(length, buffer.length - count);
+                System.arraycopy(data, offset, buffer, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                writeData(stream, buffer, 0, count, false);
+                count = 0;
+            }
+        }
+
+        /**
+         * Envoie la fin du corps avec l'indicateur END_STREAM.
+         */
+        void finish() throws IOException {
+            writeData(stream, buffer, 0, count, true);
+            count = 0;
+        }
+    }
+}
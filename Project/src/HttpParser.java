@@ -0,0 +1,525 @@
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cette classe analyse les requêtes HTTP/1.x directement sur les octets reçus, pour les deux moteurs.
+ * L'analyse est incrémentale : chaque appel à {@link #parse(ByteBuffer)} consomme les octets disponibles
+ * et retourne la requête dès qu'elle est complète, corps compris (Content-Length ou envoi par morceaux).
+ * Un analyseur est associé à une connexion et réutilise ses tampons d'une requête à l'autre.
+ * Les tailles sont bornées : une requête trop grande ou mal formée est refusée par une {@link ParseException}
+ * qui porte le code d'état à renvoyer (400, 413, 414, 417, 431, 505).
+ * Une requête qui annonce un corps avec "Expect: 100-continue" est signalée par {@link #takeContinue()}
+ * pour que le moteur invite le client à envoyer ce corps.
+ * La préface d'un client HTTP/2 ("PRI * HTTP/2.0", puis "SM") est reconnue et retournée comme une requête
+ * de version HTTP/2.0, pour que le moteur passe la connexion à {@link Http2Connection}.
+ */
+public class HttpParser {
+
+    /**
+     * Longueur maximale de la ligne de requête, au-delà de laquelle la réponse est 414.
+     */
+    public static final int MAX_REQUEST_LINE = 8 * 1024;
+
+    /**
+     * Taille maximale de l'ensemble des en-têtes, au-delà de laquelle la réponse est 431.
+     */
+    public static final int MAX_HEADER_SIZE = 16 * 1024;
+
+    /**
+     * Nombre maximal d'en-têtes d'une requête.
+     */
+    public static final int MAX_HEADER_COUNT = 100;
+
+    /**
+     * Taille maximale du corps d'une requête, au-delà de laquelle la réponse est 413.
+     */
+    public static final int MAX_BODY_SIZE = 1024 * 1024;
+
+    /**
+     * Nombre maximal de lignes vides tolérées avant la ligne de requête (RFC 9112, section 2.2).
+     */
+    public static final int MAX_LEADING_EMPTY_LINES = 8;
+
+    /**
+     * Erreur d'analyse d'une requête, accompagnée de la réponse à renvoyer avant de fermer la connexion.
+     */
+    public static class ParseException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+        private final String statusMessage;
+
+        ParseException(int statusCode, String statusMessage, String detail) {
+            super(detail);
+            this.statusCode = statusCode;
+            this.statusMessage = statusMessage;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getStatusMessage() {
+            return statusMessage;
+        }
+    }
+
+    /**
+     * Noms d'en-têtes courants : le nom lu est remplacé par la constante, sans créer de chaîne.
+     */
+    private static final String[] COMMON_HEADERS = {
+            "host", "user-agent", "accept", "accept-encoding", "accept-language", "accept-charset",
+            "connection", "content-length", "content-type", "transfer-encoding", "cookie", "referer",
+            "range", "if-range", "if-none-match", "if-modified-since", "cache-control", "pragma",
+            "upgrade", "authorization", "origin", "te", "expect", "dnt", "x-forwarded-for",
+            "x-requested-with", "upgrade-insecure-requests", "http2-settings", "keep-alive",
+    };
+    private static final byte[][] COMMON_HEADER_BYTES = new byte[COMMON_HEADERS.length][];
+
+    /**
+     * Méthodes connues, partagées de la même façon.
+     */
+    private static final String[] METHODS = {"GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH", "TRACE", "CONNECT"};
+    private static final byte[][] METHOD_BYTES = new byte[METHODS.length][];
+
+    static {
+        for (int i = 0; i < COMMON_HEADERS.length; i++) {
+            COMMON_HEADER_BYTES[i] = COMMON_HEADERS[i].getBytes(StandardCharsets.ISO_8859_1);
+        }
+        for (int i = 0; i < METHODS.length; i++) {
+            METHOD_BYTES[i] = METHODS[i].getBytes(StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private static final String HTTP_1_1 = "HTTP/1.1";
+    private static final String HTTP_1_0 = "HTTP/1.0";
+    private static final String HTTP_2_0 = "HTTP/2.0";
+
+    private enum State { REQUEST_LINE, HEADERS, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS, PREFACE, PREFACE_SM, PREFACE_END }
+
+    private final InetAddress clientAddress;
+
+    private State state = State.REQUEST_LINE;
+    private byte[] line = new byte[256];  // Ligne en cours, réutilisée
+    private int lineLength;
+    private int headerBytes;              // Taille cumulée des en-têtes de la requête en cours
+    private int emptyLines;               // Lignes vides reçues avant la ligne de requête
+    private boolean continueExpected;     // Le client attend "100 Continue" avant d'envoyer le corps
+
+    private String method;
+    private String target;
+    private String version;
+    private String requestLine;
+    private Map<String, String> headers;
+    private byte[] body;
+    private int bodyLength;
+    private long remaining;               // Octets restant à lire dans le corps ou le morceau courant
+
+    /**
+     * Constructeur de la classe HttpParser.
+     *
+     * @param clientAddress L'adresse du client, associée aux requêtes analysées
+     */
+    public HttpParser(InetAddress clientAddress) {
+        this.clientAddress = clientAddress;
+    }
+
+    /**
+     * Consomme les octets disponibles du tampon. Les octets qui suivent une requête complète
+     * (requêtes pipelinées) restent dans le tampon pour l'appel suivant.
+     *
+     * @param buffer Le tampon en mode lecture
+     * @return La requête si elle est complète, null s'il faut attendre d'autres octets
+     * @throws ParseException Si la requête est mal formée ou dépasse une limite
+     */
+    public HttpRequest parse(ByteBuffer buffer) throws ParseException {
+        while (buffer.hasRemaining()) {
+            switch (state) {
+                case REQUEST_LINE:
+                    if (readLine(buffer, MAX_REQUEST_LINE, 414, "URI Too Long")) {
+                        if (lineLength > 0) {
+                            parseRequestLine();
+                            state = version == HTTP_2_0 ? State.PREFACE : State.HEADERS;
+                        } else if (++emptyLines > MAX_LEADING_EMPTY_LINES) {
+                            throw new ParseException(400, "Bad Request", "lignes vides avant la ligne de requête");
+                        }
+                    }
+                    break;
+                case PREFACE:
+                    // Fin de la préface HTTP/2 : exactement une ligne vide, "SM", puis une ligne vide
+                    if (readLine(buffer, 0, 400, "Bad Request")) {
+                        if (lineLength != 0) {
+                            throw new ParseException(400, "Bad Request", "préface HTTP/2 invalide");
+                        }
+                        state = State.PREFACE_SM;
+                    }
+                    break;
+                case PREFACE_SM:
+                    if (readLine(buffer, 2, 400, "Bad Request")) {
+                        if (lineLength != 2 || line[0] != 'S' || line[1] != 'M') {
+                            throw new ParseException(400, "Bad Request", "préface HTTP/2 invalide");
+                        }
+                        lineLength = 0;
+                        state = State.PREFACE_END;
+                    }
+                    break;
+                case PREFACE_END:
+                    if (readLine(buffer, 0, 400, "Bad Request")) {
+                        if (lineLength != 0) {
+                            throw new ParseException(400, "Bad Request", "préface HTTP/2 invalide");
+                        }
+                        return complete();
+                    }
+                    break;
+                case HEADERS:
+                    if (readLine(buffer, MAX_HEADER_SIZE - headerBytes, 431, "Request Header Fields Too Large")) {
+                        headerBytes += lineLength + 2;
+                        if (lineLength > 0) {
+                            parseHeader();
+                        } else if (startBody()) {
+                            return complete();
+                        }
+                    }
+                    break;
+                case BODY:
+                    readBody(buffer);
+                    if (remaining == 0) {
+                        return complete();
+                    }
+                    break;
+                case CHUNK_SIZE:
+                    if (readLine(buffer, 1024, 400, "Bad Request")) {
+                        remaining = parseChunkSize();
+                        state = remaining > 0 ? State.CHUNK_DATA : State.TRAILERS;
+                    }
+                    break;
+                case CHUNK_DATA:
+                    readBody(buffer);
+                    if (remaining == 0) {
+                        state = State.CHUNK_END;
+                    }
+                    break;
+                case CHUNK_END:
+                    if (readLine(buffer, 0, 400, "Bad Request")) {
+                        if (lineLength != 0) {
+                            throw new ParseException(400, "Bad Request", "fin de morceau invalide");
+                        }
+                        state = State.CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILERS:
+                    // Les en-têtes de fin sont comptés dans la limite des en-têtes mais ignorés
+                    if (readLine(buffer, MAX_HEADER_SIZE - headerBytes, 431, "Request Header Fields Too Large")) {
+                        headerBytes += lineLength + 2;
+                        if (lineLength == 0) {
+                            return complete();
+                        }
+                        lineLength = 0;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException(state.name());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Indique si l'analyseur est entre deux requêtes, c'est-à-dire qu'aucun octet de la requête suivante n'a été lu.
+     *
+     * @return true si aucune requête n'est en cours d'analyse
+     */
+    public boolean isIdle() {
+        return state == State.REQUEST_LINE && lineLength == 0;
+    }
+
+    /**
+     * Indique, une seule fois par requête, que le client attend la réponse intermédiaire "100 Continue"
+     * avant d'envoyer le corps annoncé. Le moteur l'envoie alors et reprend la lecture.
+     *
+     * @return true si "100 Continue" doit être envoyé maintenant
+     */
+    public boolean takeContinue() {
+        boolean expected = continueExpected && bodyLength == 0;
+        continueExpected = false;
+        return expected;
+    }
+
+    /**
+     * Retourne la ligne de requête en cours d'analyse, pour le log d'une requête refusée.
+     *
+     * @return La ligne de requête, ou "-" si elle n'a pas encore été lue
+     */
+    public String getRequestLine() {
+        if (requestLine != null) {
+            return requestLine;
+        }
+        return lineLength > 0 && state == State.REQUEST_LINE
+                ? new String(line, 0, Math.min(lineLength, 200), StandardCharsets.ISO_8859_1) : "-";
+    }
+
+    /**
+     * Accumule les octets d'une ligne jusqu'au LF. Le CR qui précède est retiré.
+     * La ligne est refusée dès qu'elle dépasse la limite, CR final non compris.
+     *
+     * @return true si la ligne est complète
+     */
+    private boolean readLine(ByteBuffer buffer, int limit, int status, String message) throws ParseException {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                    lineLength--;
+                }
+                return true;
+            }
+            if (lineLength > limit || (lineLength == limit && b != '\r')) {
+                throw new ParseException(status, message, "ligne de plus de " + limit + " octets");
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = b;
+        }
+        return false;
+    }
+
+    /**
+     * Analyse la ligne de requête : méthode, cible et version séparées par une espace.
+     */
+    private void parseRequestLine() throws ParseException {
+        requestLine = new String(line, 0, lineLength, StandardCharsets.ISO_8859_1);
+        int first = indexOf(line, 0, lineLength, (byte) ' ');
+        int second = first < 0 ? -1 : indexOf(line, first + 1, lineLength, (byte) ' ');
+        if (first <= 0 || second <= first + 1 || second == lineLength - 1
+                || indexOf(line, second + 1, lineLength, (byte) ' ') >= 0) {
+            throw new ParseException(400, "Bad Request", "ligne de requête invalide");
+        }
+        for (int i = 0; i < first; i++) {
+            if (!isTokenChar(line[i])) {
+                throw new ParseException(400, "Bad Request", "méthode invalide");
+            }
+        }
+        for (int i = first + 1; i < second; i++) {
+            if (line[i] <= ' ' || line[i] == 127) {
+                throw new ParseException(400, "Bad Request", "cible invalide");
+            }
+        }
+        method = shared(METHODS, METHOD_BYTES, 0, first);
+        target = requestLine.substring(first + 1, second);
+        if (matches(line, second + 1, lineLength - second - 1, HTTP_1_1)) {
+            version = HTTP_1_1;
+        } else if (matches(line, second + 1, lineLength - second - 1, HTTP_1_0)) {
+            version = HTTP_1_0;
+        } else if (method.equals("PRI") && target.equals("*") && matches(line, second + 1, lineLength - second - 1, HTTP_2_0)) {
+            version = HTTP_2_0;
+        } else if (lineLength - second - 1 == 8 && matches(line, second + 1, 5, "HTTP/")) {
+            throw new ParseException(505, "HTTP Version Not Supported", "version non prise en charge");
+        } else {
+            throw new ParseException(400, "Bad Request", "version invalide");
+        }
+        headers = new HashMap<>();
+        lineLength = 0;
+    }
+
+    /**
+     * Analyse un en-tête "Nom: valeur". Le nom est mis en minuscules ; les en-têtes répétés sont
+     * regroupés, séparés par des virgules.
+     */
+    private void parseHeader() throws ParseException {
+        if (line[0] == ' ' || line[0] == '\t') {
+            throw new ParseException(400, "Bad Request", "en-tête replié (obs-fold)");
+        }
+        if (headers.size() >= MAX_HEADER_COUNT) {
+            throw new ParseException(431, "Request Header Fields Too Large", "plus de " + MAX_HEADER_COUNT + " en-têtes");
+        }
+        int colon = indexOf(line, 0, lineLength, (byte) ':');
+        if (colon <= 0) {
+            throw new ParseException(400, "Bad Request", "en-tête sans nom");
+        }
+        for (int i = 0; i < colon; i++) {
+            byte b = line[i];
+            if (!isTokenChar(b)) {
+                throw new ParseException(400, "Bad Request", "nom d'en-tête invalide");
+            }
+            if (b >= 'A' && b <= 'Z') {
+                line[i] = (byte) (b + 32);
+            }
+        }
+        int start = colon + 1;
+        int end = lineLength;
+        while (start < end && (line[start] == ' ' || line[start] == '\t')) {
+            start++;
+        }
+        while (end > start && (line[end - 1] == ' ' || line[end - 1] == '\t')) {
+            end--;
+        }
+        String name = shared(COMMON_HEADERS, COMMON_HEADER_BYTES, 0, colon);
+        String value = new String(line, start, end - start, StandardCharsets.ISO_8859_1);
+        headers.merge(name, value, (previous, next) -> previous + ", " + next);
+        lineLength = 0;
+    }
+
+    /**
+     * Prépare la lecture du corps d'après Content-Length et Transfer-Encoding.
+     *
+     * @return true si la requête n'a pas de corps et est donc complète
+     */
+    private boolean startBody() throws ParseException {
+        String transferEncoding = headers.get("transfer-encoding");
+        String contentLength = headers.get("content-length");
+        String expect = headers.get("expect");
+        if (expect != null && version == HTTP_1_1) {
+            // Un client HTTP/1.0 ne connaît pas Expect : l'en-tête est alors ignoré (RFC 9110, section 10.1.1)
+            if (!expect.equalsIgnoreCase("100-continue")) {
+                throw new ParseException(417, "Expectation Failed", "attente non prise en charge : " + expect);
+            }
+            continueExpected = true;
+        }
+        if (transferEncoding != null) {
+            // Les deux en-têtes ensemble permettent de faire passer une requête pour une autre : refusés
+            if (contentLength != null) {
+                throw new ParseException(400, "Bad Request", "Content-Length et Transfer-Encoding ensemble");
+            }
+            if (!transferEncoding.equalsIgnoreCase("chunked")) {
+                throw new ParseException(400, "Bad Request", "Transfer-Encoding non pris en charge : " + transferEncoding);
+            }
+            state = State.CHUNK_SIZE;
+            return false;
+        }
+        if (contentLength == null) {
+            return true;
+        }
+        long length = -1;
+        if (!contentLength.isEmpty() && contentLength.chars().allMatch(c -> c >= '0' && c <= '9') && contentLength.length() < 19) {
+            length = Long.parseLong(contentLength);
+        }
+        if (length < 0) {
+            throw new ParseException(400, "Bad Request", "Content-Length invalide : " + contentLength);
+        }
+        if (length > MAX_BODY_SIZE) {
+            throw new ParseException(413, "Payload Too Large", "corps de " + length + " octets");
+        }
+        if (length == 0) {
+            return true;
+        }
+        body = new byte[(int) length];
+        remaining = length;
+        state = State.BODY;
+        return false;
+    }
+
+    /**
+     * Lit la taille hexadécimale d'un morceau, en ignorant ses extensions (";nom=valeur").
+     */
+    private long parseChunkSize() throws ParseException {
+        long size = 0;
+        int digits = 0;
+        for (int i = 0; i < lineLength && line[i] != ';'; i++) {
+            int digit = Character.digit(line[i], 16);
+            if (digit < 0) {
+                if (line[i] == ' ' || line[i] == '\t') {
+                    break;
+                }
+                throw new ParseException(400, "Bad Request", "taille de morceau invalide");
+            }
+            size = size * 16 + digit;
+            digits++;
+            if (bodyLength + size > MAX_BODY_SIZE) {
+                throw new ParseException(413, "Payload Too Large", "corps de plus de " + MAX_BODY_SIZE + " octets");
+            }
+        }
+        if (digits == 0) {
+            throw new ParseException(400, "Bad Request", "taille de morceau absente");
+        }
+        lineLength = 0;
+        if (size > 0) {
+            int needed = (int) (bodyLength + size);
+            if (body == null || body.length < needed) {
+                body = Arrays.copyOf(body == null ? new byte[0] : body, Math.max(needed, Math.min(MAX_BODY_SIZE, body == null ? 0 : body.length * 2)));
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Copie dans le corps les octets disponibles du corps ou du morceau courant.
+     */
+    private void readBody(ByteBuffer buffer) {
+        int count = (int) Math.min(remaining, buffer.remaining());
+        buffer.get(body, bodyLength, count);
+        bodyLength += count;
+        remaining -= count;
+        lineLength = 0;
+    }
+
+    /**
+     * Construit la requête complète et prépare l'analyseur pour la suivante.
+     */
+    private HttpRequest complete() {
+        byte[] requestBody = body == null ? null : body.length == bodyLength ? body : Arrays.copyOf(body, bodyLength);
+        HttpRequest request = new HttpRequest(method, target, version, headers, clientAddress, requestBody);
+        state = State.REQUEST_LINE;
+        lineLength = 0;
+        headerBytes = 0;
+        emptyLines = 0;
+        continueExpected = false;
+        requestLine = null;
+        headers = null;
+        body = null;
+        bodyLength = 0;
+        remaining = 0;
+        if (line.length > 4096) {
+            line = new byte[256]; // Une ligne exceptionnellement longue ne garde pas son tampon
+        }
+        return request;
+    }
+
+    /**
+     * Retourne la constante égale aux octets donnés, ou une nouvelle chaîne si aucune ne l'est.
+     */
+    private String shared(String[] names, byte[][] bytes, int offset, int length) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i].length == length && Arrays.equals(bytes[i], 0, length, line, offset, offset + length)) {
+                return names[i];
+            }
+        }
+        return new String(line, offset, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean matches(byte[] data, int offset, int length, String expected) {
+        if (length != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[offset + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] data, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Indique si un octet peut apparaître dans un nom de méthode ou d'en-tête (token de la RFC 9110).
+     */
+    private static boolean isTokenChar(byte b) {
+        if (b <= ' ' || b >= 127) {
+            return false;
+        }
+        return "\"(),/:;<=>?@[\\]{}".indexOf(b) < 0;
+    }
+}
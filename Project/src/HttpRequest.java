@@ -0,0 +1,162 @@
+import java.net.InetAddress;
+import java.util.Map;
+
+/**
+ * Cette classe représente une requête HTTP reçue par le serveur, quel que soit le moteur
+ * (bloquant ou NIO) qui l'a lue.
+ */
+public class HttpRequest {
+
+    private final String method;                // Méthode HTTP (GET, POST, ...)
+    private final String target;                // Cible de la requête (chemin demandé)
+    private final String version;               // Version du protocole (HTTP/1.0, HTTP/1.1)
+    private final Map<String, String> headers;  // En-têtes indexés par leur nom en minuscules
+    private final InetAddress clientAddress;    // Adresse du client
+    private final byte[] body;                  // Corps de la requête, null s'il est absent
+    private final ConfigLoader config;          // Configuration en vigueur à la réception, gardée jusqu'à la réponse
+
+    /**
+     * Constructeur de la classe HttpRequest.
+     *
+     * @param method        La méthode HTTP
+     * @param target        La cible de la requête
+     * @param version       La version du protocole
+     * @param headers       Les en-têtes, indexés par leur nom en minuscules
+     * @param clientAddress L'adresse du client
+     */
+    public HttpRequest(String method, String target, String version, Map<String, String> headers, InetAddress clientAddress) {
+        this(method, target, version, headers, clientAddress, null);
+    }
+
+    /**
+     * Constructeur de la classe HttpRequest, pour une requête accompagnée d'un corps.
+     *
+     * @param method        La méthode HTTP
+     * @param target        La cible de la requête
+     * @param version       La version du protocole
+     * @param headers       Les en-têtes, indexés par leur nom en minuscules
+     * @param clientAddress L'adresse du client
+     * @param body          Le corps de la requête, null s'il est absent
+     */
+    public HttpRequest(String method, String target, String version, Map<String, String> headers, InetAddress clientAddress, byte[] body) {
+        this.method = method;
+        this.target = target;
+        this.version = version;
+        this.headers = headers;
+        this.clientAddress = clientAddress;
+        this.body = body;
+        this.config = HttpServer.getConfig();
+    }
+
+    /**
+     * Indique si le client souhaite garder la connexion ouverte après la réponse :
+     * par défaut en HTTP/1.1 sauf "Connection: close", sur demande explicite en HTTP/1.0.
+     *
+     * @return true si la connexion peut rester ouverte
+     */
+    public boolean isKeepAlive() {
+        String connection = getHeader("connection", "").toLowerCase();
+        if (version.equals("HTTP/1.1")) {
+            return !connection.contains("close");
+        }
+        return connection.contains("keep-alive");
+    }
+
+    /**
+     * Indique si la requête est un HEAD : la réponse porte les mêmes en-têtes que pour un GET, mais aucun corps.
+     *
+     * @return true pour une requête HEAD
+     */
+    public boolean isHead() {
+        return method.equals("HEAD");
+    }
+
+    /**
+     * Retourne le corps de la requête, déjà lu en entier par l'analyseur.
+     *
+     * @return Le corps, ou null si la requête n'en a pas
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Retourne la valeur d'un en-tête.
+     *
+     * @param name         Nom de l'en-tête en minuscules
+     * @param defaultValue Valeur par défaut si l'en-tête est absent
+     * @return La valeur de l'en-tête ou la valeur par défaut
+     */
+    public String getHeader(String name, String defaultValue) {
+        return headers.getOrDefault(name, defaultValue);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * Retourne le chemin de la cible, sans la chaîne de requête.
+     *
+     * @return Le chemin demandé
+     */
+    public String getPath() {
+        int query = target.indexOf('?');
+        return query >= 0 ? target.substring(0, query) : target;
+    }
+
+    /**
+     * Indique si la chaîne de requête contient un paramètre, avec ou sans valeur ("?preview", "?preview=1").
+     *
+     * @param name Le nom du paramètre
+     * @return true si le paramètre est présent
+     */
+    public boolean hasQueryParameter(String name) {
+        int query = target.indexOf('?');
+        if (query < 0) {
+            return false;
+        }
+        for (String parameter : target.substring(query + 1).split("&")) {
+            int equals = parameter.indexOf('=');
+            if ((equals >= 0 ? parameter.substring(0, equals) : parameter).equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public InetAddress getClientAddress() {
+        return clientAddress;
+    }
+
+    /**
+     * Retourne la configuration en vigueur à la réception de la requête : un rechargement
+     * pendant son traitement ne modifie pas les paramètres qu'elle utilise.
+     *
+     * @return L'instantané de la configuration
+     */
+    public ConfigLoader getConfig() {
+        return config;
+    }
+
+    /**
+     * Retourne la ligne de requête telle qu'elle est enregistrée dans le log d'accès.
+     *
+     * @return La ligne de requête
+     */
+    public String getRequestLine() {
+        return method + " " + target + " " + version;
+    }
+}
@@ -0,0 +1,464 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cette classe représente une réponse HTTP produite par un RequestHandler.
+ * Elle est écrite telle quelle par les deux moteurs du serveur.
+ * Le corps est une suite de segments, chacun étant soit un tableau d'octets,
+ * soit une portion de fichier envoyée sans être chargée en mémoire.
+ * Un corps produit au fil de l'eau, dont la taille n'est pas connue à l'avance, est envoyé par morceaux
+ * (Transfer-Encoding: chunked).
+ */
+public class HttpResponse {
+
+    /**
+     * Producteur d'un corps envoyé au fil de l'eau. Chaque appel à flush() envoie au client
+     * ce qui a été écrit jusque-là.
+     */
+    public interface BodyWriter {
+
+        /**
+         * Écrit le corps de la réponse.
+         *
+         * @param out Le flux du corps
+         * @throws IOException En cas d'erreur d'écriture
+         */
+        void writeBody(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Flux qui découpe le corps en morceaux au format chunked. Les écritures sont regroupées
+     * et un morceau est émis lorsque le tampon est plein ou à chaque flush().
+     */
+    private static class ChunkedOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final byte[] buffer = new byte[8192];
+        private int count;
+        private long written; // Nombre d'octets du corps, hors format chunked
+
+        ChunkedOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                writeChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            if (length >= buffer.length) {
+                // Bloc volumineux : envoyé comme un morceau, sans passer par le tampon
+                writeChunk();
+                writeChunk(data, offset, length);
+                return;
+            }
+            if (count + length > buffer.length) {
+                writeChunk();
+            }
+            System.arraycopy(data, offset, buffer, count, length);
+            count += length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeChunk();
+            out.flush();
+        }
+
+        /**
+         * Émet le dernier morceau, de taille nulle, qui termine le corps.
+         */
+        void finish() throws IOException {
+            writeChunk();
+            out.write(LAST_CHUNK);
+        }
+
+        private void writeChunk() throws IOException {
+            writeChunk(buffer, 0, count);
+            count = 0;
+        }
+
+        private void writeChunk(byte[] data, int offset, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            out.write((Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.write(data, offset, length);
+            out.write(CRLF);
+            written += length;
+        }
+    }
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    /**
+     * Un segment du corps de la réponse.
+     */
+    private static class Segment {
+
+        private final byte[] data;     // Octets du segment, ou null pour une portion de fichier
+        private final Path file;       // Fichier du segment
+        private final long offset;     // Position du premier octet du fichier
+        private final long length;     // Nombre d'octets du segment
+
+        Segment(byte[] data) {
+            this.data = data;
+            this.file = null;
+            this.offset = 0;
+            this.length = data.length;
+        }
+
+        Segment(Path file, long offset, long length) {
+            this.data = null;
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final int statusCode;                                   // Code d'état HTTP
+    private final String statusMessage;                             // Message associé au code
+    private final Map<String, String> headers = new LinkedHashMap<>(); // En-têtes supplémentaires
+    private final List<Segment> body = new ArrayList<>();           // Corps de la réponse
+    private byte[] preformattedHead;                                // Ligne de statut et en-têtes déjà encodés
+    private BodyWriter streamedBody;                                // Corps produit au fil de l'eau, envoyé par morceaux
+    private long streamedLength;                                    // Taille du corps produit, connue après l'envoi
+    private String route = "other";                                 // Route qui a produit la réponse, pour les mesures
+
+    /**
+     * Constructeur de la classe HttpResponse.
+     *
+     * @param statusCode    Le code d'état HTTP
+     * @param statusMessage Le message d'état associé au code
+     * @param contentType   Le type MIME du corps, ou null si la réponse n'a pas de corps
+     * @param body          Le corps de la réponse
+     */
+    public HttpResponse(int statusCode, String statusMessage, String contentType, byte[] body) {
+        this.statusCode = statusCode;
+        this.statusMessage = statusMessage;
+        if (contentType != null) {
+            headers.put("Content-Type", contentType);
+        }
+        if (body.length > 0) {
+            this.body.add(new Segment(body));
+        }
+    }
+
+    /**
+     * Crée une réponse 200 dont la ligne de statut et les en-têtes décrivant le corps
+     * (Content-Type, Content-Length, validateurs) ont été encodés à l'avance par le cache de fichiers.
+     *
+     * @param preformattedHead La ligne de statut et les en-têtes, sans Connection ni ligne vide finale
+     * @param body             Le corps de la réponse
+     * @return La réponse
+     */
+    public static HttpResponse preformatted(byte[] preformattedHead, byte[] body) {
+        HttpResponse response = new HttpResponse(200, "OK", null, body);
+        response.preformattedHead = preformattedHead;
+        return response;
+    }
+
+    /**
+     * Crée une réponse dont le corps est une portion de fichier, envoyée sans être chargée en mémoire.
+     *
+     * @param statusCode    Le code d'état HTTP
+     * @param statusMessage Le message d'état associé au code
+     * @param contentType   Le type MIME du corps
+     * @param file          Le fichier à envoyer
+     * @param offset        La position du premier octet à envoyer
+     * @param length        Le nombre d'octets à envoyer
+     * @return La réponse
+     */
+    public static HttpResponse file(int statusCode, String statusMessage, String contentType, Path file, long offset, long length) {
+        return new HttpResponse(statusCode, statusMessage, contentType, new byte[0]).appendFile(file, offset, length);
+    }
+
+    /**
+     * Crée une réponse dont le corps est produit pendant l'envoi et transmis par morceaux,
+     * ce qui permet d'envoyer le début du corps avant que la suite ne soit connue.
+     * Réservé aux clients HTTP/1.1.
+     *
+     * @param statusCode    Le code d'état HTTP
+     * @param statusMessage Le message d'état associé au code
+     * @param contentType   Le type MIME du corps
+     * @param body          Le producteur du corps
+     * @return La réponse
+     */
+    public static HttpResponse streamed(int statusCode, String statusMessage, String contentType, BodyWriter body) {
+        HttpResponse response = new HttpResponse(statusCode, statusMessage, contentType, new byte[0]);
+        response.streamedBody = body;
+        return response;
+    }
+
+    /**
+     * Crée une réponse d'erreur HTTP avec une page HTML minimale.
+     *
+     * @param statusCode    Le code d'état HTTP (par exemple, 404 pour Not Found)
+     * @param statusMessage Le message d'état associé au code
+     * @return La réponse d'erreur
+     */
+    public static HttpResponse error(int statusCode, String statusMessage) {
+        String html = "<html><body><h1>" + statusCode + " " + statusMessage + "</h1></body></html>";
+        return new HttpResponse(statusCode, statusMessage, "text/html", html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Écrit la réponse intermédiaire "100 Continue", qui invite le client à envoyer le corps
+     * qu'il a annoncé avec "Expect: 100-continue". La réponse finale suit.
+     *
+     * @param out Le flux de sortie de la connexion
+     * @throws IOException En cas d'erreur d'écriture
+     */
+    public static void writeContinue(OutputStream out) throws IOException {
+        out.write(CONTINUE);
+        out.flush();
+    }
+
+    /**
+     * Ajoute ou remplace un en-tête de la réponse.
+     *
+     * @param name  Nom de l'en-tête
+     * @param value Valeur de l'en-tête
+     * @return Cette réponse, pour chaîner les appels
+     */
+    public HttpResponse setHeader(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    /**
+     * Indique la route qui a produit la réponse (static, dynamic, status, ...), utilisée pour les mesures de latence.
+     *
+     * @param route Le nom de la route
+     * @return Cette réponse, pour chaîner les appels
+     */
+    public HttpResponse setRoute(String route) {
+        this.route = route;
+        return this;
+    }
+
+    /**
+     * Ajoute des octets à la fin du corps.
+     *
+     * @param data Les octets à ajouter
+     * @return Cette réponse, pour chaîner les appels
+     */
+    public HttpResponse appendBody(byte[] data) {
+        body.add(new Segment(data));
+        return this;
+    }
+
+    /**
+     * Ajoute une portion de fichier à la fin du corps.
+     *
+     * @param file   Le fichier
+     * @param offset La position du premier octet à envoyer
+     * @param length Le nombre d'octets à envoyer
+     * @return Cette réponse, pour chaîner les appels
+     */
+    public HttpResponse appendFile(Path file, long offset, long length) {
+        body.add(new Segment(file, offset, length));
+        return this;
+    }
+
+    /**
+     * Écrit la réponse complète.
+     *
+     * @param out       Le flux de sortie de la connexion
+     * @param keepAlive true si la connexion reste ouverte après la réponse
+     * @throws IOException En cas d'erreur d'entrée/sortie lors de l'écriture
+     */
+    public void writeTo(OutputStream out, boolean keepAlive) throws IOException {
+        writeTo(out, keepAlive, true);
+    }
+
+    /**
+     * Écrit la réponse, avec ou sans son corps. Le Content-Length est toujours renseigné (sauf pour 304 et pour
+     * un corps envoyé par morceaux) pour que le client puisse délimiter la réponse sur une connexion persistante.
+     * Sans corps (réponse à un HEAD), les en-têtes sont ceux de la réponse complète mais rien ne suit la ligne vide :
+     * le corps produit au fil de l'eau n'est alors pas produit du tout.
+     *
+     * @param out       Le flux de sortie de la connexion
+     * @param keepAlive true si la connexion reste ouverte après la réponse
+     * @param withBody  false pour n'envoyer que la ligne de statut et les en-têtes
+     * @throws IOException En cas d'erreur d'entrée/sortie lors de l'écriture
+     */
+    public void writeTo(OutputStream out, boolean keepAlive, boolean withBody) throws IOException {
+        StringBuilder head = new StringBuilder();
+        if (preformattedHead != null) {
+            out.write(preformattedHead);
+        } else {
+            head.append("HTTP/1.1 ").append(statusCode).append(' ').append(statusMessage).append("\r\n");
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (streamedBody != null) {
+            head.append("Transfer-Encoding: chunked\r\n");
+        } else if (preformattedHead == null && statusCode != 304) {
+            head.append("Content-Length: ").append(getContentLength()).append("\r\n");
+        }
+        head.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n");
+        head.append("\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (!withBody) {
+            return;
+        }
+        if (streamedBody != null) {
+            ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+            try {
+                streamedBody.writeBody(chunked);
+                chunked.finish();
+            } finally {
+                streamedLength = chunked.written;
+            }
+            return;
+        }
+        writeSegments(out);
+    }
+
+    /**
+     * Retourne les en-têtes de la réponse pour un protocole qui encode lui-même la ligne de statut
+     * et délimite lui-même le corps (HTTP/2) : ceux de l'en-tête préconstruit puis les en-têtes supplémentaires,
+     * avec Content-Length sauf pour 304 et pour un corps produit au fil de l'eau.
+     *
+     * @return Les en-têtes, dans l'ordre d'envoi
+     */
+    public Map<String, String> getHeaders() {
+        Map<String, String> all = new LinkedHashMap<>();
+        if (preformattedHead != null) {
+            String[] lines = new String(preformattedHead, StandardCharsets.ISO_8859_1).split("\r\n");
+            // La première ligne est la ligne de statut
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                all.put(lines[i].substring(0, colon), lines[i].substring(colon + 1).trim());
+            }
+        } else if (streamedBody == null && statusCode != 304) {
+            all.put("Content-Length", String.valueOf(getContentLength()));
+        }
+        all.putAll(headers);
+        return all;
+    }
+
+    /**
+     * Indique si la réponse a un corps à envoyer.
+     *
+     * @return true si le corps est produit au fil de l'eau ou n'est pas vide
+     */
+    public boolean hasBody() {
+        return streamedBody != null || !body.isEmpty();
+    }
+
+    /**
+     * Écrit le corps seul, sans découpage en morceaux : le protocole de la connexion le délimite lui-même.
+     *
+     * @param out Le flux du corps
+     * @throws IOException En cas d'erreur d'entrée/sortie lors de l'écriture
+     */
+    public void writeBody(OutputStream out) throws IOException {
+        if (streamedBody == null) {
+            writeSegments(out);
+            return;
+        }
+        OutputStream counting = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                streamedLength++;
+            }
+
+            @Override
+            public void write(byte[] data, int offset, int length) throws IOException {
+                out.write(data, offset, length);
+                streamedLength += length;
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+        };
+        streamedBody.writeBody(counting);
+    }
+
+    private void writeSegments(OutputStream out) throws IOException {
+        for (Segment segment : body) {
+            if (segment.data != null) {
+                out.write(segment.data);
+            } else {
+                writeFile(out, segment);
+            }
+        }
+    }
+
+    /**
+     * Envoie une portion de fichier du corps. Le flux de la connexion la transmet sans copie
+     * lorsqu'il le permet, sinon elle est recopiée par blocs : dans les deux cas la mémoire utilisée
+     * ne dépend pas de la taille du fichier.
+     *
+     * @param out     Le flux de sortie de la connexion
+     * @param segment Le segment à envoyer
+     * @throws IOException En cas d'erreur de lecture du fichier ou d'écriture
+     */
+    private void writeFile(OutputStream out, Segment segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.READ)) {
+            if (out instanceof FileRegionSink) {
+                ((FileRegionSink) out).transferFile(channel, segment.offset, segment.length);
+                return;
+            }
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = segment.offset;
+            long remaining = segment.length;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, target);
+                if (transferred <= 0) {
+                    throw new IOException("Fichier tronqué pendant l'envoi : " + segment.file);
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+    }
+
+    /**
+     * Retourne la taille du corps de la réponse. Pour un corps envoyé par morceaux,
+     * il s'agit de la taille envoyée, connue seulement après writeTo().
+     *
+     * @return La taille du corps en octets
+     */
+    public long getContentLength() {
+        if (streamedBody != null) {
+            return streamedLength;
+        }
+        long length = 0;
+        for (Segment segment : body) {
+            length += segment.length;
+        }
+        return length;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+}
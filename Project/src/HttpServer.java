@@ -1,5 +1,11 @@
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Cette classe implémente un serveur HTTP simple capable de servir des fichiers statiques
@@ -9,33 +15,532 @@ public class HttpServer {
 
 
     /**
-     * L'objet ConfigLoader qui charge la configuration du serveur à partir du fichier de configuration.
+     * L'instantané de la configuration en vigueur, remplacé d'un seul coup lors d'un rechargement.
      */
-    private static ConfigLoader config;
+    private static volatile ConfigLoader config;
+
+    /**
+     * Le cache du contenu des fichiers servis, vidé ou redimensionné lors d'un rechargement.
+     */
+    private static FileCache fileCache;
+
+    /**
+     * La résolution des chemins demandés, vidée lors d'un rechargement qui change la racine.
+     */
+    private static PathResolver pathResolver;
+
+    /**
+     * L'exécuteur qui traite les connexions acceptées (pool borné ou threads virtuels).
+     */
+    private static ExecutorService executor;
+
+    /**
+     * L'exécuteur des flux HTTP/2. Une connexion HTTP/2 occupe un thread de l'exécuteur des connexions
+     * pendant toute sa durée : ses flux sont traités à part pour ne pas attendre derrière les nouvelles connexions.
+     */
+    private static ExecutorService streamExecutor;
+
+    /**
+     * Limite le nombre de connexions simultanées en mode virtuel (null en mode pool,
+     * où la limite est assurée par la taille du pool et de sa file d'attente).
+     */
+    private static Semaphore connectionSlots;
+
+    /**
+     * Les sockets d'écoute, fermés lors de l'arrêt pour interrompre les boucles d'acceptation.
+     * Les connexions sont acceptées par des canaux pour que ClientHandler puisse envoyer les fichiers sans copie.
+     */
+    private static volatile Listener listener;
+
+    /**
+     * Pause après une erreur d'acceptation (par exemple trop de fichiers ouverts), en millisecondes.
+     */
+    private static final long ACCEPT_ERROR_PAUSE = 10;
+
+    /**
+     * Le moteur NIO, lorsqu'il est sélectionné dans la configuration (null sinon).
+     */
+    private static volatile NioServer nioServer;
+
+    /**
+     * Le traitement des requêtes, partagé par les deux moteurs.
+     */
+    private static RequestHandler handler;
+
+    /**
+     * La limitation des connexions et des requêtes par client, partagée par les deux moteurs.
+     */
+    private static RateLimiter rateLimiter;
+
+    /**
+     * Le nombre de connexions actives, tous moteurs confondus.
+     */
+    private static final AtomicInteger activeConnections = new AtomicInteger();
+
+    /**
+     * Le nombre de connexions actives passées en HTTP/2, comprises dans les connexions actives.
+     */
+    private static final AtomicInteger http2Connections = new AtomicInteger();
+
+    /**
+     * Délai accordé à l'écriture des derniers logs lors de l'arrêt, en millisecondes.
+     */
+    private static final long LOG_FLUSH_TIMEOUT = 5000;
 
     /**
      * Méthode principale qui lance le serveur HTTP.
      * Charge la configuration, configure les logs, et attend les connexions entrantes.
      *
-     * @param args Les arguments de ligne de commande (non utilisés dans cette application)
+     * @param args Les arguments de ligne de commande : le chemin du fichier de configuration (facultatif,
+     *             src/myweb.conf par défaut)
      */
     public static void main(String[] args) {
         // Chargement de la configuration à partir du fichier de configuration spécifié
-        config = new ConfigLoader("src/myweb.conf");
+        config = new ConfigLoader(args.length > 0 ? args[0] : "src/myweb.conf");
         // Configuration des logs d'accès et d'erreur
-        Logs.setupLog(config.getAccessLog(), config.getErrorLog());
-        try (ServerSocket serverSocket = new ServerSocket(config.getPort())) {
+        Logs.setupLog(config.getAccessLog(), config.getErrorLog(), config.getLogFormat(),
+                config.getLogBufferSize(), config.getLogPolicy(), config.getLogFlushInterval());
+        executor = createExecutor();
+        streamExecutor = createStreamExecutor();
+        rateLimiter = createRateLimiter(config);
+        fileCache = new FileCache(config.getCacheSize(), config.getCacheMaxFileSize());
+        pathResolver = new PathResolver(config.getResolveCacheSize(), config.getResolveCacheTtl());
+        handler = new SiteHandler(fileCache, pathResolver);
+        Runtime.getRuntime().addShutdownHook(new Thread(HttpServer::shutdown, "myweb-shutdown"));
+        ConfigReloader.start(config);
 
-            // Boucle principale pour accepter les connexions entrantes des clients
-            while (true) {
-                Socket socket = serverSocket.accept();
-                // Démarrage d'un nouveau thread pour gérer chaque client
-                new Thread(new ClientHandler(socket)).start();
+        try {
+            listener = Listener.open(config);
+            if (config.getEngine().equals("nio")) {
+                nioServer = new NioServer(listener, config.getReactorCount(), handler, executor, streamExecutor);
+                nioServer.start();
+                return;
             }
         } catch (IOException e) {
             // En cas d'erreur lors du démarrage du serveur
             Logs.logError("Erreur de connection serveur : " + e.getMessage());
+            if (listener != null) {
+                listener.close();
+            }
+            return;
         }
+
+        // Une boucle d'acceptation par socket avec SO_REUSEPORT, sinon plusieurs boucles sur le socket partagé
+        int acceptor = 0;
+        for (ServerSocketChannel serverChannel : listener.getChannels()) {
+            for (int i = 0; i < listener.getLoopsPerChannel(); i++) {
+                new Thread(() -> acceptLoop(serverChannel), "myweb-acceptor-" + acceptor++).start();
+            }
+        }
+    }
+
+    /**
+     * Boucle d'acceptation du moteur bloquant : accepte les connexions entrantes sur un socket d'écoute
+     * et les confie à l'exécuteur, jusqu'à la fermeture du socket par l'arrêt du serveur.
+     *
+     * @param serverChannel Le socket d'écoute
+     */
+    private static void acceptLoop(ServerSocketChannel serverChannel) {
+        while (serverChannel.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                // Le canal d'écoute a été fermé par l'arrêt du serveur
+                break;
+            } catch (IOException e) {
+                Logs.logError("Erreur lors de l'acceptation d'une connexion : " + e.getMessage());
+                try {
+                    Thread.sleep(ACCEPT_ERROR_PAUSE);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                continue;
+            }
+            Listener.configure(channel, config);
+            // Refus immédiat, avant de confier la connexion à un thread
+            if (admit(channel.socket())) {
+                dispatch(channel.socket());
+            }
+        }
+    }
+
+    /**
+     * Contrôle une connexion tout juste acceptée : l'adresse du client doit être autorisée
+     * et le client ne doit pas avoir atteint son nombre maximal de connexions simultanées.
+     * Une connexion refusée est fermée, avec une réponse 429 dans le second cas.
+     * Une connexion admise doit être signalée à {@link #release(InetAddress)} lors de sa fermeture.
+     *
+     * @param socket Le socket de la connexion acceptée, encore en mode bloquant
+     * @return true si la connexion est admise
+     */
+    public static boolean admit(Socket socket) {
+        InetAddress address = socket.getInetAddress();
+        if (!isAccepted(address)) {
+            // Logs pour indiquer le refus de connexion pour une adresse IP non autorisée
+            Logs.logError("Connection refusée pour l'adresse IP : " + address.getHostAddress());
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Logs.logError("Erreur lors de la fermeture de la connexion : " + e.getMessage());
+            }
+            return false;
+        }
+        if (!rateLimiter.openConnection(address)) {
+            long start = System.nanoTime();
+            try (Socket s = socket; OutputStream out = s.getOutputStream()) {
+                HttpResponse limited = tooManyConnections();
+                limited.writeTo(out, false);
+                Metrics.requestCompleted("limited", 429, limited.getContentLength(), start);
+            } catch (IOException e) {
+                Logs.logError("Erreur lors de l'envoi de la réponse 429 : " + e.getMessage());
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Contrôle une connexion acceptée par le moteur NIO, comme {@link #admit(Socket)}, depuis le thread
+     * d'un reactor qui ne doit jamais bloquer : la réponse 429 est écrite en une seule tentative
+     * non bloquante, et ce qui n'a pas pu partir est abandonné avec la connexion.
+     *
+     * @param channel La connexion acceptée
+     * @return true si la connexion est admise
+     */
+    public static boolean admit(SocketChannel channel) {
+        InetAddress address = channel.socket().getInetAddress();
+        if (!isAccepted(address)) {
+            Logs.logError("Connection refusée pour l'adresse IP : " + address.getHostAddress());
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Logs.logError("Erreur lors de la fermeture de la connexion : " + e.getMessage());
+            }
+            return false;
+        }
+        if (!rateLimiter.openConnection(address)) {
+            long start = System.nanoTime();
+            try (SocketChannel c = channel) {
+                HttpResponse limited = tooManyConnections();
+                ByteArrayOutputStream head = new ByteArrayOutputStream(256);
+                limited.writeTo(head, false);
+                c.configureBlocking(false);
+                c.write(ByteBuffer.wrap(head.toByteArray()));
+                Metrics.requestCompleted("limited", 429, limited.getContentLength(), start);
+            } catch (IOException e) {
+                Logs.logError("Erreur lors de l'envoi de la réponse 429 : " + e.getMessage());
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Réponse à un client qui a atteint son nombre maximal de connexions simultanées.
+     */
+    private static HttpResponse tooManyConnections() {
+        return HttpResponse.error(429, "Too Many Requests").setHeader("Retry-After", "1");
+    }
+
+    /**
+     * Signale la fermeture d'une connexion admise par {@link #admit(Socket)}.
+     *
+     * @param address L'adresse du client
+     */
+    public static void release(InetAddress address) {
+        rateLimiter.connectionClosed(address);
+    }
+
+    /**
+     * Recharge le fichier de configuration et publie le nouvel instantané.
+     * Les requêtes en cours gardent l'instantané avec lequel elles ont commencé ;
+     * le cache de fichiers, la limitation par client et le nombre d'interpréteurs simultanés sont mis à jour
+     * avec le nouvel instantané ; les réglages keep-alive s'appliquent aux requêtes suivantes (moteur NIO)
+     * ou aux connexions suivantes (moteur bloquant).
+     * Les adresses d'écoute, le moteur, les threads et les logs ne changent qu'au prochain démarrage.
+     *
+     * @return null si la configuration a été rechargée, sinon la raison de l'échec
+     */
+    public static synchronized String reloadConfig() {
+        ConfigLoader previous = config;
+        ConfigLoader next;
+        try {
+            next = new ConfigLoader(previous.getPath());
+        } catch (RuntimeException e) {
+            Logs.logError("Configuration invalide, rechargement annulé : " + e.getMessage());
+            return "configuration invalide : " + e.getMessage();
+        }
+        if (next.getLoadError() != null) {
+            Logs.logError("Configuration illisible, rechargement annulé : " + next.getLoadError());
+            return "configuration illisible : " + next.getLoadError();
+        }
+
+        if (next.getResolveCacheSize() != previous.getResolveCacheSize() || next.getResolveCacheTtl() != previous.getResolveCacheTtl()) {
+            pathResolver.setLimits(next.getResolveCacheSize(), next.getResolveCacheTtl());
+        }
+        if (!next.getRootDirectory().equals(previous.getRootDirectory())) {
+            fileCache.clear();
+            pathResolver.clear();
+        }
+        if (next.getCacheSize() != previous.getCacheSize() || next.getCacheMaxFileSize() != previous.getCacheMaxFileSize()) {
+            fileCache.setLimits(next.getCacheSize(), next.getCacheMaxFileSize());
+        }
+        if (next.getRateLimit() != previous.getRateLimit() || next.getRateLimitBurst() != previous.getRateLimitBurst()
+                || next.getConnectionLimit() != previous.getConnectionLimit() || next.getRateLimitIdle() != previous.getRateLimitIdle()
+                || !next.getPathRateLimits().equals(previous.getPathRateLimits())) {
+            // Même instance : les connexions déjà ouvertes restent comptées et seront libérées auprès d'elle
+            rateLimiter.setLimits(next.getRateLimit(), next.getRateLimitBurst(), next.getConnectionLimit(),
+                    next.getRateLimitIdle(), next.getPathRateLimits());
+        }
+        if (next.getDynamicMaxProcesses() != previous.getDynamicMaxProcesses()) {
+            DynamicCodeExecutor.setMaxProcesses(next.getDynamicMaxProcesses());
+        }
+        if (!next.getListenAddresses().equals(previous.getListenAddresses()) || next.getAcceptorCount() != previous.getAcceptorCount()
+                || next.isReusePort() != previous.isReusePort() || next.getBacklog() != previous.getBacklog()
+                || next.getReceiveBufferSize() != previous.getReceiveBufferSize() || !next.getEngine().equals(previous.getEngine())
+                || next.getReactorCount() != previous.getReactorCount() || !next.getThreadMode().equals(previous.getThreadMode())
+                || next.getMaxThreads() != previous.getMaxThreads() || next.getThreadQueue() != previous.getThreadQueue()
+                || !next.getAccessLog().equals(previous.getAccessLog()) || !next.getErrorLog().equals(previous.getErrorLog())
+                || !next.getLogFormat().equals(previous.getLogFormat()) || next.getLogBufferSize() != previous.getLogBufferSize()
+                || !next.getLogPolicy().equals(previous.getLogPolicy()) || next.getLogFlushInterval() != previous.getLogFlushInterval()) {
+            Logs.logError("Les adresses d'écoute, le moteur, les threads et les logs modifiés seront pris en compte au prochain démarrage");
+        }
+        config = next;
+        Logs.logError("Configuration rechargée : " + next.getPath());
+        return null;
+    }
+
+    /**
+     * Crée la limitation par client décrite par une configuration.
+     *
+     * @param config La configuration
+     * @return La limitation par client
+     */
+    private static RateLimiter createRateLimiter(ConfigLoader config) {
+        return new RateLimiter(config.getRateLimit(), config.getRateLimitBurst(), config.getConnectionLimit(),
+                config.getRateLimitIdle(), config.getPathRateLimits());
+    }
+
+    /**
+     * Confie une connexion acceptée à l'exécuteur, ou la refuse avec une réponse 503
+     * si le serveur est saturé.
+     *
+     * @param socket Le socket de la connexion acceptée
+     */
+    private static void dispatch(Socket socket) {
+        if (connectionSlots != null && !connectionSlots.tryAcquire()) {
+            rejectOverload(socket);
+            return;
+        }
+        try {
+            if (connectionSlots != null) {
+                executor.execute(() -> {
+                    try {
+                        new ClientHandler(socket, handler, streamExecutor).run();
+                    } finally {
+                        connectionSlots.release();
+                    }
+                });
+            } else {
+                executor.execute(new ClientHandler(socket, handler, streamExecutor));
+            }
+        } catch (RejectedExecutionException e) {
+            if (connectionSlots != null) {
+                connectionSlots.release();
+            }
+            rejectOverload(socket);
+        }
+    }
+
+    /**
+     * Crée l'exécuteur des connexions selon le mode configuré.
+     * En mode "virtual", chaque connexion obtient un thread virtuel si la JVM le permet (Java 21+),
+     * sinon le serveur se replie sur le pool borné.
+     *
+     * @return L'exécuteur des connexions
+     */
+    private static ExecutorService createExecutor() {
+        if (config.getThreadMode().equals("virtual")) {
+            ExecutorService virtual = createVirtualExecutor();
+            if (virtual != null) {
+                connectionSlots = new Semaphore(config.getMaxThreads());
+                return virtual;
+            }
+            Logs.logError("Threads virtuels indisponibles sur cette JVM, utilisation du pool borné");
+        }
+        return createPool("myweb-worker-");
+    }
+
+    /**
+     * Crée l'exécuteur des flux HTTP/2 : des threads virtuels en mode "virtual", sinon un pool
+     * de même taille et de même file d'attente que celui des connexions.
+     *
+     * @return L'exécuteur des flux
+     */
+    private static ExecutorService createStreamExecutor() {
+        if (config.getThreadMode().equals("virtual")) {
+            ExecutorService virtual = createVirtualExecutor();
+            if (virtual != null) {
+                return virtual;
+            }
+        }
+        return createPool("myweb-h2-");
+    }
+
+    /**
+     * Crée un exécuteur qui lance un thread virtuel par tâche.
+     *
+     * @return L'exécuteur, ou null si la JVM ne permet pas les threads virtuels (avant Java 21)
+     */
+    private static ExecutorService createVirtualExecutor() {
+        try {
+            // Appel par réflexion pour rester compilable et exécutable sur les JVM antérieures à Java 21
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Crée un pool borné selon la configuration (threads max et file d'attente).
+     *
+     * @param threadPrefix Le préfixe du nom des threads
+     * @return Le pool
+     */
+    private static ExecutorService createPool(String threadPrefix) {
+        int max = config.getMaxThreads();
+        int queue = config.getThreadQueue();
+        BlockingQueue<Runnable> backlog = queue > 0 ? new ArrayBlockingQueue<>(queue) : new SynchronousQueue<>();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(max, max, 60, TimeUnit.SECONDS, backlog,
+                runnable -> new Thread(runnable, threadPrefix + threadNumber.incrementAndGet()));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Répond 503 Service Unavailable à une connexion que le serveur ne peut pas prendre en charge,
+     * puis ferme le socket.
+     *
+     * @param socket Le socket de la connexion refusée
+     */
+    private static void rejectOverload(Socket socket) {
+        release(socket.getInetAddress());
+        Logs.logError("Serveur saturé, connexion refusée pour l'adresse IP : " + socket.getInetAddress().getHostAddress());
+        long start = System.nanoTime();
+        try (Socket s = socket; OutputStream out = s.getOutputStream()) {
+            HttpResponse overload = HttpResponse.error(503, "Service Unavailable").setHeader("Retry-After", "1");
+            overload.writeTo(out, false);
+            Metrics.requestCompleted("overload", 503, overload.getContentLength(), start);
+        } catch (IOException e) {
+            Logs.logError("Erreur lors de l'envoi de la réponse 503 : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Arrête le serveur proprement : cesse d'accepter de nouvelles connexions
+     * puis laisse aux ClientHandler en cours le délai configuré pour se terminer.
+     */
+    private static void shutdown() {
+        if (listener != null) {
+            listener.close();
+        }
+        if (nioServer != null) {
+            nioServer.stopAccepting();
+        }
+
+        if (executor == null) {
+            Logs.shutdown(LOG_FLUSH_TIMEOUT);
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(config.getDrainTimeout(), TimeUnit.SECONDS)) {
+                Logs.logError("Délai d'arrêt dépassé, interruption des connexions restantes");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        // Les connexions HTTP/2 sont terminées : leurs flux encore en cours n'ont plus de destinataire
+        streamExecutor.shutdownNow();
+        if (nioServer != null) {
+            nioServer.close();
+        }
+        DynamicCodeExecutor.shutdown();
+        // Les messages encore en attente sont écrits avant la fin du processus
+        Logs.shutdown(LOG_FLUSH_TIMEOUT);
+    }
+
+    /**
+     * Méthode qui vérifie si une adresse IP est autorisée à se connecter au serveur.
+     *
+     * @param clientAddress L'adresse IP du client
+     * @return true si l'adresse IP est autorisée, false sinon
+     */
+    public static boolean isAccepted(InetAddress clientAddress) {
+        ConfigLoader current = config;
+        if (current.getReject().matches(clientAddress)) {
+            return false;
+        }
+        return current.getAccept().isEmpty() || current.getAccept().matches(clientAddress);
+    }
+
+    /**
+     * Signale l'ouverture d'une connexion client.
+     */
+    public static void connectionOpened() {
+        activeConnections.incrementAndGet();
+    }
+
+    /**
+     * Signale la fermeture d'une connexion client.
+     */
+    public static void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    /**
+     * Retourne le nombre de connexions actives, tous moteurs confondus.
+     *
+     * @return Le nombre de connexions actives
+     */
+    public static int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * Signale le passage d'une connexion active en HTTP/2.
+     */
+    public static void http2ConnectionOpened() {
+        http2Connections.incrementAndGet();
+    }
+
+    /**
+     * Signale la fin d'une connexion HTTP/2.
+     */
+    public static void http2ConnectionClosed() {
+        http2Connections.decrementAndGet();
+    }
+
+    /**
+     * Retourne le nombre de connexions actives passées en HTTP/2.
+     *
+     * @return Le nombre de connexions HTTP/2
+     */
+    public static int getHttp2Connections() {
+        return http2Connections.get();
+    }
+
+    public static PathResolver getPathResolver() {
+        return pathResolver;
+    }
+
+    public static RateLimiter getRateLimiter() {
+        return rateLimiter;
     }
 
     public static ConfigLoader getConfig() {
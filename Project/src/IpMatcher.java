@@ -0,0 +1,160 @@
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Cette classe représente une liste d'adresses et de réseaux IP (<accept>, <reject>), compilée au chargement
+ * de la configuration en deux arbres binaires de préfixes, l'un pour IPv4 et l'un pour IPv6.
+ * Une règle est une adresse seule ("10.0.0.1", "::1") ou un réseau en notation CIDR ("192.168.0.0/24", "2001:db8::/32").
+ * La recherche parcourt au plus 32 ou 128 bits de l'adresse brute, quel que soit le nombre de règles,
+ * sans conversion de l'adresse en texte.
+ */
+public class IpMatcher {
+
+    /**
+     * Adresse IPv4 littérale : seules les adresses littérales sont acceptées, pour ne jamais résoudre de nom d'hôte.
+     */
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+
+    /**
+     * Arbre binaire de préfixes stocké dans des tableaux : le noeud 0 est la racine,
+     * un fils à 0 signifie l'absence de fils.
+     */
+    private static final class PrefixTree {
+        private int[] zero = new int[64];
+        private int[] one = new int[64];
+        private boolean[] terminal = new boolean[64];
+        private int nodeCount = 1;
+
+        void add(byte[] address, int prefixLength) {
+            int node = 0;
+            for (int bit = 0; bit < prefixLength; bit++) {
+                if (terminal[node]) {
+                    return; // Un réseau plus large contient déjà celui-ci
+                }
+                boolean set = isSet(address, bit);
+                int child = set ? one[node] : zero[node];
+                if (child == 0) {
+                    child = newNode(); // Peut agrandir les tableaux : ils sont relus après la création
+                    (set ? one : zero)[node] = child;
+                }
+                node = child;
+            }
+            terminal[node] = true;
+        }
+
+        boolean contains(byte[] address) {
+            int node = 0;
+            int bits = address.length * 8;
+            for (int bit = 0; bit < bits; bit++) {
+                if (terminal[node]) {
+                    return true;
+                }
+                node = isSet(address, bit) ? one[node] : zero[node];
+                if (node == 0) {
+                    return false;
+                }
+            }
+            return terminal[node];
+        }
+
+        private int newNode() {
+            if (nodeCount == terminal.length) {
+                int capacity = nodeCount * 2;
+                zero = Arrays.copyOf(zero, capacity);
+                one = Arrays.copyOf(one, capacity);
+                terminal = Arrays.copyOf(terminal, capacity);
+            }
+            return nodeCount++;
+        }
+
+        private static boolean isSet(byte[] address, int bit) {
+            return (address[bit >>> 3] & (0x80 >>> (bit & 7))) != 0;
+        }
+    }
+
+    private final PrefixTree ipv4 = new PrefixTree();
+    private final PrefixTree ipv6 = new PrefixTree();
+    private int ruleCount;
+
+    /**
+     * Ajoute une règle : une adresse IP littérale, éventuellement suivie d'une longueur de préfixe.
+     *
+     * @param rule La règle, par exemple "127.0.0.1", "192.168.0.0/16" ou "fe80::/10"
+     * @throws IllegalArgumentException Si la règle n'est pas une adresse ou un réseau valide
+     */
+    public void add(String rule) {
+        int slash = rule.indexOf('/');
+        String literal = slash >= 0 ? rule.substring(0, slash) : rule;
+        if (!IPV4.matcher(literal).matches() && literal.indexOf(':') < 0) {
+            throw new IllegalArgumentException("adresse IP invalide : " + rule);
+        }
+        byte[] address;
+        try {
+            address = InetAddress.getByName(literal).getAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("adresse IP invalide : " + rule);
+        }
+        int bits = address.length * 8;
+        int prefixLength = bits;
+        if (slash >= 0) {
+            try {
+                prefixLength = Integer.parseInt(rule.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                prefixLength = -1;
+            }
+            if (prefixLength < 0 || prefixLength > bits) {
+                throw new IllegalArgumentException("longueur de préfixe invalide : " + rule);
+            }
+        }
+        (address.length == 4 ? ipv4 : ipv6).add(address, prefixLength);
+        ruleCount++;
+    }
+
+    /**
+     * Indique si une adresse appartient à l'une des adresses ou l'un des réseaux de la liste.
+     * Une adresse IPv6 de la forme ::ffff:a.b.c.d est comparée aux règles IPv4.
+     *
+     * @param address L'adresse à tester
+     * @return true si l'adresse correspond à une règle
+     */
+    public boolean matches(InetAddress address) {
+        byte[] raw = address.getAddress();
+        if (address instanceof Inet4Address) {
+            return ipv4.contains(raw);
+        }
+        if (isMappedIpv4(raw)) {
+            return ipv4.contains(Arrays.copyOfRange(raw, 12, 16));
+        }
+        return ipv6.contains(raw);
+    }
+
+    /**
+     * Indique si la liste ne contient aucune règle.
+     *
+     * @return true si la liste est vide
+     */
+    public boolean isEmpty() {
+        return ruleCount == 0;
+    }
+
+    /**
+     * Retourne le nombre de règles de la liste.
+     *
+     * @return Le nombre de règles ajoutées
+     */
+    public int size() {
+        return ruleCount;
+    }
+
+    private static boolean isMappedIpv4(byte[] raw) {
+        for (int i = 0; i < 10; i++) {
+            if (raw[i] != 0) {
+                return false;
+            }
+        }
+        return raw[10] == (byte) 0xff && raw[11] == (byte) 0xff;
+    }
+}
@@ -0,0 +1,121 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cette classe compte des durées (en microsecondes) dans des intervalles de largeur logarithmique,
+ * à la manière d'un histogramme HDR : chaque puissance de deux est découpée en 16 intervalles,
+ * ce qui donne les percentiles à environ 6 % près avec une mémoire fixe.
+ * L'enregistrement n'incrémente qu'un compteur LongAdder et ne prend aucun verrou.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;  // Au-delà de 2^40 µs (environ 12 jours), les durées sont regroupées
+
+    private final LongAdder[] buckets = new LongAdder[(MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    /**
+     * Constructeur de la classe LatencyHistogram.
+     */
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Enregistre une durée.
+     *
+     * @param micros La durée en microsecondes
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        buckets[index(value)].increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Retourne le nombre de durées enregistrées.
+     *
+     * @return Le nombre de durées
+     */
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Retourne la somme des durées enregistrées.
+     *
+     * @return La somme en microsecondes
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Retourne un percentile des durées enregistrées, arrondi à la borne supérieure de son intervalle.
+     *
+     * @param percentile Le percentile, entre 0 et 100 (par exemple 99.9)
+     * @return La durée en microsecondes, ou 0 si aucune durée n'a été enregistrée
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[buckets.length];
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Retourne l'intervalle d'une durée : les 16 premières valeurs ont chacune le leur,
+     * puis chaque puissance de deux est découpée en 16 intervalles de même largeur.
+     */
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        if (exponent == MAX_EXPONENT && value >>> MAX_EXPONENT > 1) {
+            subBucket = SUB_BUCKETS - 1;
+        }
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Retourne la plus grande durée comptée dans un intervalle.
+     */
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cette classe ouvre les sockets d'écoute du serveur, pour chaque adresse configurée.
+ * Avec SO_REUSEPORT, chaque boucle d'acceptation a son propre socket lié à la même adresse
+ * et le noyau répartit les nouvelles connexions entre eux : l'acceptation n'est plus limitée
+ * à un seul thread. Si le système ne le permet pas, un socket unique par adresse est partagé
+ * par les boucles d'acceptation.
+ */
+public class Listener {
+
+    private final List<ServerSocketChannel> channels;
+    private final int loopsPerChannel;
+    private final boolean reusePort;
+
+    private Listener(List<ServerSocketChannel> channels, int loopsPerChannel, boolean reusePort) {
+        this.channels = channels;
+        this.loopsPerChannel = loopsPerChannel;
+        this.reusePort = reusePort;
+    }
+
+    /**
+     * Ouvre les sockets d'écoute décrits par la configuration, en mode bloquant.
+     *
+     * @param config La configuration
+     * @return Les sockets ouverts
+     * @throws IOException Si une adresse ne peut pas être liée ; les sockets déjà ouverts sont alors fermés
+     */
+    public static Listener open(ConfigLoader config) throws IOException {
+        int acceptors = config.getAcceptorCount();
+        if (acceptors > 1 && config.isReusePort() && supportsReusePort()) {
+            try {
+                return new Listener(bindAll(config, acceptors, true), 1, true);
+            } catch (IOException e) {
+                // Option refusée (noyau ancien, conteneur) : un socket partagé par adresse
+                Logs.logError("SO_REUSEPORT indisponible, sockets d'écoute partagés : " + e.getMessage());
+            }
+        }
+        return new Listener(bindAll(config, 1, false), acceptors, false);
+    }
+
+    /**
+     * Indique si le système permet l'option SO_REUSEPORT sur les sockets d'écoute.
+     */
+    private static boolean supportsReusePort() {
+        try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Ouvre les sockets de toutes les adresses configurées.
+     *
+     * @param config     La configuration
+     * @param perAddress Le nombre de sockets par adresse
+     * @param reusePort  true pour activer SO_REUSEPORT
+     * @return Les sockets liés
+     * @throws IOException En cas d'erreur ; les sockets déjà ouverts sont alors fermés
+     */
+    private static List<ServerSocketChannel> bindAll(ConfigLoader config, int perAddress, boolean reusePort) throws IOException {
+        List<ServerSocketChannel> channels = new ArrayList<>();
+        try {
+            for (InetSocketAddress address : config.getListenAddresses()) {
+                for (int i = 0; i < perAddress; i++) {
+                    channels.add(bind(address, config, reusePort));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            close(channels);
+            throw e;
+        }
+        return channels;
+    }
+
+    /**
+     * Ouvre et lie un socket d'écoute. Le tampon de réception est réglé avant la liaison
+     * pour que la taille de la fenêtre TCP annoncée en tienne compte ; les connexions acceptées en héritent.
+     *
+     * @param address   L'adresse d'écoute
+     * @param config    La configuration
+     * @param reusePort true pour activer SO_REUSEPORT
+     * @return Le socket lié
+     * @throws IOException En cas d'erreur d'ouverture ou de liaison
+     */
+    private static ServerSocketChannel bind(InetSocketAddress address, ConfigLoader config, boolean reusePort) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            if (reusePort) {
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            if (config.getReceiveBufferSize() > 0) {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, config.getReceiveBufferSize());
+            }
+            channel.bind(address, config.getBacklog());
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Applique à une connexion acceptée les options TCP configurées.
+     *
+     * @param channel La connexion acceptée
+     * @param config  La configuration
+     */
+    public static void configure(SocketChannel channel, ConfigLoader config) {
+        try {
+            if (config.isTcpNoDelay()) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            if (config.getSendBufferSize() > 0) {
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, config.getSendBufferSize());
+            }
+        } catch (IOException e) {
+            Logs.logError("Options TCP non appliquées : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retourne les sockets d'écoute ouverts.
+     *
+     * @return Les sockets, plusieurs par adresse avec SO_REUSEPORT
+     */
+    public List<ServerSocketChannel> getChannels() {
+        return Collections.unmodifiableList(channels);
+    }
+
+    /**
+     * Retourne le nombre de boucles d'acceptation à lancer sur chaque socket.
+     *
+     * @return 1 si chaque boucle a son propre socket (SO_REUSEPORT), sinon le nombre de boucles configuré
+     */
+    public int getLoopsPerChannel() {
+        return loopsPerChannel;
+    }
+
+    /**
+     * Indique si chaque socket d'écoute est propre à une boucle d'acceptation (SO_REUSEPORT).
+     *
+     * @return true si les connexions sont réparties par le noyau
+     */
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    /**
+     * Ferme tous les sockets d'écoute ; les boucles d'acceptation en cours s'arrêtent.
+     */
+    public void close() {
+        close(channels);
+    }
+
+    private static void close(List<ServerSocketChannel> channels) {
+        for (ServerSocketChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Logs.logError("Erreur lors de la fermeture du socket serveur : " + e.getMessage());
+            }
+        }
+    }
+}
@@ -1,39 +1,310 @@
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.logging.FileHandler;
-import java.util.logging.Logger;
-import java.util.logging.SimpleFormatter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Cette classe gère les logs d'accès et d'erreur pour le serveur HTTP.
+ * Les threads qui traitent les requêtes ne font que déposer leurs messages dans une file circulaire ;
+ * un unique thread d'écriture les formate et les ajoute aux fichiers par lots, en gardant les fichiers ouverts.
  */
 public class Logs {
 
+    /**
+     * Un message en attente d'écriture. Les champs d'accès ne sont renseignés que pour le log d'accès.
+     */
+    private static class Record {
+
+        final long time = System.currentTimeMillis();
+        final String message;       // Message d'erreur, ou ligne de requête pour le log d'accès
+        final String ip;            // Adresse du client, null pour le log d'erreur
+        final String referer;
+        final String userAgent;
+        final int status;
+        final long bytes;
+        final long durationMicros;
+
+        Record(String message, String ip, String referer, String userAgent, int status, long bytes, long durationMicros) {
+            this.message = message;
+            this.ip = ip;
+            this.referer = referer;
+            this.userAgent = userAgent;
+            this.status = status;
+            this.bytes = bytes;
+            this.durationMicros = durationMicros;
+        }
+    }
+
+    /**
+     * File circulaire bornée à plusieurs producteurs et un seul consommateur, sans verrou :
+     * chaque case porte un numéro de séquence qui indique si elle est libre ou remplie.
+     */
+    private static class RingBuffer {
+
+        private final int mask;
+        private final AtomicReferenceArray<Record> slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong(); // Prochaine position à remplir (producteurs)
+        private long head;                                 // Prochaine position à lire (thread d'écriture seul)
+
+        RingBuffer(int capacity) {
+            int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+            mask = size - 1;
+            slots = new AtomicReferenceArray<>(size);
+            sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        /**
+         * Dépose un message dans la file.
+         *
+         * @param record Le message
+         * @return false si la file est pleine
+         */
+        boolean offer(Record record) {
+            while (true) {
+                long position = tail.get();
+                int index = (int) position & mask;
+                long sequence = sequences.get(index);
+                if (sequence == position) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        slots.set(index, record);
+                        sequences.set(index, position + 1);
+                        return true;
+                    }
+                } else if (sequence < position) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Retire le plus ancien message de la file.
+         *
+         * @return Le message, ou null si la file est vide
+         */
+        Record poll() {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                return null;
+            }
+            Record record = slots.get(index);
+            slots.set(index, null);
+            sequences.set(index, head + mask + 1);
+            head++;
+            return record;
+        }
+    }
+
+    /**
+     * Un fichier de log ouvert en ajout par le thread d'écriture. Après une erreur d'ouverture ou d'écriture,
+     * le fichier est fermé et les lots sont affichés sur la sortie d'erreur jusqu'à ce qu'il puisse être rouvert,
+     * ce qui est retenté au plus une fois par RETRY_NANOS.
+     */
+    private static class LogFile {
+
+        private final String path;
+        private FileChannel channel;
+        private long retryAt = System.nanoTime(); // Prochaine tentative d'ouverture (System.nanoTime)
+        private boolean failing;                   // Une erreur a été signalée depuis la dernière ouverture
+
+        LogFile(String path) {
+            this.path = path;
+        }
+
+        /**
+         * Ouvre le fichier s'il ne l'est pas et si le délai depuis le dernier échec est écoulé.
+         *
+         * @return true si le fichier est ouvert
+         */
+        boolean ready() {
+            if (channel != null) {
+                return true;
+            }
+            if (System.nanoTime() - retryAt < 0) {
+                return false;
+            }
+            try {
+                channel = open(path);
+                if (failing) {
+                    System.err.println("Fichier de log rouvert : " + path);
+                    failing = false;
+                }
+                return true;
+            } catch (IOException e) {
+                fail(e);
+                return false;
+            }
+        }
+
+        /**
+         * Écrit un lot de lignes puis vide le lot. En cas d'erreur, ce qui n'a pas été écrit
+         * est affiché sur la sortie d'erreur.
+         *
+         * @param batch Les lignes à écrire
+         */
+        void write(StringBuilder batch) {
+            if (batch.length() == 0) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8));
+            batch.setLength(0);
+            if (ready()) {
+                try {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    return;
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+            System.err.write(buffer.array(), buffer.position(), buffer.remaining());
+            System.err.flush();
+        }
+
+        /**
+         * Signale une erreur à sa première occurrence, ferme le fichier et diffère la prochaine ouverture.
+         */
+        private void fail(IOException e) {
+            if (!failing) {
+                System.err.println("Erreur lors de l'écriture dans le fichier de log " + path + " : " + e.getMessage());
+                failing = true;
+            }
+            close();
+            retryAt = System.nanoTime() + RETRY_NANOS;
+        }
+
+        void close() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Le fichier est abandonné : il sera rouvert à la prochaine écriture
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Format des dates du log d'erreur (et du log d'accès au format simple).
+     */
+    private static final DateTimeFormatter SIMPLE_DATE =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    /**
+     * Format des dates du Common Log Format, par exemple "10/Oct/2000:13:55:36 +0200".
+     */
+    private static final DateTimeFormatter CLF_DATE =
+            DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.US).withZone(ZoneId.systemDefault());
+
+    /**
+     * Taille à partir de laquelle un lot est écrit sans attendre que la file soit vide.
+     */
+    private static final int BATCH_BYTES = 64 * 1024;
+
+    /**
+     * Délai entre deux tentatives d'ouverture d'un fichier de log en erreur.
+     */
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
     private static String accessLogPath;
     private static String errorLogPath;
+    private static String format = "simple";   // simple, common ou combined
+    private static boolean blockWhenFull;      // Politique lorsque la file est pleine : attendre ou perdre le message
+    private static long flushIntervalNanos;
+
+    private static volatile RingBuffer ring;
+    private static volatile Thread writer;
+    private static volatile boolean closing;
+    private static volatile boolean writerAlive; // Faux si le thread d'écriture s'est arrêté
+    private static final LongAdder dropped = new LongAdder();
+
+    private static volatile long notFoundIntervalNanos = TimeUnit.MINUTES.toNanos(1);
+    private static final AtomicLong notFoundWindow = new AtomicLong(System.nanoTime()); // Début de l'intervalle en cours
+    private static final AtomicLong notFoundDetailed = new AtomicLong(); // Fichiers non trouvés détaillés dans l'intervalle
+    private static final LongAdder notFoundSkipped = new LongAdder();     // Fichiers non trouvés seulement comptés
 
     /**
-     * Configure les fichiers de log pour les logs d'accès et d'erreur.
-     * Crée les fichiers s'ils n'existent pas et configure les FileHandlers et formatters.
+     * Configure les fichiers de log pour les logs d'accès et d'erreur, au format simple
+     * et avec les réglages par défaut de la file d'attente.
      *
      * @param accessLogPath Chemin vers le fichier de log d'accès
      * @param errorLogPath  Chemin vers le fichier de log d'erreur
      */
     public static void setupLog(String accessLogPath, String errorLogPath) {
+        setupLog(accessLogPath, errorLogPath, "simple", 8192, "drop", 200);
+    }
+
+    /**
+     * Configure les fichiers de log et démarre le thread d'écriture.
+     * Les fichiers sont créés s'ils n'existent pas et restent ouverts jusqu'à l'arrêt du serveur.
+     *
+     * @param accessLogPath Chemin vers le fichier de log d'accès
+     * @param errorLogPath  Chemin vers le fichier de log d'erreur
+     * @param format        Format du log d'accès : simple, common ou combined
+     * @param capacity      Nombre de messages pouvant attendre l'écriture
+     * @param policy        Politique lorsque la file est pleine : drop (le message est perdu) ou block (l'appelant attend)
+     * @param flushMillis   Délai maximal avant l'écriture d'un message, en millisecondes
+     */
+    public static synchronized void setupLog(String accessLogPath, String errorLogPath, String format,
+                                             int capacity, String policy, long flushMillis) {
         Logs.accessLogPath = accessLogPath;
         Logs.errorLogPath = errorLogPath;
+        Logs.format = format;
+        Logs.blockWhenFull = policy.equals("block");
+        Logs.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushMillis));
+        if (ring == null) {
+            ring = new RingBuffer(capacity);
+            Thread thread = new Thread(Logs::writeLoop, "myweb-logs");
+            thread.setDaemon(true);
+            writer = thread;
+            writerAlive = true;
+            thread.start();
+        }
     }
 
     /**
-     * Log un message d'accès.
+     * Log une requête traitée.
      *
-     * @param message Message à logger
+     * @param request    La requête
+     * @param status     Le code d'état de la réponse
+     * @param bytes      La taille du corps de la réponse
+     * @param startNanos L'instant de réception de la requête (System.nanoTime)
+     */
+    public static void logAccess(HttpRequest request, int status, long bytes, long startNanos) {
+        offer(new Record(request.getRequestLine(), request.getClientAddress().getHostAddress(),
+                request.getHeader("referer", null), request.getHeader("user-agent", null),
+                status, bytes, (System.nanoTime() - startNanos) / 1000));
+    }
+
+    /**
+     * Log une requête qui n'a pas pu être analysée.
+     *
+     * @param requestLine La ligne de requête reçue
+     * @param ip          L'adresse IP du client
+     * @param status      Le code d'état de la réponse
+     * @param bytes       La taille du corps de la réponse
+     * @param startNanos  L'instant de réception de la requête (System.nanoTime)
      */
-    public static void logAccess(String message, String ip) {
-        log(accessLogPath, message, ip); // Log un message d'accès
+    public static void logAccess(String requestLine, String ip, int status, long bytes, long startNanos) {
+        offer(new Record(requestLine, ip, null, null, status, bytes, (System.nanoTime() - startNanos) / 1000));
     }
 
     /**
@@ -42,20 +313,216 @@ public class Logs {
      * @param message Message à logger
      */
     public static void logError(String message) {
-        log(errorLogPath, message, null); // Log un message d'erreur
+        offer(new Record(message, null, null, null, 0, 0, 0)); // Log un message d'erreur
+    }
+
+    /**
+     * Log un fichier non trouvé. Seuls les premiers de chaque intervalle sont détaillés :
+     * les suivants sont comptés, et leur nombre est journalisé en une ligne à la fin de l'intervalle,
+     * ce qui évite qu'une rafale de requêtes vers des chemins inexistants remplisse le log d'erreur.
+     *
+     * @param path           Le chemin demandé
+     * @param limit          Le nombre de fichiers non trouvés détaillés par intervalle
+     * @param intervalMillis La durée d'un intervalle, en millisecondes
+     */
+    public static void logNotFound(String path, int limit, long intervalMillis) {
+        notFoundIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        reportNotFound(System.nanoTime());
+        if (notFoundDetailed.incrementAndGet() <= limit) {
+            logError("Fichier non trouvé : " + path);
+        } else {
+            notFoundSkipped.increment();
+        }
+    }
+
+    /**
+     * Termine l'intervalle de log des fichiers non trouvés s'il est écoulé, en journalisant
+     * le nombre de ceux qui n'ont pas été détaillés. Un seul appelant termine un intervalle donné.
+     *
+     * @param now L'instant présent (System.nanoTime)
+     */
+    private static void reportNotFound(long now) {
+        long start = notFoundWindow.get();
+        if (now - start < notFoundIntervalNanos || !notFoundWindow.compareAndSet(start, now)) {
+            return;
+        }
+        notFoundDetailed.set(0);
+        long skipped = notFoundSkipped.sumThenReset();
+        if (skipped > 0) {
+            logError(skipped + " autres fichiers non trouvés en " + TimeUnit.NANOSECONDS.toSeconds(now - start) + " s");
+        }
+    }
+
+    /**
+     * Retourne le nombre de messages perdus parce que la file était pleine.
+     *
+     * @return Le nombre de messages perdus
+     */
+    public static long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Écrit les messages en attente puis arrête le thread d'écriture.
+     *
+     * @param timeoutMillis Le délai maximal d'attente, en millisecondes
+     */
+    public static void shutdown(long timeoutMillis) {
+        Thread thread = writer;
+        if (thread == null) {
+            return;
+        }
+        closing = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Dépose un message dans la file selon la politique configurée.
+     *
+     * @param record Le message
+     */
+    private static void offer(Record record) {
+        RingBuffer queue = ring;
+        while (queue != null && !closing && writerAlive) {
+            if (queue.offer(record)) {
+                return;
+            }
+            if (!blockWhenFull) {
+                dropped.increment();
+                return;
+            }
+            LockSupport.parkNanos(100_000);
+        }
+        // Logs non configurés, arrêtés ou sans thread d'écriture : le message est affiché sur la sortie d'erreur
+        System.err.println(record.ip != null ? record.ip + " - " + record.message : record.message);
     }
 
-    private static void log(String logPath, String message, String ip) {
-        try(FileWriter fw = new FileWriter(logPath, true)) {
-            String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
-            if (ip != null) {
-                fw.write("[" + timestamp + "] " + ip + " - " + message + "\n");
-            } else {
-                fw.write("[" + timestamp + "] " + message + "\n");
+    /**
+     * Boucle du thread d'écriture : vide la file dans des tampons, un par fichier, qui sont écrits
+     * lorsqu'ils dépassent BATCH_BYTES ou lorsque la file est vide. Le thread s'endort ensuite
+     * pendant le délai d'écriture configuré. Les erreurs d'écriture n'interrompent pas la boucle :
+     * la file continue d'être vidée, vers la sortie d'erreur tant qu'un fichier ne peut pas être rouvert.
+     */
+    private static void writeLoop() {
+        StringBuilder accessBatch = new StringBuilder();
+        StringBuilder errorBatch = new StringBuilder();
+        LogFile access = new LogFile(accessLogPath);
+        LogFile error = new LogFile(errorLogPath);
+        long reportedDrops = 0;
+        try {
+            // Les fichiers sont créés dès le démarrage
+            access.ready();
+            error.ready();
+            while (true) {
+                boolean stopping = closing;
+                Record record;
+                while ((record = ring.poll()) != null) {
+                    if (record.ip != null) {
+                        formatAccess(accessBatch, record);
+                    } else {
+                        formatError(errorBatch, record.time, record.message);
+                    }
+                    if (accessBatch.length() >= BATCH_BYTES) {
+                        access.write(accessBatch);
+                    }
+                    if (errorBatch.length() >= BATCH_BYTES) {
+                        error.write(errorBatch);
+                    }
+                }
+                long drops = dropped.sum();
+                if (drops != reportedDrops) {
+                    formatError(errorBatch, System.currentTimeMillis(),
+                            (drops - reportedDrops) + " messages de log perdus (file d'attente pleine)");
+                    reportedDrops = drops;
+                }
+                // Le décompte des fichiers non trouvés est journalisé même si les requêtes cessent
+                reportNotFound(System.nanoTime());
+                access.write(accessBatch);
+                error.write(errorBatch);
+                if (stopping) {
+                    return;
+                }
+                LockSupport.parkNanos(flushIntervalNanos);
             }
-        } catch (IOException e) {
-            System.err.println("Erreur lors de l'écriture dans le fichier de log : " + e.getMessage());
+        } catch (RuntimeException e) {
+            System.err.println("Arrêt du thread d'écriture des logs : " + e);
+        } finally {
+            // Les messages suivants iront sur la sortie d'erreur au lieu d'attendre une file que plus personne ne vide
+            writerAlive = false;
+            access.close();
+            error.close();
+        }
+    }
+
+    /**
+     * Ouvre un fichier de log en ajout, en le créant s'il n'existe pas.
+     *
+     * @param path Chemin du fichier
+     * @return Le canal du fichier
+     * @throws IOException En cas d'erreur d'ouverture
+     */
+    private static FileChannel open(String path) throws IOException {
+        return FileChannel.open(Paths.get(path),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Ajoute une ligne au log d'erreur : "[2024-01-31 12:00:00] message".
+     */
+    private static void formatError(StringBuilder batch, long time, String message) {
+        batch.append('[').append(SIMPLE_DATE.format(Instant.ofEpochMilli(time))).append("] ")
+                .append(message).append('\n');
+    }
+
+    /**
+     * Ajoute une ligne au log d'accès dans le format configuré. Les formats common et combined
+     * suivent ceux d'Apache, suivis de la durée de traitement en microsecondes (%D) :
+     * <pre>
+     * 127.0.0.1 - - [10/Oct/2000:13:55:36 +0200] "GET /index.html HTTP/1.1" 200 2326 "referer" "user-agent" 412
+     * </pre>
+     */
+    private static void formatAccess(StringBuilder batch, Record record) {
+        if (format.equals("simple")) {
+            batch.append('[').append(SIMPLE_DATE.format(Instant.ofEpochMilli(record.time))).append("] ")
+                    .append(record.ip).append(" - ").append(record.message).append('\n');
+            return;
+        }
+        batch.append(record.ip).append(" - - [").append(CLF_DATE.format(Instant.ofEpochMilli(record.time)))
+                .append("] \"").append(escape(record.message)).append("\" ")
+                .append(record.status).append(' ');
+        if (record.bytes > 0) {
+            batch.append(record.bytes);
+        } else {
+            batch.append('-');
         }
+        if (format.equals("combined")) {
+            batch.append(" \"").append(record.referer != null ? escape(record.referer) : "-").append("\" \"")
+                    .append(record.userAgent != null ? escape(record.userAgent) : "-").append('"');
+        }
+        batch.append(' ').append(record.durationMicros).append('\n');
     }
 
+    /**
+     * Protège les guillemets, barres obliques inverses et caractères de contrôle d'un champ entre guillemets.
+     */
+    private static String escape(String value) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20 || c == 0x7f) {
+                if (escaped == null) {
+                    escaped = new StringBuilder(value.length() + 8).append(value, 0, i);
+                }
+                escaped.append(c == '"' || c == '\\' ? "\\" + c : String.format("\\x%02x", (int) c));
+            } else if (escaped != null) {
+                escaped.append(c);
+            }
+        }
+        return escaped != null ? escaped.toString() : value;
+    }
 }
@@ -5,7 +5,8 @@ import java.lang.management.OperatingSystemMXBean;
 /**
  * Cette classe fournit des informations sur l'état de la machine serveur.
  * Elle génère une page HTML affichant la mémoire disponible, l'espace disque disponible,
- * le nombre de processus et le nombre de connexions actives.
+ * le nombre de processus, le nombre de connexions actives, l'efficacité du cache de fichiers,
+ * ainsi que le trafic et les latences mesurés par Metrics.
  */
 public class MachineStatus {
 
@@ -13,9 +14,10 @@ public class MachineStatus {
      * Génère une représentation HTML de l'état actuel de la machine serveur.
      *
      * @param connectionCount Le nombre de connexions actives
+     * @param fileCache       Le cache de fichiers dont les compteurs sont affichés
      * @return Une chaîne HTML représentant l'état du serveur
      */
-    public static String getStatusHtml(int connectionCount) {
+    public static String getStatusHtml(int connectionCount, FileCache fileCache) {
         // Obtient l'instance de Runtime pour récupérer des informations sur la mémoire
         Runtime runtime = Runtime.getRuntime();
         long freeMemory = runtime.freeMemory();
@@ -39,9 +41,55 @@ public class MachineStatus {
         html.append("<p>Espace disque disponible: ").append(freeSpace).append(" bytes</p>");
         html.append("<p>Nombre de processus: ").append(processCount).append("</p>");
         html.append("<p>Nombre de connexions actives: ").append(connectionCount).append("</p>");
+        html.append("<p>Dont connexions HTTP/2: ").append(HttpServer.getHttp2Connections()).append("</p>");
+        html.append("<h2>Cache de fichiers</h2>");
+        html.append("<p>Succès: ").append(fileCache.getHits()).append("</p>");
+        html.append("<p>Échecs: ").append(fileCache.getMisses()).append("</p>");
+        html.append("<p>Évictions: ").append(fileCache.getEvictions()).append("</p>");
+        html.append("<p>Entrées: ").append(fileCache.getEntryCount())
+                .append(" (").append(fileCache.getUsedBytes()).append(" bytes)</p>");
+        PathResolver pathResolver = HttpServer.getPathResolver();
+        html.append("<h2>Résolution des chemins</h2>");
+        html.append("<p>Succès: ").append(pathResolver.getHits()).append("</p>");
+        html.append("<p>Échecs: ").append(pathResolver.getMisses()).append("</p>");
+        html.append("<p>Entrées (404 compris): ").append(pathResolver.getEntryCount()).append("</p>");
+        html.append("<h2>Trafic</h2>");
+        html.append("<p>Requêtes traitées: ").append(Metrics.getRequestCount()).append("</p>");
+        html.append("<p>Requêtes par seconde: ").append(String.format("%.1f", Metrics.getRequestRate())).append("</p>");
+        html.append("<p>Octets reçus: ").append(Metrics.getBytesIn()).append(" bytes</p>");
+        html.append("<p>Octets envoyés: ").append(Metrics.getBytesOut()).append(" bytes</p>");
+        html.append("<p>Codes de réponse:");
+        Metrics.getStatusCounts().forEach((code, count) -> html.append(' ').append(code).append(" : ").append(count).append(';'));
+        html.append("</p>");
+        html.append("<h2>Latences (µs)</h2>");
+        html.append("<table border=\"1\"><tr><th>Route</th><th>Requêtes</th><th>p50</th><th>p99</th><th>p99.9</th><th>max</th></tr>");
+        Metrics.getRouteLatencies().forEach((route, histogram) -> appendLatencyRow(html, route, histogram));
+        appendLatencyRow(html, "code dynamique", Metrics.getDynamicLatency());
+        html.append("</table>");
+        html.append("<p>Exécutions de code en erreur ou hors délai: ").append(Metrics.getDynamicFailures()).append("</p>");
+        RateLimiter rateLimiter = HttpServer.getRateLimiter();
+        html.append("<h2>Limitation par client</h2>");
+        html.append("<p>Requêtes refusées (429): ").append(rateLimiter.getLimitedRequests()).append("</p>");
+        html.append("<p>Connexions refusées: ").append(rateLimiter.getRefusedConnections()).append("</p>");
+        html.append("<p>Clients suivis: ").append(rateLimiter.getTrackedClients()).append("</p>");
         html.append("</body></html>");
 
         return html.toString();
     }
 
+    /**
+     * Ajoute au tableau des latences la ligne d'un histogramme.
+     *
+     * @param html      La page en construction
+     * @param name      Le nom de la ligne
+     * @param histogram L'histogramme des latences
+     */
+    private static void appendLatencyRow(StringBuilder html, String name, LatencyHistogram histogram) {
+        html.append("<tr><td>").append(name).append("</td><td>").append(histogram.getCount())
+                .append("</td><td>").append(histogram.getPercentile(50))
+                .append("</td><td>").append(histogram.getPercentile(99))
+                .append("</td><td>").append(histogram.getPercentile(99.9))
+                .append("</td><td>").append(histogram.getMax()).append("</td></tr>");
+    }
+
 }
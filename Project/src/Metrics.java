@@ -0,0 +1,272 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cette classe rassemble les mesures du serveur, tous moteurs confondus : requêtes, débit,
+ * octets reçus et envoyés, codes d'état et histogrammes de latence par route et pour le code dynamique.
+ * Les compteurs sont des LongAdder : l'enregistrement d'une requête ne prend aucun verrou,
+ * et les totaux ne sont calculés qu'à la lecture (/status, /metrics).
+ */
+public class Metrics {
+
+    /**
+     * Nombre de secondes sur lesquelles le débit de requêtes est moyenné.
+     */
+    private static final int RATE_WINDOW = 10;
+
+    private static final long startMillis = System.currentTimeMillis();
+    private static final LongAdder requests = new LongAdder();
+    private static final LongAdder bytesIn = new LongAdder();
+    private static final LongAdder bytesOut = new LongAdder();
+    private static final LongAdder dynamicFailures = new LongAdder();
+    private static final Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> routeLatencies = new ConcurrentHashMap<>();
+    private static final LatencyHistogram dynamicLatency = new LatencyHistogram();
+
+    // Nombre de requêtes de chacune des dernières secondes, indexé par seconde modulo la taille du tableau
+    private static final AtomicLongArray secondCounts = new AtomicLongArray(RATE_WINDOW + 2);
+    private static final AtomicLongArray secondStamps = new AtomicLongArray(RATE_WINDOW + 2);
+
+    /**
+     * Enregistre une requête traitée.
+     *
+     * @param route      La route qui a produit la réponse (static, dynamic, status, ...)
+     * @param status     Le code d'état de la réponse
+     * @param bytes      La taille du corps de la réponse
+     * @param startNanos L'instant de réception de la requête (System.nanoTime)
+     */
+    public static void requestCompleted(String route, int status, long bytes, long startNanos) {
+        requests.increment();
+        bytesOut.add(bytes);
+        statusCounts.computeIfAbsent(status, code -> new LongAdder()).increment();
+        routeLatencies.computeIfAbsent(route, name -> new LatencyHistogram()).record((System.nanoTime() - startNanos) / 1000);
+
+        long second = System.currentTimeMillis() / 1000;
+        int index = (int) (second % secondCounts.length());
+        long stamp = secondStamps.get(index);
+        if (stamp != second && secondStamps.compareAndSet(index, stamp, second)) {
+            secondCounts.set(index, 0);
+        }
+        secondCounts.incrementAndGet(index);
+    }
+
+    /**
+     * Enregistre des octets reçus d'un client.
+     *
+     * @param bytes Le nombre d'octets
+     */
+    public static void bytesReceived(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    /**
+     * Enregistre l'exécution d'un bloc de code dynamique.
+     *
+     * @param nanos  La durée de l'exécution en nanosecondes
+     * @param failed true si l'exécution a échoué ou dépassé son délai
+     */
+    public static void dynamicExecuted(long nanos, boolean failed) {
+        dynamicLatency.record(nanos / 1000);
+        if (failed) {
+            dynamicFailures.increment();
+        }
+    }
+
+    /**
+     * Retourne le nombre moyen de requêtes par seconde sur les dernières secondes écoulées.
+     *
+     * @return Le débit en requêtes par seconde
+     */
+    public static double getRequestRate() {
+        long now = System.currentTimeMillis() / 1000;
+        long count = 0;
+        for (long second = now - RATE_WINDOW; second < now; second++) {
+            int index = (int) (second % secondCounts.length());
+            if (secondStamps.get(index) == second) {
+                count += secondCounts.get(index);
+            }
+        }
+        return (double) count / RATE_WINDOW;
+    }
+
+    public static long getRequestCount() {
+        return requests.sum();
+    }
+
+    public static long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public static long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    public static long getDynamicFailures() {
+        return dynamicFailures.sum();
+    }
+
+    public static LatencyHistogram getDynamicLatency() {
+        return dynamicLatency;
+    }
+
+    /**
+     * Retourne le nombre de réponses par code d'état.
+     *
+     * @return Les nombres de réponses, triés par code
+     */
+    public static Map<Integer, Long> getStatusCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        statusCounts.forEach((code, count) -> counts.put(code, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Retourne les histogrammes de latence par route.
+     *
+     * @return Les histogrammes, triés par route
+     */
+    public static Map<String, LatencyHistogram> getRouteLatencies() {
+        return new TreeMap<>(routeLatencies);
+    }
+
+    /**
+     * Retourne la durée de fonctionnement du serveur.
+     *
+     * @return La durée en secondes
+     */
+    public static long getUptimeSeconds() {
+        return (System.currentTimeMillis() - startMillis) / 1000;
+    }
+
+    /**
+     * Produit les mesures au format texte de Prometheus.
+     *
+     * @param fileCache Le cache de fichiers dont les compteurs sont exportés
+     * @return Les mesures
+     */
+    public static String toPrometheus(FileCache fileCache) {
+        StringBuilder text = new StringBuilder();
+        gauge(text, "myweb_uptime_seconds", "Durée de fonctionnement", getUptimeSeconds());
+        gauge(text, "myweb_active_connections", "Connexions actives", HttpServer.getActiveConnections());
+        gauge(text, "myweb_http2_connections", "Connexions actives en HTTP/2", HttpServer.getHttp2Connections());
+        counter(text, "myweb_requests_total", "Requêtes traitées", getRequestCount());
+        gauge(text, "myweb_requests_per_second", "Débit moyen sur " + RATE_WINDOW + " s", getRequestRate());
+        counter(text, "myweb_received_bytes_total", "Octets reçus", getBytesIn());
+        counter(text, "myweb_sent_bytes_total", "Octets de corps de réponse envoyés", getBytesOut());
+
+        text.append("# HELP myweb_responses_total Réponses par code d'état\n# TYPE myweb_responses_total counter\n");
+        getStatusCounts().forEach((code, count) ->
+                text.append("myweb_responses_total{code=\"").append(code).append("\"} ").append(count).append('\n'));
+
+        text.append("# HELP myweb_request_duration_microseconds Latence des requêtes par route\n")
+                .append("# TYPE myweb_request_duration_microseconds summary\n");
+        getRouteLatencies().forEach((route, histogram) ->
+                summary(text, "myweb_request_duration_microseconds", "route=\"" + route + "\",", histogram));
+
+        text.append("# HELP myweb_dynamic_duration_microseconds Durée d'exécution du code dynamique\n")
+                .append("# TYPE myweb_dynamic_duration_microseconds summary\n");
+        summary(text, "myweb_dynamic_duration_microseconds", "", dynamicLatency);
+        counter(text, "myweb_dynamic_failures_total", "Exécutions en erreur ou hors délai", getDynamicFailures());
+
+        RateLimiter rateLimiter = HttpServer.getRateLimiter();
+        counter(text, "myweb_rate_limited_requests_total", "Requêtes refusées par la limitation de débit", rateLimiter.getLimitedRequests());
+        counter(text, "myweb_rate_limited_connections_total", "Connexions refusées par la limite par client", rateLimiter.getRefusedConnections());
+        gauge(text, "myweb_rate_limited_clients", "Clients suivis par la limitation", rateLimiter.getTrackedClients());
+
+        counter(text, "myweb_file_cache_hits_total", "Succès du cache de fichiers", fileCache.getHits());
+        counter(text, "myweb_file_cache_misses_total", "Échecs du cache de fichiers", fileCache.getMisses());
+        counter(text, "myweb_file_cache_evictions_total", "Évictions du cache de fichiers", fileCache.getEvictions());
+        gauge(text, "myweb_file_cache_bytes", "Taille du cache de fichiers", fileCache.getUsedBytes());
+
+        PathResolver pathResolver = HttpServer.getPathResolver();
+        counter(text, "myweb_path_cache_hits_total", "Chemins résolus depuis le cache", pathResolver.getHits());
+        counter(text, "myweb_path_cache_misses_total", "Chemins résolus sur le disque", pathResolver.getMisses());
+        gauge(text, "myweb_path_cache_entries", "Chemins gardés en cache, 404 compris", pathResolver.getEntryCount());
+        counter(text, "myweb_log_dropped_total", "Messages de log perdus", Logs.getDroppedCount());
+        return text.toString();
+    }
+
+    /**
+     * Produit les mesures au format JSON.
+     *
+     * @param fileCache Le cache de fichiers dont les compteurs sont exportés
+     * @return Les mesures
+     */
+    public static String toJson(FileCache fileCache) {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"uptimeSeconds\":").append(getUptimeSeconds())
+                .append(",\"activeConnections\":").append(HttpServer.getActiveConnections())
+                .append(",\"http2Connections\":").append(HttpServer.getHttp2Connections())
+                .append(",\"requests\":").append(getRequestCount())
+                .append(",\"requestsPerSecond\":").append(getRequestRate())
+                .append(",\"bytesIn\":").append(getBytesIn())
+                .append(",\"bytesOut\":").append(getBytesOut());
+
+        json.append(",\"status\":{");
+        String separator = "";
+        for (Map.Entry<Integer, Long> status : getStatusCounts().entrySet()) {
+            json.append(separator).append('"').append(status.getKey()).append("\":").append(status.getValue());
+            separator = ",";
+        }
+        json.append("},\"routes\":{");
+        separator = "";
+        for (Map.Entry<String, LatencyHistogram> route : getRouteLatencies().entrySet()) {
+            json.append(separator).append('"').append(route.getKey()).append("\":");
+            histogramJson(json, route.getValue());
+            separator = ",";
+        }
+        json.append("},\"dynamic\":");
+        histogramJson(json, dynamicLatency);
+        json.append(",\"dynamicFailures\":").append(getDynamicFailures());
+
+        RateLimiter rateLimiter = HttpServer.getRateLimiter();
+        json.append(",\"rateLimit\":{\"limitedRequests\":").append(rateLimiter.getLimitedRequests())
+                .append(",\"refusedConnections\":").append(rateLimiter.getRefusedConnections())
+                .append(",\"trackedClients\":").append(rateLimiter.getTrackedClients()).append('}');
+        json.append(",\"fileCache\":{\"hits\":").append(fileCache.getHits())
+                .append(",\"misses\":").append(fileCache.getMisses())
+                .append(",\"evictions\":").append(fileCache.getEvictions())
+                .append(",\"entries\":").append(fileCache.getEntryCount())
+                .append(",\"bytes\":").append(fileCache.getUsedBytes()).append('}');
+        PathResolver pathResolver = HttpServer.getPathResolver();
+        json.append(",\"pathCache\":{\"hits\":").append(pathResolver.getHits())
+                .append(",\"misses\":").append(pathResolver.getMisses())
+                .append(",\"entries\":").append(pathResolver.getEntryCount()).append('}');
+        json.append(",\"logDropped\":").append(Logs.getDroppedCount());
+        return json.append('}').toString();
+    }
+
+    private static void counter(StringBuilder text, String name, String help, long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" counter\n")
+                .append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder text, String name, String help, double value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" gauge\n")
+                .append(name).append(' ').append(value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value))
+                .append('\n');
+    }
+
+    private static void summary(StringBuilder text, String name, String labels, LatencyHistogram histogram) {
+        for (String quantile : new String[]{"0.5", "0.99", "0.999"}) {
+            text.append(name).append("{").append(labels).append("quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getPercentile(Double.parseDouble(quantile) * 100)).append('\n');
+        }
+        String plainLabels = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+        text.append(name).append("_sum").append(plainLabels).append(' ').append(histogram.getTotal()).append('\n');
+        text.append(name).append("_count").append(plainLabels).append(' ').append(histogram.getCount()).append('\n');
+    }
+
+    private static void histogramJson(StringBuilder json, LatencyHistogram histogram) {
+        json.append("{\"count\":").append(histogram.getCount())
+                .append(",\"p50\":").append(histogram.getPercentile(50))
+                .append(",\"p99\":").append(histogram.getPercentile(99))
+                .append(",\"p999\":").append(histogram.getPercentile(99.9))
+                .append(",\"max\":").append(histogram.getMax()).append('}');
+    }
+}
@@ -0,0 +1,719 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cette classe implémente le moteur NIO du serveur : des threads "reactor" multiplexent
+ * les connexions avec un Selector, lisent les requêtes de façon incrémentale dans des ByteBuffer
+ * mutualisés et écrivent les réponses sans bloquer. Les requêtes complètes sont confiées
+ * à l'exécuteur des connexions, qui appelle le même RequestHandler que le moteur bloquant.
+ */
+public class NioServer {
+
+    /**
+     * Taille des tampons de lecture.
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Nombre d'octets en attente d'envoi au-delà duquel le thread qui produit la réponse est suspendu.
+     */
+    private static final int HIGH_WATER_MARK = 256 * 1024;
+
+    /**
+     * Taille des blocs transmis par un thread de traitement au reactor.
+     */
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    /**
+     * Taille des projections mémoire utilisées pour envoyer les fichiers volumineux.
+     */
+    private static final int MAPPED_REGION_SIZE = 1024 * 1024;
+
+    private final RequestHandler handler;        // Traitement des requêtes, partagé avec le moteur bloquant
+    private final ExecutorService workers;       // Exécuteur des traitements de requêtes
+    private final ExecutorService streamWorkers; // Exécuteur des flux des connexions passées en HTTP/2
+    private final Listener listener;             // Sockets d'écoute, répartis entre les reactors
+    private final Reactor[] reactors;
+    private final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+    private final AtomicInteger nextReactor = new AtomicInteger();
+
+    /**
+     * Constructeur de la classe NioServer. Répartit les sockets d'écoute entre les reactors sans démarrer ces derniers :
+     * avec SO_REUSEPORT, plusieurs reactors acceptent donc des connexions en parallèle.
+     *
+     * @param listener     Les sockets d'écoute, ouverts
+     * @param reactorCount Le nombre de reactors (0 pour un reactor par cœur)
+     * @param handler      Le traitement des requêtes
+     * @param workers       L'exécuteur des traitements de requêtes
+     * @param streamWorkers L'exécuteur des flux des connexions passées en HTTP/2
+     * @throws IOException En cas d'erreur lors de l'ouverture d'un selector
+     */
+    public NioServer(Listener listener, int reactorCount, RequestHandler handler, ExecutorService workers,
+                     ExecutorService streamWorkers) throws IOException {
+        this.handler = handler;
+        this.workers = workers;
+        this.streamWorkers = streamWorkers;
+
+        if (reactorCount <= 0) {
+            reactorCount = Runtime.getRuntime().availableProcessors();
+        }
+        reactors = new Reactor[reactorCount];
+        for (int i = 0; i < reactorCount; i++) {
+            reactors[i] = new Reactor();
+        }
+
+        this.listener = listener;
+        int index = 0;
+        for (ServerSocketChannel serverChannel : listener.getChannels()) {
+            serverChannel.configureBlocking(false);
+            serverChannel.register(reactors[index++ % reactors.length].selector, SelectionKey.OP_ACCEPT);
+        }
+    }
+
+    /**
+     * Démarre les threads reactor.
+     */
+    public void start() {
+        for (int i = 0; i < reactors.length; i++) {
+            new Thread(reactors[i], "myweb-reactor-" + i).start();
+        }
+    }
+
+    /**
+     * Cesse d'accepter de nouvelles connexions ; les connexions ouvertes continuent d'être servies.
+     */
+    public void stopAccepting() {
+        listener.close();
+    }
+
+    /**
+     * Arrête les reactors et ferme toutes les connexions.
+     */
+    public void close() {
+        running = false;
+        for (Reactor reactor : reactors) {
+            reactor.selector.wakeup();
+        }
+    }
+
+    /**
+     * Accepte les connexions en attente sur un socket d'écoute et les répartit entre les reactors.
+     *
+     * @param serverChannel Le socket d'écoute prêt
+     * @throws IOException En cas d'erreur lors de l'acceptation
+     */
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            Listener.configure(channel, HttpServer.getConfig());
+            // Refus éventuel sans bloquer le reactor
+            if (!HttpServer.admit(channel)) {
+                continue;
+            }
+            channel.configureBlocking(false);
+            Reactor reactor = reactors[Math.floorMod(nextReactor.getAndIncrement(), reactors.length)];
+            SocketChannel accepted = channel;
+            reactor.execute(() -> reactor.register(accepted));
+        }
+    }
+
+    /**
+     * Fournit un tampon de lecture, réutilisé si possible.
+     *
+     * @return Un tampon vide
+     */
+    private ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Rend un tampon de lecture au pool.
+     *
+     * @param buffer Le tampon à réutiliser
+     */
+    private void releaseBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        bufferPool.offer(buffer);
+    }
+
+    /**
+     * Un thread reactor : une boucle de sélection et une file de tâches à exécuter dans ce thread.
+     * Toutes les opérations sur les clés de sélection sont effectuées par le reactor propriétaire.
+     */
+    private final class Reactor implements Runnable {
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private volatile Thread thread;
+
+        Reactor() throws IOException {
+            selector = Selector.open();
+        }
+
+        /**
+         * Planifie une tâche dans le thread de ce reactor.
+         *
+         * @param task La tâche à exécuter
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        /**
+         * Enregistre une nouvelle connexion auprès de ce reactor.
+         *
+         * @param channel Le canal de la connexion
+         */
+        void register(SocketChannel channel) {
+            Connection connection = new Connection(channel, this);
+            try {
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                HttpServer.connectionOpened();
+            } catch (IOException e) {
+                Logs.logError("Erreur de connection client : " + e.getMessage());
+                HttpServer.release(connection.address);
+            }
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            long lastIdleCheck = System.currentTimeMillis();
+            while (running) {
+                try {
+                    selector.select(1000);
+                } catch (IOException e) {
+                    Logs.logError("Erreur du selector : " + e.getMessage());
+                    break;
+                }
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        try {
+                            accept((ServerSocketChannel) key.channel());
+                        } catch (IOException e) {
+                            Logs.logError("Erreur de connection serveur : " + e.getMessage());
+                        }
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flushOutput();
+                        }
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastIdleCheck >= 1000) {
+                    lastIdleCheck = now;
+                    closeIdleConnections(now);
+                }
+            }
+
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                Logs.logError("Erreur lors de la fermeture du selector : " + e.getMessage());
+            }
+        }
+
+        /**
+         * Ferme les connexions persistantes inactives depuis plus que le délai configuré.
+         * Le délai est relu à chaque passage pour suivre les rechargements de la configuration.
+         *
+         * @param now L'instant courant en millisecondes
+         */
+        private void closeIdleConnections(long now) {
+            long idleTimeoutMillis = HttpServer.getConfig().getKeepAliveTimeout() * 1000L;
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    Connection connection = (Connection) key.attachment();
+                    if (connection.isIdle() && now - connection.lastActivity > idleTimeoutMillis) {
+                        connection.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * L'état d'une connexion du moteur NIO. Les champs non volatils ne sont manipulés
+     * que par le thread du reactor propriétaire.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private final InetAddress address;  // Adresse du client, conservée pour la libérer après la fermeture
+        private final Reactor reactor;
+        private SelectionKey key;
+        private ByteBuffer input;           // Tampon de lecture, rendu au pool quand la connexion est inactive
+        private final HttpParser parser;    // Analyse des requêtes, qui peut s'étendre sur plusieurs lectures
+        private boolean busy;               // Une requête est en cours de traitement
+        private boolean closeAfterWrite;    // Fermer la connexion une fois la sortie vidée
+        private int requestCount;
+        private long lastActivity = System.currentTimeMillis();
+
+        private final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private long pendingBytes;          // Protégé par le moniteur de la connexion
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Connection(SocketChannel channel, Reactor reactor) {
+            this.channel = channel;
+            this.address = channel.socket().getInetAddress();
+            this.parser = new HttpParser(address);
+            this.reactor = reactor;
+        }
+
+        /**
+         * Lit les données disponibles et traite les requêtes complètes.
+         *
+         * @throws IOException En cas d'erreur de lecture
+         */
+        void onReadable() throws IOException {
+            if (input == null) {
+                input = acquireBuffer();
+            }
+            int read = channel.read(input);
+            if (read < 0) {
+                close();
+                return;
+            }
+            Metrics.bytesReceived(read);
+            lastActivity = System.currentTimeMillis();
+            processInput();
+        }
+
+        /**
+         * Extrait du tampon les requêtes complètes, une à la fois afin que les réponses
+         * aux requêtes pipelinées partent dans l'ordre.
+         */
+        private void processInput() {
+            while (input != null && !busy && !closeAfterWrite && !closed.get()) {
+                input.flip();
+                long start = System.nanoTime();
+                HttpRequest request;
+                try {
+                    request = parser.parse(input);
+                } catch (HttpParser.ParseException e) {
+                    input.compact();
+                    reject(e, start);
+                    break;
+                }
+                // L'analyseur garde les octets d'une requête incomplète : le tampon ne contient plus
+                // que les requêtes pipelinées qui suivent une requête complète
+                input.compact();
+                if (request == null) {
+                    if (parser.takeContinue()) {
+                        sendContinue();
+                    }
+                    break;
+                }
+                dispatch(request, start);
+            }
+
+            if (input != null && input.position() == 0 && !busy) {
+                releaseBuffer(input);
+                input = null;
+            }
+            updateInterest();
+        }
+
+        /**
+         * Répond à une requête mal formée ou trop grande, puis ferme la connexion.
+         *
+         * @param e     L'erreur d'analyse
+         * @param start L'instant de réception (System.nanoTime)
+         */
+        private void reject(HttpParser.ParseException e, long start) {
+            // Logs pour indiquer une requête HTTP invalide ou trop grande
+            Logs.logError("Requête invalide : " + e.getMessage());
+            HttpResponse badRequest = HttpResponse.error(e.getStatusCode(), e.getStatusMessage());
+            Logs.logAccess(parser.getRequestLine(), address.getHostAddress(), e.getStatusCode(), badRequest.getContentLength(), start);
+            Metrics.requestCompleted("invalid", e.getStatusCode(), badRequest.getContentLength(), start);
+            sendImmediate(badRequest);
+        }
+
+        /**
+         * Confie une requête complète à l'exécuteur.
+         *
+         * @param request La requête analysée
+         * @param start   L'instant de réception (System.nanoTime)
+         */
+        private void dispatch(HttpRequest request, long start) {
+            String clientIP = address.getHostAddress();
+            requestCount++;
+
+            boolean preface = Http2Connection.isPreface(request);
+            if (preface || (Http2Connection.isUpgrade(request) && request.getConfig().isHttp2Enabled())) {
+                if (!request.getConfig().isHttp2Enabled()) {
+                    HttpResponse unsupported = HttpResponse.error(505, "HTTP Version Not Supported");
+                    Logs.logAccess(request, 505, unsupported.getContentLength(), start);
+                    Metrics.requestCompleted("invalid", 505, unsupported.getContentLength(), start);
+                    sendImmediate(unsupported);
+                    return;
+                }
+                switchToHttp2(preface ? null : request);
+                return;
+            }
+
+            boolean keepAlive = request.isKeepAlive() && requestCount < request.getConfig().getKeepAliveMax();
+            busy = true;
+            try {
+                workers.execute(() -> handle(request, keepAlive, start));
+            } catch (RejectedExecutionException e) {
+                busy = false;
+                Logs.logError("Serveur saturé, connexion refusée pour l'adresse IP : " + clientIP);
+                HttpResponse overload = HttpResponse.error(503, "Service Unavailable").setHeader("Retry-After", "1");
+                Logs.logAccess(request, 503, overload.getContentLength(), start);
+                Metrics.requestCompleted("overload", 503, overload.getContentLength(), start);
+                sendImmediate(overload);
+            }
+        }
+
+        /**
+         * Passe la connexion en HTTP/2. Elle quitte le reactor : le canal repasse en mode bloquant
+         * et un thread de l'exécuteur en lit les trames, les flux étant traités par l'exécuteur.
+         *
+         * @param upgrade La requête qui a demandé la mise à niveau, ou null après la préface HTTP/2
+         */
+        private void switchToHttp2(HttpRequest upgrade) {
+            busy = true;
+            input.flip();
+            byte[] received = new byte[input.remaining()];
+            input.get(received);
+            releaseBuffer(input);
+            input = null;
+            key.cancel();
+            // Le canal n'est retiré du selector qu'à la sélection suivante, après laquelle la tâche est exécutée
+            reactor.execute(() -> {
+                try {
+                    channel.configureBlocking(true);
+                    ByteBuffer pending;
+                    while ((pending = output.poll()) != null) {
+                        while (pending.hasRemaining()) {
+                            channel.write(pending);
+                        }
+                    }
+                    workers.execute(() -> serveHttp2(received, upgrade));
+                } catch (IOException | RejectedExecutionException e) {
+                    Logs.logError("Passage en HTTP/2 impossible : " + e.getMessage());
+                    close();
+                }
+            });
+        }
+
+        /**
+         * Sert la connexion passée en HTTP/2 jusqu'à sa fermeture. Exécuté par un thread de l'exécuteur.
+         */
+        private void serveHttp2(byte[] received, HttpRequest upgrade) {
+            try {
+                new Http2Connection(channel.socket(), received, handler, streamWorkers).serve(upgrade);
+            } catch (IOException e) {
+                Logs.logError("Erreur de connection client : " + e.getMessage());
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Produit et écrit la réponse à une requête. Exécuté par un thread de l'exécuteur.
+         * Quelle que soit l'issue, le reactor est prévenu de la fin du traitement ; après une erreur,
+         * la réponse a pu partir en partie et la connexion est fermée.
+         *
+         * @param request   La requête à traiter
+         * @param keepAlive true si la connexion reste ouverte après la réponse
+         * @param start     L'instant de réception de la requête (System.nanoTime)
+         */
+        private void handle(HttpRequest request, boolean keepAlive, long start) {
+            boolean sent = false;
+            try {
+                HttpResponse response = handler.handle(request);
+                OutputStream out = new ConnectionOutputStream(this);
+                response.writeTo(out, keepAlive, !request.isHead());
+                out.flush();
+                sent = true;
+                // Logs pour enregistrer la requête HTTP traitée
+                Logs.logAccess(request, response.getStatusCode(), response.getContentLength(), start);
+                Metrics.requestCompleted(response.getRoute(), response.getStatusCode(), response.getContentLength(), start);
+            } catch (IOException e) {
+                Logs.logError("Erreur lors de l'envoi de la réponse : " + e.getMessage());
+            } catch (RuntimeException e) {
+                Logs.logError("Erreur inattendue lors du traitement de " + request.getRequestLine() + " : " + e);
+            } finally {
+                boolean completed = sent;
+                reactor.execute(() -> {
+                    if (completed) {
+                        requestCompleted(keepAlive);
+                    } else {
+                        busy = false;
+                        close();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Termine une requête dans le thread du reactor et passe à la suivante.
+         *
+         * @param keepAlive true si la connexion reste ouverte
+         */
+        private void requestCompleted(boolean keepAlive) {
+            busy = false;
+            if (!keepAlive) {
+                closeAfterWrite = true;
+            }
+            lastActivity = System.currentTimeMillis();
+            try {
+                flushOutput();
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (!closed.get() && input != null) {
+                processInput();
+            } else if (!closed.get()) {
+                updateInterest();
+            }
+        }
+
+        /**
+         * Envoie une réponse produite directement par le reactor puis ferme la connexion.
+         *
+         * @param response La réponse à envoyer
+         */
+        private void sendImmediate(HttpResponse response) {
+            closeAfterWrite = true;
+            try {
+                OutputStream out = new ConnectionOutputStream(this);
+                response.writeTo(out, false);
+                out.flush();
+                flushOutput();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Invite le client à envoyer le corps annoncé par "Expect: 100-continue" ; la connexion reste ouverte.
+         */
+        private void sendContinue() {
+            try {
+                HttpResponse.writeContinue(new ConnectionOutputStream(this));
+                flushOutput();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Ajoute un bloc à la file d'envoi. Suspend le thread appelant tant que trop d'octets
+         * sont en attente, afin qu'un client lent ne fasse pas grossir la mémoire du serveur.
+         *
+         * @param buffer Le bloc à envoyer
+         * @throws IOException Si la connexion est fermée
+         */
+        void enqueue(ByteBuffer buffer) throws IOException {
+            boolean onReactor = Thread.currentThread() == reactor.thread;
+            synchronized (this) {
+                while (!onReactor && pendingBytes > HIGH_WATER_MARK && !closed.get()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Écriture interrompue");
+                    }
+                }
+                if (closed.get()) {
+                    throw new IOException("Connexion fermée par le client");
+                }
+                pendingBytes += buffer.remaining();
+            }
+            output.add(buffer);
+            if (!onReactor && flushScheduled.compareAndSet(false, true)) {
+                reactor.execute(() -> {
+                    try {
+                        flushOutput();
+                    } catch (IOException e) {
+                        close();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Écrit autant de données en attente que le socket l'accepte, sans bloquer.
+         * S'abonne à OP_WRITE s'il en reste.
+         *
+         * @throws IOException En cas d'erreur d'écriture
+         */
+        void flushOutput() throws IOException {
+            flushScheduled.set(false);
+            if (closed.get()) {
+                return;
+            }
+            ByteBuffer buffer;
+            while ((buffer = output.peek()) != null) {
+                int before = buffer.remaining();
+                channel.write(buffer);
+                int written = before - buffer.remaining();
+                if (written > 0) {
+                    synchronized (this) {
+                        pendingBytes -= written;
+                        notifyAll();
+                    }
+                    lastActivity = System.currentTimeMillis();
+                }
+                if (buffer.hasRemaining()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                output.poll();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (closeAfterWrite && !busy) {
+                close();
+            }
+        }
+
+        /**
+         * N'écoute les nouvelles données que si le tampon de lecture peut encore les recevoir.
+         */
+        private void updateInterest() {
+            if (closed.get() || !key.isValid()) {
+                return;
+            }
+            boolean canRead = !closeAfterWrite && (input == null || input.hasRemaining());
+            int ops = key.interestOps();
+            key.interestOps(canRead ? ops | SelectionKey.OP_READ : ops & ~SelectionKey.OP_READ);
+        }
+
+        /**
+         * Indique si la connexion n'a ni requête en cours ni données en attente d'envoi.
+         *
+         * @return true si la connexion est inactive
+         */
+        boolean isIdle() {
+            return !busy && output.isEmpty();
+        }
+
+        /**
+         * Ferme la connexion et réveille un éventuel thread en attente d'écriture.
+         * Seul le premier appel a un effet, même lorsque le reactor et un thread de l'exécuteur ferment ensemble.
+         */
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            synchronized (this) {
+                notifyAll();
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Logs.logError("Erreur lors de la fermeture de la connexion : " + e.getMessage());
+            }
+            if (input != null) {
+                releaseBuffer(input);
+                input = null;
+            }
+            HttpServer.connectionClosed();
+            HttpServer.release(address);
+        }
+    }
+
+    /**
+     * Flux de sortie qui découpe la réponse en blocs et les transmet au reactor de la connexion.
+     * Les fichiers sont transmis sous forme de projections mémoire, hors du tas Java.
+     */
+    private static final class ConnectionOutputStream extends OutputStream implements FileRegionSink {
+
+        private final Connection connection;
+        private byte[] chunk = new byte[CHUNK_SIZE];
+        private int count;
+
+        ConnectionOutputStream(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == chunk.length) {
+                flush();
+            }
+            chunk[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == chunk.length) {
+                    flush();
+                }
+                int n = Math.min(length, chunk.length - count);
+                System.arraycopy(data, offset, chunk, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void transferFile(FileChannel file, long position, long count) throws IOException {
+            flush();
+            while (count > 0) {
+                long size = Math.min(count, MAPPED_REGION_SIZE);
+                connection.enqueue(file.map(FileChannel.MapMode.READ_ONLY, position, size));
+                position += size;
+                count -= size;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                connection.enqueue(ByteBuffer.wrap(chunk, 0, count));
+                chunk = new byte[CHUNK_SIZE];
+                count = 0;
+            }
+        }
+    }
+}
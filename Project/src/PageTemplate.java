@@ -0,0 +1,156 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cette classe représente une page HTML analysée une seule fois : une suite de segments statiques,
+ * déjà encodés en UTF-8, séparés par les emplacements des blocs de code dynamique.
+ * Une page sans bloc de code est servie comme un fichier statique.
+ */
+public class PageTemplate {
+
+    /**
+     * Un bloc de code de la page : {@code <code interpreteur="/bin/bash" cache="30s" timeout="2s">date</code>}.
+     */
+    public static class Slot {
+
+        private final String interpreter;
+        private final String code;
+        private final Map<String, String> attributes;
+
+        Slot(String interpreter, String code, Map<String, String> attributes) {
+            this.interpreter = interpreter;
+            this.code = code;
+            this.attributes = attributes;
+        }
+
+        public String getInterpreter() {
+            return interpreter;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        /**
+         * Retourne un attribut facultatif du bloc (cache, timeout).
+         *
+         * @param name Le nom de l'attribut
+         * @return La valeur de l'attribut, ou null s'il est absent
+         */
+        public String getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        /**
+         * Retourne la clé identifiant le bloc : deux blocs de même clé produisent la même sortie.
+         *
+         * @return L'interpréteur et le code du bloc
+         */
+        public String getKey() {
+            return interpreter + '\u0000' + code;
+        }
+    }
+
+    /**
+     * Bloc de code dynamique d'une page HTML, suivi d'attributs facultatifs (durée de cache, délai d'exécution).
+     */
+    private static final Pattern CODE_BLOCK =
+            Pattern.compile("<code\\s+interpreteur=\"(.*?)\"((?:\\s+\\w+=\"[^\"]*\")*)\\s*>(.*?)</code>");
+
+    /**
+     * Attribut d'un bloc de code.
+     */
+    private static final Pattern ATTRIBUTE = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+
+    private final List<byte[]> segments; // Un segment de plus que de blocs : avant, entre et après les blocs
+    private final List<Slot> slots;
+    private final long size;             // Taille totale des segments statiques
+
+    private PageTemplate(List<byte[]> segments, List<Slot> slots) {
+        this.segments = Collections.unmodifiableList(segments);
+        this.slots = Collections.unmodifiableList(slots);
+        long total = 0;
+        for (byte[] segment : segments) {
+            total += segment.length;
+        }
+        this.size = total;
+    }
+
+    /**
+     * Analyse le contenu d'une page HTML.
+     *
+     * @param data Le contenu de la page
+     * @return Le modèle de la page
+     */
+    public static PageTemplate parse(byte[] data) {
+        String content = new String(data, StandardCharsets.UTF_8);
+        Matcher matcher = CODE_BLOCK.matcher(content);
+        List<byte[]> segments = new ArrayList<>();
+        List<Slot> slots = new ArrayList<>();
+
+        int lastEnd = 0;
+        while (matcher.find()) {
+            segments.add(content.substring(lastEnd, matcher.start()).getBytes(StandardCharsets.UTF_8));
+            slots.add(new Slot(matcher.group(1), matcher.group(3), parseAttributes(matcher.group(2))));
+            lastEnd = matcher.end();
+        }
+        if (slots.isEmpty()) {
+            // Page statique : le contenu d'origine est servi tel quel, les segments ne sont pas utilisés
+            return new PageTemplate(new ArrayList<>(), slots);
+        }
+        segments.add(content.substring(lastEnd).getBytes(StandardCharsets.UTF_8));
+        return new PageTemplate(segments, slots);
+    }
+
+    /**
+     * Analyse les attributs facultatifs d'un bloc de code, par exemple {@code cache="30s" timeout="2s"}.
+     *
+     * @param attributes Les attributs qui suivent l'interpréteur
+     * @return Les valeurs indexées par nom d'attribut
+     */
+    private static Map<String, String> parseAttributes(String attributes) {
+        Map<String, String> values = new HashMap<>();
+        Matcher matcher = ATTRIBUTE.matcher(attributes);
+        while (matcher.find()) {
+            values.put(matcher.group(1), matcher.group(2));
+        }
+        return values;
+    }
+
+    /**
+     * Indique si la page ne contient aucun bloc de code.
+     *
+     * @return true si la page peut être servie comme un fichier statique
+     */
+    public boolean isStatic() {
+        return slots.isEmpty();
+    }
+
+    /**
+     * Retourne les segments statiques : le segment i précède le bloc i, le dernier suit le dernier bloc.
+     *
+     * @return Les segments encodés en UTF-8
+     */
+    public List<byte[]> getSegments() {
+        return segments;
+    }
+
+    public List<Slot> getSlots() {
+        return slots;
+    }
+
+    /**
+     * Retourne la place occupée par le modèle en mémoire.
+     *
+     * @return La taille des segments statiques en octets
+     */
+    public long getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,324 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cette classe traduit le chemin d'une requête en fichier du répertoire racine.
+ * Le chemin est décodé (%XX en UTF-8), débarrassé de sa requête et de son fragment, puis normalisé
+ * ("." et ".." résolus, barres obliques répétées fusionnées) sans jamais pouvoir sortir de la racine,
+ * liens symboliques compris. Le résultat, y compris l'absence de fichier, est gardé dans un cache
+ * borné pendant une courte durée : une rafale de requêtes vers des chemins inexistants
+ * ne consulte le disque qu'une fois par chemin et par durée de vie.
+ */
+public class PathResolver {
+
+    /**
+     * Le résultat de la résolution d'un chemin.
+     */
+    public static final class Resolution {
+
+        private final int status;
+        private final Path file;
+        private final String root;
+        private final long expires;
+
+        private Resolution(int status, Path file, String root, long expires) {
+            this.status = status;
+            this.file = file;
+            this.root = root;
+            this.expires = expires;
+        }
+
+        /**
+         * Retourne le code d'état correspondant au chemin.
+         *
+         * @return 200 si le chemin désigne un fichier, 404 s'il n'existe pas, est un répertoire ou sort de la racine,
+         * 400 s'il est mal encodé
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Retourne le fichier désigné par le chemin.
+         *
+         * @return Le chemin réel du fichier, ou null si le code d'état n'est pas 200
+         */
+        public Path getFile() {
+            return file;
+        }
+    }
+
+    /**
+     * Un répertoire racine et son chemin réel, publiés ensemble.
+     */
+    private static final class Root {
+
+        private final String directory;
+        private final Path path;    // null si la racine n'existe pas
+
+        Root(String directory, Path path) {
+            this.directory = directory;
+            this.path = path;
+        }
+    }
+
+    private static final Resolution BAD_REQUEST = new Resolution(400, null, null, 0);
+
+    private volatile int maxEntries;
+    private volatile long ttlNanos;
+    private final ConcurrentHashMap<String, Resolution> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private volatile Root root;             // Dernière racine résolue
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructeur de la classe PathResolver.
+     *
+     * @param maxEntries Le nombre maximal de chemins gardés en cache
+     * @param ttlMillis  La durée de vie d'une résolution en cache, en millisecondes
+     */
+    public PathResolver(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * Résout le chemin d'une requête dans un répertoire racine, depuis le cache si possible.
+     *
+     * @param rootDirectory Le répertoire racine du site
+     * @param target        Le chemin demandé, tel que reçu (encodé)
+     * @return La résolution du chemin
+     */
+    public Resolution resolve(String rootDirectory, String target) {
+        long now = System.nanoTime();
+        Resolution cached = entries.get(target);
+        if (cached != null && now - cached.expires < 0 && cached.root.equals(rootDirectory)) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        String relative = normalize(target);
+        if (relative == null) {
+            return BAD_REQUEST;
+        }
+        Resolution resolution = new Resolution(404, null, rootDirectory, now + ttlNanos);
+        Path file = locate(rootDirectory, relative);
+        if (file != null) {
+            resolution = new Resolution(200, file, rootDirectory, now + ttlNanos);
+        }
+        if (maxEntries > 0 && ttlNanos > 0) {
+            entries.put(target, resolution);
+            if (entries.size() > maxEntries) {
+                sweep(now);
+            }
+        }
+        return resolution;
+    }
+
+    /**
+     * Oublie la résolution d'un chemin, par exemple lorsque le fichier a disparu avant sa lecture.
+     *
+     * @param target Le chemin demandé, tel que reçu (encodé)
+     */
+    public void invalidate(String target) {
+        entries.remove(target);
+    }
+
+    /**
+     * Décode et normalise un chemin demandé.
+     *
+     * @param target Le chemin demandé, tel que reçu
+     * @return Le chemin relatif à la racine, segments séparés par "/", ou null si le chemin est mal encodé,
+     * contient un caractère interdit ou remonte au-dessus de la racine
+     */
+    static String normalize(String target) {
+        int end = target.length();
+        for (int i = 0; i < target.length(); i++) {
+            char c = target.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        String decoded = decode(target, end);
+        if (decoded == null) {
+            return null;
+        }
+
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : decoded.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                if (segments.pollLast() == null) {
+                    return null;
+                }
+                continue;
+            }
+            segments.addLast(segment);
+        }
+        return String.join("/", segments);
+    }
+
+    /**
+     * Décode les séquences %XX d'un chemin en UTF-8.
+     *
+     * @param target Le chemin encodé
+     * @param end    La fin de la partie chemin (avant la requête)
+     * @return Le chemin décodé, ou null si une séquence est invalide ou si le chemin contient
+     * un octet nul, un caractère de contrôle ou une barre oblique inverse
+     */
+    private static String decode(String target, int end) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(end);
+        for (int i = 0; i < end; i++) {
+            char c = target.charAt(i);
+            int b = c;
+            if (c == '%') {
+                if (i + 2 >= end) {
+                    return null;
+                }
+                int high = Character.digit(target.charAt(i + 1), 16);
+                int low = Character.digit(target.charAt(i + 2), 16);
+                if (high < 0 || low < 0) {
+                    return null;
+                }
+                b = high << 4 | low;
+                i += 2;
+            } else if (c > 0xff) {
+                return null;
+            }
+            // Les séparateurs Windows et les caractères de contrôle n'ont rien à faire dans un nom de fichier servi
+            if (b < 0x20 || b == 0x7f || b == '\\') {
+                return null;
+            }
+            bytes.write(b);
+        }
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes.toByteArray())).toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Cherche le fichier désigné par un chemin normalisé et vérifie, liens symboliques résolus,
+     * qu'il se trouve sous la racine.
+     *
+     * @param rootDirectory Le répertoire racine du site
+     * @param relative      Le chemin normalisé, relatif à la racine
+     * @return Le chemin réel du fichier, ou null s'il n'existe pas, n'est pas un fichier ou sort de la racine
+     */
+    private Path locate(String rootDirectory, String relative) {
+        Path root = realRoot(rootDirectory);
+        if (root == null || relative.isEmpty()) {
+            return null;
+        }
+        try {
+            Path file = root.resolve(relative).toRealPath();
+            if (!file.startsWith(root) || !Files.readAttributes(file, BasicFileAttributes.class).isRegularFile()) {
+                return null;
+            }
+            return file;
+        } catch (IOException | InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Retourne le chemin réel du répertoire racine, calculé une fois par racine.
+     *
+     * @param rootDirectory Le répertoire racine du site
+     * @return Le chemin réel, ou null si la racine n'existe pas
+     */
+    private Path realRoot(String rootDirectory) {
+        Root known = root;
+        if (known != null && known.directory.equals(rootDirectory)) {
+            return known.path;
+        }
+        Path path;
+        try {
+            path = Paths.get(rootDirectory).toRealPath();
+        } catch (IOException | InvalidPathException e) {
+            Logs.logError("Répertoire racine introuvable : " + rootDirectory);
+            path = null;
+        }
+        root = new Root(rootDirectory, path);
+        return path;
+    }
+
+    /**
+     * Retire les entrées expirées, puis d'autres entrées jusqu'à revenir nettement sous la limite.
+     * Un seul appelant effectue le balayage à la fois ; les autres continuent sans attendre.
+     */
+    private void sweep(long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            entries.values().removeIf(entry -> now - entry.expires >= 0);
+            int target = maxEntries - maxEntries / 8;
+            Iterator<Resolution> iterator = entries.values().iterator();
+            while (entries.size() > target && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * Modifie la taille et la durée de vie du cache, par exemple après un rechargement de la configuration.
+     *
+     * @param maxEntries Le nombre maximal de chemins gardés en cache
+     * @param ttlMillis  La durée de vie d'une résolution en cache, en millisecondes
+     */
+    public void setLimits(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        clear();
+    }
+
+    /**
+     * Vide le cache et oublie le chemin réel de la racine.
+     */
+    public void clear() {
+        root = null;
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int getEntryCount() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,348 @@
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cette classe limite ce qu'un même client (adresse IP) peut demander au serveur :
+ * le nombre de connexions simultanées, vérifié dès l'acceptation, et le débit de requêtes,
+ * régulé par un seau à jetons global et, pour certains préfixes de chemin, par un seau propre au préfixe.
+ * L'état de chaque client est conservé dans une table concurrente ; les clients sans connexion
+ * et inactifs depuis le délai configuré en sont retirés au fil des appels, sans thread dédié.
+ * Les limites peuvent être remplacées pendant que le serveur tourne : les connexions déjà comptées le restent,
+ * et les seaux de chaque client sont recréés, pleins, à sa requête suivante.
+ */
+public class RateLimiter {
+
+    /**
+     * Limite de débit propre aux chemins commençant par un préfixe donné.
+     */
+    public static class PathLimit {
+
+        private final String prefix;
+        private final double rate;
+        private final int burst;
+
+        /**
+         * Constructeur de la classe PathLimit.
+         *
+         * @param prefix Le préfixe des chemins concernés
+         * @param rate   Le nombre de requêtes autorisées par seconde
+         * @param burst  Le nombre de requêtes autorisées en rafale
+         */
+        public PathLimit(String prefix, double rate, int burst) {
+            this.prefix = prefix;
+            this.rate = rate;
+            this.burst = burst;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof PathLimit)) {
+                return false;
+            }
+            PathLimit limit = (PathLimit) other;
+            return prefix.equals(limit.prefix) && rate == limit.rate && burst == limit.burst;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(prefix, rate, burst);
+        }
+    }
+
+    /**
+     * Seau à jetons : il se remplit de {@code rate} jetons par seconde jusqu'à {@code capacity},
+     * et chaque requête en consomme un.
+     */
+    private static final class TokenBucket {
+
+        private final double rate;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double rate, double capacity, long now) {
+            this.rate = rate;
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        /**
+         * Prend un jeton s'il y en a un.
+         *
+         * @return 0 si un jeton a été pris, sinon le délai en nanosecondes avant qu'un jeton soit disponible
+         */
+        synchronized long take(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / 1e9);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / rate * 1e9));
+        }
+    }
+
+    /**
+     * Les limites en vigueur, remplacées ensemble.
+     */
+    private static final class Limits {
+
+        private final double rate;
+        private final int burst;
+        private final int maxConnections;
+        private final long idleNanos;
+        private final List<PathLimit> pathLimits;   // Du préfixe le plus long au plus court
+
+        Limits(double rate, int burst, int maxConnections, long idleMillis, List<PathLimit> pathLimits) {
+            this.rate = rate;
+            this.burst = Math.max(1, burst);
+            this.maxConnections = maxConnections;
+            this.idleNanos = Math.max(1, idleMillis) * 1_000_000L;
+            this.pathLimits = new ArrayList<>(pathLimits);
+            this.pathLimits.sort(Comparator.comparingInt((PathLimit limit) -> limit.prefix.length()).reversed());
+        }
+    }
+
+    /**
+     * Les seaux d'un client, créés pour un jeu de limites.
+     */
+    private static final class Buckets {
+
+        private final Limits limits;
+        private volatile TokenBucket global;
+        private final AtomicReferenceArray<TokenBucket> paths;
+
+        Buckets(Limits limits) {
+            this.limits = limits;
+            this.paths = new AtomicReferenceArray<>(limits.pathLimits.size());
+        }
+    }
+
+    /**
+     * État d'un client. Le nombre de connexions n'est modifié qu'à l'intérieur d'un calcul de la table,
+     * ce qui garantit qu'un client n'est jamais retiré pendant qu'il a une connexion ouverte.
+     * Les connexions sont comptées même sans limite, pour que le compte reste juste si une limite est ajoutée.
+     */
+    private static final class Client {
+
+        private int connections;
+        private volatile long lastSeen;
+        private volatile Buckets buckets;
+
+        Client(long now) {
+            this.lastSeen = now;
+        }
+
+        /**
+         * Retourne les seaux du client pour les limites données, recréés si les limites ont changé.
+         */
+        Buckets buckets(Limits limits) {
+            Buckets current = buckets;
+            if (current == null || current.limits != limits) {
+                synchronized (this) {
+                    current = buckets;
+                    if (current == null || current.limits != limits) {
+                        current = new Buckets(limits);
+                        buckets = current;
+                    }
+                }
+            }
+            return current;
+        }
+    }
+
+    private volatile Limits limits;
+
+    private final ConcurrentHashMap<InetAddress, Client> clients = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep;
+    private final LongAdder limitedRequests = new LongAdder();
+    private final LongAdder refusedConnections = new LongAdder();
+
+    /**
+     * Constructeur de la classe RateLimiter.
+     *
+     * @param rate           Le nombre de requêtes par seconde autorisées par client (0 : pas de limite)
+     * @param burst          Le nombre de requêtes autorisées en rafale par client
+     * @param maxConnections Le nombre de connexions simultanées autorisées par client (0 : pas de limite)
+     * @param idleMillis     Le délai d'inactivité après lequel l'état d'un client est oublié, en millisecondes
+     * @param pathLimits     Les limites propres à des préfixes de chemin
+     */
+    public RateLimiter(double rate, int burst, int maxConnections, long idleMillis, List<PathLimit> pathLimits) {
+        this.limits = new Limits(rate, burst, maxConnections, idleMillis, pathLimits);
+        this.nextSweep = new AtomicLong(System.nanoTime() + limits.idleNanos);
+    }
+
+    /**
+     * Remplace les limites, par exemple après un rechargement de la configuration.
+     * Les connexions ouvertes restent comptées ; au-delà d'une limite abaissée, seules les nouvelles sont refusées.
+     *
+     * @param rate           Le nombre de requêtes par seconde autorisées par client (0 : pas de limite)
+     * @param burst          Le nombre de requêtes autorisées en rafale par client
+     * @param maxConnections Le nombre de connexions simultanées autorisées par client (0 : pas de limite)
+     * @param idleMillis     Le délai d'inactivité après lequel l'état d'un client est oublié, en millisecondes
+     * @param pathLimits     Les limites propres à des préfixes de chemin
+     */
+    public void setLimits(double rate, int burst, int maxConnections, long idleMillis, List<PathLimit> pathLimits) {
+        limits = new Limits(rate, burst, maxConnections, idleMillis, pathLimits);
+    }
+
+    /**
+     * Enregistre l'ouverture d'une connexion, si le client n'a pas atteint son nombre maximal de connexions.
+     *
+     * @param address L'adresse du client
+     * @return true si la connexion est acceptée, false si elle doit être refusée
+     */
+    public boolean openConnection(InetAddress address) {
+        Limits current = limits;
+        long now = System.nanoTime();
+        sweep(now, current);
+        boolean[] opened = new boolean[1];
+        clients.compute(address, (key, client) -> {
+            if (client == null) {
+                client = new Client(now);
+            }
+            if (current.maxConnections <= 0 || client.connections < current.maxConnections) {
+                client.connections++;
+                client.lastSeen = now;
+                opened[0] = true;
+            }
+            return client;
+        });
+        if (!opened[0]) {
+            refusedConnections.increment();
+        }
+        return opened[0];
+    }
+
+    /**
+     * Enregistre la fermeture d'une connexion acceptée par {@link #openConnection(InetAddress)}.
+     *
+     * @param address L'adresse du client
+     */
+    public void connectionClosed(InetAddress address) {
+        clients.computeIfPresent(address, (key, client) -> {
+            client.connections = Math.max(0, client.connections - 1);
+            client.lastSeen = System.nanoTime();
+            return client;
+        });
+    }
+
+    /**
+     * Consomme un jeton pour une requête du client, dans le seau global et dans celui du préfixe du chemin.
+     * Les préfixes sont comparés au chemin décodé et normalisé par {@link PathResolver#normalize(String)},
+     * celui du fichier réellement servi : "/a/../aaaa.html" ou "/%61aaa.html" n'échappent pas à la limite de "/aaaa.html".
+     *
+     * @param address L'adresse du client
+     * @param path    Le chemin demandé, tel que reçu
+     * @return 0 si la requête est autorisée, sinon le nombre de secondes à attendre avant de réessayer
+     */
+    public long acquire(InetAddress address, String path) {
+        Limits current = limits;
+        PathLimit pathLimit = null;
+        int pathIndex = -1;
+        String normalized = "";
+        if (!current.pathLimits.isEmpty()) {
+            String relative = PathResolver.normalize(path);
+            // Un chemin mal encodé sera refusé (400) : seule la limite globale s'applique
+            normalized = relative != null ? "/" + relative : "";
+        }
+        for (int i = 0; i < current.pathLimits.size(); i++) {
+            if (normalized.startsWith(current.pathLimits.get(i).prefix)) {
+                pathLimit = current.pathLimits.get(i);
+                pathIndex = i;
+                break;
+            }
+        }
+        if (current.rate <= 0 && pathLimit == null) {
+            return 0;
+        }
+
+        long now = System.nanoTime();
+        sweep(now, current);
+        // Si le client est retiré entre-temps, il était inactif depuis longtemps : ses seaux étaient pleins
+        Client client = clients.computeIfAbsent(address, key -> new Client(now));
+        client.lastSeen = now;
+        Buckets buckets = client.buckets(current);
+
+        long wait = 0;
+        if (pathLimit != null) {
+            TokenBucket bucket = buckets.paths.get(pathIndex);
+            if (bucket == null) {
+                buckets.paths.compareAndSet(pathIndex, null, new TokenBucket(pathLimit.rate, Math.max(1, pathLimit.burst), now));
+                bucket = buckets.paths.get(pathIndex);
+            }
+            wait = bucket.take(now);
+        }
+        if (wait == 0 && current.rate > 0) {
+            TokenBucket bucket = buckets.global;
+            if (bucket == null) {
+                synchronized (buckets) {
+                    if (buckets.global == null) {
+                        buckets.global = new TokenBucket(current.rate, current.burst, now);
+                    }
+                    bucket = buckets.global;
+                }
+            }
+            wait = bucket.take(now);
+        }
+        if (wait == 0) {
+            return 0;
+        }
+        limitedRequests.increment();
+        return Math.max(1, (wait + 999_999_999L) / 1_000_000_000L);
+    }
+
+    /**
+     * Retire de la table les clients sans connexion ouverte et inactifs depuis le délai configuré.
+     * Un seul appelant effectue le balayage, au plus une fois par demi-délai.
+     */
+    private void sweep(long now, Limits current) {
+        long scheduled = nextSweep.get();
+        if (now - scheduled < 0 || !nextSweep.compareAndSet(scheduled, now + current.idleNanos / 2)) {
+            return;
+        }
+        for (InetAddress address : clients.keySet()) {
+            clients.computeIfPresent(address, (key, client) ->
+                    client.connections == 0 && now - client.lastSeen > current.idleNanos ? null : client);
+        }
+    }
+
+    /**
+     * Retourne le nombre de requêtes refusées (429) depuis le démarrage.
+     *
+     * @return Le nombre de requêtes refusées
+     */
+    public long getLimitedRequests() {
+        return limitedRequests.sum();
+    }
+
+    /**
+     * Retourne le nombre de connexions refusées parce que le client avait atteint sa limite.
+     *
+     * @return Le nombre de connexions refusées
+     */
+    public long getRefusedConnections() {
+        return refusedConnections.sum();
+    }
+
+    /**
+     * Retourne le nombre de clients dont l'état est conservé.
+     *
+     * @return Le nombre de clients suivis
+     */
+    public int getTrackedClients() {
+        return clients.size();
+    }
+}
@@ -0,0 +1,17 @@
+import java.io.IOException;
+
+/**
+ * Interface commune du traitement des requêtes, appelée par le moteur bloquant (ClientHandler)
+ * comme par le moteur NIO (NioServer).
+ */
+public interface RequestHandler {
+
+    /**
+     * Produit la réponse à une requête HTTP.
+     *
+     * @param request La requête reçue
+     * @return La réponse à renvoyer au client
+     * @throws IOException En cas d'erreur d'entrée/sortie lors de la production de la réponse
+     */
+    HttpResponse handle(HttpRequest request) throws IOException;
+}
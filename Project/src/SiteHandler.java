@@ -0,0 +1,753 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cette classe implémente le routage des requêtes du site : la page /status,
+ * les fichiers du répertoire racine et la réponse 404.
+ */
+public class SiteHandler implements RequestHandler {
+
+    /**
+     * Nombre maximal de plages acceptées dans un en-tête Range ; au-delà, le fichier entier est renvoyé.
+     */
+    private static final int MAX_RANGES = 16;
+
+    /**
+     * Le cache du contenu des fichiers servis.
+     */
+    private final FileCache fileCache;
+
+    /**
+     * La résolution des chemins demandés en fichiers du répertoire racine.
+     */
+    private final PathResolver pathResolver;
+
+    /**
+     * Constructeur de la classe SiteHandler.
+     *
+     * @param fileCache    Le cache du contenu des fichiers
+     * @param pathResolver La résolution des chemins demandés
+     */
+    public SiteHandler(FileCache fileCache, PathResolver pathResolver) {
+        this.fileCache = fileCache;
+        this.pathResolver = pathResolver;
+    }
+
+    /**
+     * Méthode qui route une requête vers la page de statut, un fichier du site ou une erreur 404.
+     *
+     * @param request La requête reçue
+     * @return La réponse à renvoyer au client
+     * @throws IOException En cas d'erreur d'entrée/sortie lors de la lecture d'un fichier
+     */
+    @Override
+    public HttpResponse handle(HttpRequest request) throws IOException {
+        String filePath = request.getPath();
+        long retryAfter = HttpServer.getRateLimiter().acquire(request.getClientAddress(), filePath);
+        if (retryAfter > 0) {
+            return HttpResponse.error(429, "Too Many Requests")
+                    .setHeader("Retry-After", String.valueOf(retryAfter)).setRoute("limited");
+        }
+        if (filePath.equals("/status")) {
+            return statusResponse().setRoute("status");
+        }
+        if (filePath.equals("/metrics")) {
+            return metricsResponse(request).setRoute("metrics");
+        }
+        if (filePath.equals("/reload") && request.getMethod().equals("POST") && !request.getConfig().getReloadToken().isEmpty()) {
+            return reloadResponse(request).setRoute("admin");
+        }
+
+        if (filePath.equals("/")) {
+            filePath = "/index.html";
+        }
+
+        ConfigLoader config = request.getConfig();
+        PathResolver.Resolution resolution = pathResolver.resolve(config.getRootDirectory(), filePath);
+        if (resolution.getStatus() == 400) {
+            return HttpResponse.error(400, "Bad Request").setRoute("bad_request");
+        }
+        if (resolution.getStatus() == 200) {
+            try {
+                return fileResponse(request, resolution.getFile().toFile());
+            } catch (NoSuchFileException e) {
+                // Fichier supprimé depuis sa résolution : la résolution en cache est périmée
+                pathResolver.invalidate(filePath);
+            }
+        }
+        // Logs pour indiquer qu'un fichier demandé n'a pas été trouvé (détaillés dans la limite configurée)
+        Logs.logNotFound(filePath, config.getNotFoundLogLimit(), config.getNotFoundLogInterval());
+        return HttpResponse.error(404, "Not Found").setRoute("not_found");
+    }
+
+    /**
+     * Méthode qui construit la réponse contenant un fichier.
+     * Les fichiers sont servis tels quels avec leur type MIME, sauf les pages HTML contenant des sections
+     * de code dynamique et la prévisualisation des images, vidéos et sons demandée par "?preview".
+     *
+     * @param request La requête reçue
+     * @param file    Le fichier à envoyer en réponse
+     * @return La réponse contenant le fichier
+     * @throws IOException En cas d'erreur d'entrée/sortie lors de la lecture du fichier
+     */
+    private HttpResponse fileResponse(HttpRequest request, File file) throws IOException {
+        FileCache.Entry entry = fileCache.get(file.toPath());
+        String mimeType = entry.getMimeType();
+
+        if (isMedia(mimeType) && request.hasQueryParameter("preview")) {
+            return previewResponse(request, file, entry).setRoute("preview");
+        }
+        if (!mimeType.equals("text/html")) {
+            // Code pour les autres types de fichiers (non modifiables), y compris les images, vidéos et sons
+            return staticResponse(request, file, entry).setRoute("static");
+        }
+
+        PageTemplate template = fileCache.template(file.toPath(), entry);
+        if (template.isStatic()) {
+            // Page sans code : servie comme un fichier statique (validateurs, plages, compression en cache)
+            return staticResponse(request, file, entry).setRoute("static");
+        }
+        if (!request.getVersion().equals("HTTP/1.0")) {
+            // Envoi par morceaux en HTTP/1.1, en trames DATA successives en HTTP/2
+            return streamedPage(request, template).setRoute("dynamic");
+        }
+        // Les clients HTTP/1.0 ne comprennent pas l'envoi par morceaux : la page est assemblée avant l'envoi
+        return compressDynamic(request, executeCodeBlocks(request.getConfig(), template)).setRoute("dynamic");
+    }
+
+    /**
+     * Méthode qui construit une page HTML de prévisualisation d'une image, d'une vidéo ou d'un son (?preview).
+     * Le fichier est intégré en base64 s'il ne dépasse pas la taille configurée, sinon la page
+     * y fait référence par son URL. La page est construite une fois puis gardée avec l'entrée du cache.
+     *
+     * @param request La requête reçue
+     * @param file    Le fichier à prévisualiser
+     * @param entry   L'entrée du cache correspondant au fichier
+     * @return La réponse contenant la page de prévisualisation
+     * @throws IOException En cas d'erreur lors de la lecture du fichier
+     */
+    private HttpResponse previewResponse(HttpRequest request, File file, FileCache.Entry entry) throws IOException {
+        ConfigLoader config = request.getConfig();
+        if (!config.isMediaPreviewEnabled()) {
+            return staticResponse(request, file, entry);
+        }
+        byte[] page = fileCache.preview(file.toPath(), entry, () -> {
+            String mimeType = entry.getMimeType();
+            String source;
+            if (entry.getSize() <= config.getMediaPreviewMaxSize()) {
+                byte[] fileData = entry.getData() != null ? entry.getData() : Files.readAllBytes(file.toPath());
+                // Encodage en base64 pour les images, vidéos et sons
+                source = "data:" + mimeType + ";base64," + Base64.getEncoder().encodeToString(fileData);
+            } else {
+                // Fichier trop volumineux pour être intégré : la page le charge depuis le serveur
+                source = request.getPath().replace("\"", "%22");
+            }
+
+            String htmlResponse = "<html><body>";
+            if (mimeType.startsWith("image/")) {
+                htmlResponse += "<img src=\"" + source + "\" />";
+            } else if (mimeType.startsWith("video/")) {
+                htmlResponse += "<video controls><source src=\"" + source + "\" type=\"" + mimeType + "\"></video>";
+            } else if (mimeType.startsWith("audio/")) {
+                htmlResponse += "<audio controls><source src=\"" + source + "\" type=\"" + mimeType + "\"></audio>";
+            }
+            htmlResponse += "</body></html>";
+            return htmlResponse.getBytes(StandardCharsets.UTF_8);
+        });
+        return new HttpResponse(200, "OK", "text/html", page);
+    }
+
+    /**
+     * Lance en parallèle l'exécution des blocs de code distincts d'une page ;
+     * les blocs identiques ne sont exécutés qu'une fois.
+     *
+     * @param config       La configuration de la requête
+     * @param template     Le modèle de la page
+     * @param pageDeadline L'échéance de l'ensemble des blocs (System.nanoTime)
+     * @return Les sorties des blocs, indexées par la clé des blocs
+     */
+    private Map<String, DynamicCodeExecutor.Output> startCodeBlocks(ConfigLoader config, PageTemplate template, long pageDeadline) {
+        long now = System.nanoTime();
+        long defaultTtl = config.getDynamicCacheTtl();
+        long defaultTimeout = config.getDynamicTimeout();
+
+        Map<String, DynamicCodeExecutor.Output> outputs = new HashMap<>();
+        for (PageTemplate.Slot slot : template.getSlots()) {
+            if (outputs.containsKey(slot.getKey())) {
+                continue;
+            }
+            String cache = slot.getAttribute("cache");
+            String timeout = slot.getAttribute("timeout");
+            long ttl = cache != null ? ConfigLoader.parseDuration(cache) : defaultTtl;
+            long deadline = Math.min(pageDeadline,
+                    now + TimeUnit.MILLISECONDS.toNanos(timeout != null ? ConfigLoader.parseDuration(timeout) : defaultTimeout));
+            outputs.put(slot.getKey(), DynamicCodeExecutor.submit(slot.getInterpreter(), slot.getCode(), ttl, deadline));
+        }
+        return outputs;
+    }
+
+    /**
+     * Retourne l'échéance de l'ensemble des blocs d'une page qui commence maintenant.
+     *
+     * @param config La configuration de la requête
+     * @return L'échéance (System.nanoTime)
+     */
+    private long pageDeadline(ConfigLoader config) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getDynamicPageTimeout());
+    }
+
+    /**
+     * Exécute les blocs de code d'une page et les intercale entre ses segments statiques.
+     * Un bloc en erreur ou qui dépasse son délai, ou le délai de la page, est remplacé par un commentaire HTML.
+     *
+     * @param config   La configuration de la requête
+     * @param template Le modèle de la page
+     * @return Les parties de la page, dans l'ordre
+     */
+    private List<byte[]> executeCodeBlocks(ConfigLoader config, PageTemplate template) {
+        long pageDeadline = pageDeadline(config);
+        Map<String, DynamicCodeExecutor.Output> outputs = startCodeBlocks(config, template, pageDeadline);
+
+        List<byte[]> segments = template.getSegments();
+        List<PageTemplate.Slot> slots = template.getSlots();
+        List<byte[]> parts = new ArrayList<>(segments.size() + slots.size());
+        for (int i = 0; i < slots.size(); i++) {
+            PageTemplate.Slot slot = slots.get(i);
+            String output;
+            try {
+                output = outputs.get(slot.getKey()).get(pageDeadline);
+            } catch (IOException e) {
+                output = blockError(slot, e);
+            }
+            parts.add(segments.get(i)); // Ajoute le contenu avant la balise <code>
+            parts.add(output.getBytes(StandardCharsets.UTF_8)); // Ajoute le résultat de l'exécution du code
+        }
+        parts.add(segments.get(slots.size())); // Ajoute le reste du contenu après la dernière balise <code>
+        return parts;
+    }
+
+    /**
+     * Méthode qui construit la réponse d'une page générée envoyée au fil de l'eau :
+     * chaque segment statique part dès qu'il précède un bloc dont la sortie n'est pas prête,
+     * et la sortie de chaque bloc est transmise pendant son exécution. Le délai avant le premier octet
+     * ne dépend donc plus de la durée des blocs, et la mémoire utilisée n'augmente pas avec la taille de la page.
+     * Pour une requête HEAD, seul l'en-tête est envoyé : les blocs de code ne sont pas exécutés.
+     *
+     * @param request  La requête reçue
+     * @param template Le modèle de la page
+     * @return La réponse, dont le corps est produit pendant l'envoi
+     */
+    private HttpResponse streamedPage(HttpRequest request, PageTemplate template) {
+        ConfigLoader config = request.getConfig();
+        // La taille de la page n'est pas connue : le seuil porte sur ses segments statiques
+        boolean gzip = config.isCompressionEnabled() && template.getSize() >= config.getCompressionMinSize()
+                && acceptedEncodings(request.getHeader("accept-encoding", "")).contains("gzip");
+        if (request.isHead()) {
+            // Le corps ne sera pas envoyé : l'en-tête est celui d'un GET, sans lancer d'interpréteur
+            HttpResponse head = HttpResponse.streamed(200, "OK", "text/html", body -> {
+            }).setHeader("Vary", "Accept-Encoding");
+            return gzip ? head.setHeader("Content-Encoding", "gzip") : head;
+        }
+        long pageDeadline = pageDeadline(config);
+        Map<String, DynamicCodeExecutor.Output> outputs = startCodeBlocks(config, template, pageDeadline);
+        int level = config.getCompressionLevel();
+
+        HttpResponse response = HttpResponse.streamed(200, "OK", "text/html", body -> {
+            OutputStream out = body;
+            if (gzip) {
+                // Compression avec vidage synchronisé : chaque flush() envoie tout ce qui a été compressé
+                out = new GZIPOutputStream(body, 8192, true) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+            }
+            List<byte[]> segments = template.getSegments();
+            List<PageTemplate.Slot> slots = template.getSlots();
+            for (int i = 0; i < slots.size(); i++) {
+                out.write(segments.get(i)); // Ajoute le contenu avant la balise <code>
+                writeBlockOutput(out, slots.get(i), outputs.get(slots.get(i).getKey()), pageDeadline);
+            }
+            out.write(segments.get(slots.size())); // Ajoute le reste du contenu après la dernière balise <code>
+            if (gzip) {
+                ((GZIPOutputStream) out).finish();
+            }
+        }).setHeader("Vary", "Accept-Encoding");
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        return response;
+    }
+
+    /**
+     * Écrit la sortie d'un bloc au fur et à mesure qu'elle est produite. Ce qui a déjà été écrit
+     * est envoyé au client avant chaque attente.
+     *
+     * @param out      Le flux du corps de la réponse
+     * @param slot     Le bloc de code
+     * @param output   La sortie du bloc
+     * @param deadline L'échéance de la page (System.nanoTime)
+     * @throws IOException En cas d'erreur d'écriture vers le client
+     */
+    private void writeBlockOutput(OutputStream out, PageTemplate.Slot slot, DynamicCodeExecutor.Output output,
+                                  long deadline) throws IOException {
+        for (int index = 0; ; index++) {
+            if (!output.isAvailable(index)) {
+                out.flush();
+            }
+            String chunk;
+            try {
+                chunk = output.next(index, deadline);
+            } catch (IOException e) {
+                out.write(blockError(slot, e).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            if (chunk == null) {
+                return;
+            }
+            out.write(chunk.getBytes(StandardCharsets.UTF_8)); // Ajoute le résultat de l'exécution du code
+        }
+    }
+
+    /**
+     * Journalise l'échec d'un bloc de code et retourne le commentaire HTML qui le remplace.
+     *
+     * @param slot Le bloc de code
+     * @param e    L'erreur d'exécution ou de délai dépassé
+     * @return Le commentaire HTML
+     */
+    private String blockError(PageTemplate.Slot slot, IOException e) {
+        // Logs pour indiquer l'échec d'un bloc de code
+        Logs.logError("Erreur lors de l'exécution du code (" + slot.getInterpreter() + ") : " + e.getMessage());
+        return "<!-- " + String.valueOf(e.getMessage()).replace("--", "- -") + " -->";
+    }
+
+    /**
+     * Méthode qui construit la réponse d'une page générée, compressée en gzip si le client l'accepte.
+     * Le résultat dépend de chaque exécution : il est compressé à chaque requête et n'est pas mis en cache.
+     * Sans compression, les segments statiques du modèle sont envoyés sans être recopiés.
+     *
+     * @param request La requête reçue
+     * @param parts   Les parties de la page générée
+     * @return La réponse contenant la page
+     * @throws IOException En cas d'erreur de compression
+     */
+    private HttpResponse compressDynamic(HttpRequest request, List<byte[]> parts) throws IOException {
+        ConfigLoader config = request.getConfig();
+        long length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        if (!config.isCompressionEnabled() || length < config.getCompressionMinSize()
+                || !acceptedEncodings(request.getHeader("accept-encoding", "")).contains("gzip")) {
+            HttpResponse response = new HttpResponse(200, "OK", "text/html", new byte[0]).setHeader("Vary", "Accept-Encoding");
+            for (byte[] part : parts) {
+                response.appendBody(part);
+            }
+            return response;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) (length / 3));
+        int level = config.getCompressionLevel();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(buffer) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            for (byte[] part : parts) {
+                gzip.write(part);
+            }
+        }
+        return new HttpResponse(200, "OK", "text/html", buffer.toByteArray())
+                .setHeader("Content-Encoding", "gzip")
+                .setHeader("Vary", "Accept-Encoding");
+    }
+
+    /**
+     * Méthode qui construit la réponse d'un fichier servi tel quel, en tenant compte
+     * des requêtes conditionnelles (If-None-Match, If-Modified-Since) et partielles (Range, If-Range).
+     *
+     * @param request La requête reçue
+     * @param file    Le fichier demandé
+     * @param entry   L'entrée du cache correspondant au fichier
+     * @return Une réponse 200, 206, 304 ou 416
+     * @throws IOException En cas d'erreur lors de la lecture ou de la compression du fichier
+     */
+    private HttpResponse staticResponse(HttpRequest request, File file, FileCache.Entry entry) throws IOException {
+        String range = request.getHeader("range", null);
+        Path bodyFile = file.toPath();
+        if (range == null && FileCache.isCompressible(entry.getMimeType())) {
+            // Les plages portent sur la représentation non compressée : pas de négociation en présence de Range
+            Path variantFile = negotiateEncoding(request, file, entry);
+            if (variantFile != null) {
+                FileCache.Entry variant = variantFile.equals(bodyFile)
+                        ? fileCache.gzip(bodyFile, entry, request.getConfig().getCompressionLevel())
+                        : precompressed(entry, variantFile);
+                if (variant != null) {
+                    entry = variant;
+                    bodyFile = variantFile;
+                }
+            }
+        }
+
+        if (isNotModified(request, entry)) {
+            HttpResponse notModified = new HttpResponse(304, "Not Modified", null, new byte[0])
+                    .setHeader("ETag", entry.getEtag())
+                    .setHeader("Last-Modified", entry.getLastModifiedHttp());
+            if (FileCache.isCompressible(entry.getMimeType())) {
+                notModified.setHeader("Vary", "Accept-Encoding");
+            }
+            return notModified;
+        }
+
+        if (range != null && request.getMethod().equals("GET") && isRangeValid(request, entry)) {
+            List<long[]> ranges = parseRanges(range, entry.getSize());
+            if (ranges != null && ranges.isEmpty()) {
+                return HttpResponse.error(416, "Range Not Satisfiable")
+                        .setHeader("Content-Range", "bytes */" + entry.getSize());
+            }
+            if (ranges != null) {
+                return partialResponse(file, entry, ranges);
+            }
+        }
+
+        if (entry.getData() != null) {
+            return HttpResponse.preformatted(entry.getResponseHead(), entry.getData());
+        }
+        // Fichier trop volumineux pour le cache : envoyé directement depuis le disque
+        return HttpResponse.preformatted(entry.getResponseHead(), new byte[0])
+                .appendFile(bodyFile, 0, entry.getSize());
+    }
+
+    /**
+     * Choisit la représentation compressée à envoyer selon l'en-tête Accept-Encoding :
+     * un fichier précompressé voisin (.br puis .gz) s'il existe, sinon la compression gzip
+     * à la volée des fichiers gardés en mémoire et assez volumineux.
+     *
+     * @param request La requête reçue
+     * @param file    Le fichier demandé
+     * @param entry   L'entrée du cache correspondant au fichier
+     * @return Le fichier précompressé à envoyer, le fichier lui-même pour une compression à la volée,
+     * ou null pour envoyer le fichier non compressé
+     */
+    private Path negotiateEncoding(HttpRequest request, File file, FileCache.Entry entry) {
+        ConfigLoader config = request.getConfig();
+        if (!config.isCompressionEnabled()) {
+            return null;
+        }
+        Set<String> accepted = acceptedEncodings(request.getHeader("accept-encoding", ""));
+        FileCache.Siblings siblings = fileCache.siblings(file.toPath(), entry);
+        if (accepted.contains("br") && siblings.getBrotli() != null) {
+            return siblings.getBrotli();
+        }
+        if (accepted.contains("gzip")) {
+            if (siblings.getGzip() != null) {
+                return siblings.getGzip();
+            }
+            if (entry.getData() != null && entry.getSize() >= config.getCompressionMinSize()) {
+                return file.toPath();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Analyse l'en-tête Accept-Encoding, par exemple "gzip, deflate;q=0.5, br;q=0".
+     *
+     * @param acceptEncoding L'en-tête Accept-Encoding
+     * @return Les codages acceptés (de poids non nul), "*" étant développé en gzip et br
+     */
+    private Set<String> acceptedEncodings(String acceptEncoding) {
+        Set<String> accepted = new HashSet<>();
+        for (String part : acceptEncoding.toLowerCase().split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim();
+            double quality = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (quality <= 0) {
+                continue;
+            }
+            if (coding.equals("*")) {
+                accepted.add("gzip");
+                accepted.add("br");
+            } else {
+                accepted.add(coding);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Retourne un fichier précompressé présenté comme la variante encodée du fichier demandé.
+     *
+     * @param entry       L'entrée du fichier demandé
+     * @param variantFile Le fichier précompressé
+     * @return La variante encodée, ou null si le fichier précompressé a disparu depuis sa recherche
+     * @throws IOException En cas d'erreur lors de la lecture du fichier précompressé
+     */
+    private FileCache.Entry precompressed(FileCache.Entry entry, Path variantFile) throws IOException {
+        try {
+            return fileCache.get(variantFile).asEncoding(entry.getMimeType(), encodingOf(variantFile));
+        } catch (NoSuchFileException e) {
+            // Les voisins seront recherchés de nouveau à la prochaine requête
+            fileCache.forgetSiblings(entry);
+            return null;
+        }
+    }
+
+    /**
+     * Retourne le codage d'un fichier précompressé d'après son extension.
+     *
+     * @param variant Le fichier précompressé
+     * @return "br" ou "gzip"
+     */
+    private String encodingOf(Path variant) {
+        return variant.toString().endsWith(".br") ? "br" : "gzip";
+    }
+
+    /**
+     * Indique si la version du client est à jour : If-None-Match est prioritaire sur If-Modified-Since.
+     *
+     * @param request La requête reçue
+     * @param entry   L'entrée du cache correspondant au fichier
+     * @return true si une réponse 304 doit être envoyée
+     */
+    private boolean isNotModified(HttpRequest request, FileCache.Entry entry) {
+        String ifNoneMatch = request.getHeader("if-none-match", null);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                // Comparaison faible : un préfixe W/ est ignoré
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(entry.getEtag())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        String ifModifiedSince = request.getHeader("if-modified-since", null);
+        if (ifModifiedSince != null) {
+            try {
+                long since = Instant.from(FileCache.HTTP_DATE.parse(ifModifiedSince.trim())).getEpochSecond();
+                return entry.getLastModified() / 1000 <= since;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Vérifie la condition If-Range : la plage n'est servie que si le client possède la version actuelle.
+     *
+     * @param request La requête reçue
+     * @param entry   L'entrée du cache correspondant au fichier
+     * @return true si l'en-tête Range doit être honoré
+     */
+    private boolean isRangeValid(HttpRequest request, FileCache.Entry entry) {
+        String ifRange = request.getHeader("if-range", null);
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(entry.getEtag());
+        }
+        return ifRange.equals(entry.getLastModifiedHttp());
+    }
+
+    /**
+     * Analyse un en-tête Range de la forme "bytes=0-99,200-,-50".
+     *
+     * @param range L'en-tête Range
+     * @param size  La taille du fichier
+     * @return Les plages [début, fin] incluses et satisfaisables, une liste vide si aucune ne l'est,
+     * ou null si l'en-tête est invalide et doit être ignoré
+     */
+    private List<long[]> parseRanges(String range, long size) {
+        if (!range.startsWith("bytes=")) {
+            return null;
+        }
+        String[] specs = range.substring(6).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<>();
+        try {
+            for (String spec : specs) {
+                spec = spec.trim();
+                int dash = spec.indexOf('-');
+                if (dash < 0) {
+                    return null;
+                }
+                long start;
+                long end;
+                if (dash == 0) {
+                    // Suffixe : les N derniers octets
+                    long suffix = Long.parseLong(spec.substring(1));
+                    start = Math.max(0, size - suffix);
+                    end = size - 1;
+                } else {
+                    start = Long.parseLong(spec.substring(0, dash));
+                    if (dash == spec.length() - 1) {
+                        end = size - 1;
+                    } else {
+                        long last = Long.parseLong(spec.substring(dash + 1));
+                        if (last < start) {
+                            return null;
+                        }
+                        end = Math.min(last, size - 1);
+                    }
+                }
+                if (start < size && start <= end) {
+                    ranges.add(new long[]{start, end});
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return ranges;
+    }
+
+    /**
+     * Méthode qui construit une réponse 206 : le corps est la plage demandée,
+     * ou un document multipart/byteranges s'il y a plusieurs plages.
+     *
+     * @param file   Le fichier demandé
+     * @param entry  L'entrée du cache correspondant au fichier
+     * @param ranges Les plages satisfaisables
+     * @return La réponse 206
+     */
+    private HttpResponse partialResponse(File file, FileCache.Entry entry, List<long[]> ranges) {
+        HttpResponse response;
+        if (ranges.size() == 1) {
+            long[] range = ranges.get(0);
+            response = new HttpResponse(206, "Partial Content", entry.getMimeType(), new byte[0])
+                    .setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + entry.getSize());
+            appendRange(response, file, entry, range);
+        } else {
+            String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+            response = new HttpResponse(206, "Partial Content", "multipart/byteranges; boundary=" + boundary, new byte[0]);
+            for (long[] range : ranges) {
+                String partHead = "--" + boundary + "\r\n"
+                        + "Content-Type: " + entry.getMimeType() + "\r\n"
+                        + "Content-Range: bytes " + range[0] + "-" + range[1] + "/" + entry.getSize() + "\r\n"
+                        + "\r\n";
+                response.appendBody(partHead.getBytes(StandardCharsets.ISO_8859_1));
+                appendRange(response, file, entry, range);
+                response.appendBody("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            }
+            response.appendBody(("--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return response
+                .setHeader("ETag", entry.getEtag())
+                .setHeader("Last-Modified", entry.getLastModifiedHttp());
+    }
+
+    /**
+     * Ajoute une plage du fichier au corps, depuis le cache si le contenu y est, sinon depuis le disque.
+     *
+     * @param response La réponse à compléter
+     * @param file     Le fichier demandé
+     * @param entry    L'entrée du cache correspondant au fichier
+     * @param range    La plage [début, fin] incluse
+     */
+    private void appendRange(HttpResponse response, File file, FileCache.Entry entry, long[] range) {
+        if (entry.getData() != null) {
+            response.appendBody(Arrays.copyOfRange(entry.getData(), (int) range[0], (int) range[1] + 1));
+        } else {
+            response.appendFile(file.toPath(), range[0], range[1] - range[0] + 1);
+        }
+    }
+
+    /**
+     * Indique si un type MIME correspond à une image, une vidéo ou un son.
+     *
+     * @param mimeType Le type MIME
+     * @return true pour les types image/, video/ et audio/
+     */
+    private boolean isMedia(String mimeType) {
+        return mimeType.startsWith("image/") || mimeType.startsWith("video/") || mimeType.startsWith("audio/");
+    }
+
+    /**
+     * Méthode qui construit la réponse de /metrics : les mesures du serveur au format texte de Prometheus,
+     * ou en JSON avec "?json" ou un en-tête Accept: application/json.
+     *
+     * @param request La requête reçue
+     * @return La réponse contenant les mesures
+     */
+    private HttpResponse metricsResponse(HttpRequest request) {
+        if (request.hasQueryParameter("json") || request.getHeader("accept", "").contains("application/json")) {
+            return new HttpResponse(200, "OK", "application/json",
+                    Metrics.toJson(fileCache).getBytes(StandardCharsets.UTF_8));
+        }
+        return new HttpResponse(200, "OK", "text/plain; version=0.0.4; charset=utf-8",
+                Metrics.toPrometheus(fileCache).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Méthode qui recharge la configuration à la demande d'un administrateur (POST /reload).
+     * La demande doit porter le jeton configuré ("Authorization: Bearer ...") : l'adresse du client
+     * ne suffit pas, puisque derrière un proxy toutes les requêtes viennent de la machine locale.
+     *
+     * @param request La requête reçue
+     * @return La réponse indiquant le résultat du rechargement
+     */
+    private HttpResponse reloadResponse(HttpRequest request) {
+        byte[] expected = ("Bearer " + request.getConfig().getReloadToken()).getBytes(StandardCharsets.UTF_8);
+        byte[] presented = request.getHeader("authorization", "").getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(expected, presented)) {
+            // Logs pour indiquer une demande de rechargement refusée
+            Logs.logError("Rechargement refusé pour l'adresse IP : " + request.getClientAddress().getHostAddress());
+            return HttpResponse.error(401, "Unauthorized").setHeader("WWW-Authenticate", "Bearer");
+        }
+        String error = HttpServer.reloadConfig();
+        if (error != null) {
+            return new HttpResponse(500, "Internal Server Error", "text/plain; charset=UTF-8",
+                    ("Rechargement annulé : " + error + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return new HttpResponse(200, "OK", "text/plain; charset=UTF-8",
+                "Configuration rechargée\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Méthode qui construit une réponse de statut contenant les informations actuelles sur le serveur.
+     *
+     * @return La réponse contenant la page de statut
+     */
+    private HttpResponse statusResponse() {
+        String statusHtml = MachineStatus.getStatusHtml(HttpServer.getActiveConnections(), fileCache);
+        return new HttpResponse(200, "OK", "text/html", statusHtml.getBytes(StandardCharsets.UTF_8));
+    }
+}